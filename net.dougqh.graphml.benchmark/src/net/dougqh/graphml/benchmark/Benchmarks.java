@@ -0,0 +1,56 @@
+package net.dougqh.graphml.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/*
+ * Runs every benchmark in this package with the GC profiler attached, so
+ * that allocation per operation is always reported next to nodes/sec and
+ * bytes/sec.  Pass the old-src output directory as the first argument to
+ * include the old-src side of LegacyComparisonBenchmark.
+ * 
+ * JMH is not part of the repository - get jmh-core, its dependencies
+ * jopt-simple and commons-math3, and jmh-generator-annprocess (1.x) from
+ * Maven Central.  The annotation processor generates the benchmark stubs
+ * and META-INF/BenchmarkList that the Runner reads, so it has to run when
+ * this bundle is compiled.
+ * 
+ * In Eclipse, add the JMH jars to the target platform - jmh-core has no
+ * OSGi headers, so wrap it as a bundle exporting the org.openjdk.jmh
+ * packages imported in MANIFEST.MF - and list jmh-generator-annprocess
+ * under Java Compiler > Annotation Processing > Factory Path.  Processing
+ * is already enabled, generating into .apt_generated.  Then run this class
+ * as a Java Application.
+ * 
+ * Outside Eclipse, with JMH_CP set to the JMH jars...
+ * 
+ *   javac -d core-bin $(find ../net.dougqh.graphml/src -name '*.java')
+ *   javac -cp core-bin:$JMH_CP -processorpath $JMH_CP -d bench-bin \
+ *     $(find src -name '*.java')
+ *   java -cp core-bin:bench-bin:$JMH_CP net.dougqh.graphml.benchmark.Benchmarks
+ * 
+ * For LegacyComparisonBenchmark, also compile ../net.dougqh.graphml/old-src
+ * into a directory of its own and pass that directory as the argument.
+ */
+public final class Benchmarks {
+    public static final void main( final String[] args )
+        throws RunnerException
+    {
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.include( Benchmarks.class.getPackage().getName() + ".*" );
+        builder.addProfiler( GCProfiler.class );
+        
+        if ( args.length > 0 ) {
+            builder.jvmArgsAppend(
+                "-D" + LegacyComparisonBenchmark.OLD_SRC_CLASSES + "=" + args[ 0 ] );
+        } else {
+            builder.param( "writer", "src" );
+        }
+        
+        Options options = builder.build();
+        new Runner( options ).run();
+    }
+}
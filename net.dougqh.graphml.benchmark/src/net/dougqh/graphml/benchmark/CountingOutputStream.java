@@ -0,0 +1,25 @@
+package net.dougqh.graphml.benchmark;
+
+import java.io.OutputStream;
+
+final class CountingOutputStream extends OutputStream {
+    private long count = 0;
+    
+    @Override
+    public final void write( final int b ) {
+        ++this.count;
+    }
+    
+    @Override
+    public final void write(
+        final byte[] bytes,
+        final int offset,
+        final int length )
+    {
+        this.count += length;
+    }
+    
+    final long count() {
+        return this.count;
+    }
+}
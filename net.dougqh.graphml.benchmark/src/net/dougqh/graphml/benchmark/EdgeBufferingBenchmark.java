@@ -0,0 +1,98 @@
+package net.dougqh.graphml.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import net.dougqh.graphml.GraphmlWriter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Edges are buffered until endGraphml, so the cost of an export grows with
+ * the edge-to-node ratio.  "forward" declares every edge before either
+ * endpoint is written; "backward" declares them after all the nodes.
+ * A non-zero edgeBudget forces edges through the spill-to-disk path.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class EdgeBufferingBenchmark {
+    @Param( { "10000" } )
+    public int numNodes;
+    
+    @Param( { "0", "1", "4", "16" } )
+    public int edgesPerNode;
+    
+    @Param( { "backward", "forward" } )
+    public String order;
+    
+    @Param( { "0", "65536" } )
+    public long edgeBudget;
+    
+    private Object[] nodes;
+    
+    @Setup
+    public final void setUp() {
+        this.nodes = new Object[ this.numNodes ];
+        for ( int i = 0; i < this.numNodes; ++i ) {
+            this.nodes[ i ] = new Object();
+        }
+    }
+    
+    @Benchmark
+    public final long objectEdges( final WriterCounters counters ) throws Exception {
+        CountingOutputStream out = new CountingOutputStream();
+        
+        GraphmlWriter writer = new GraphmlWriter( out );
+        if ( this.edgeBudget != 0 ) {
+            writer.edgeMemoryBudget( this.edgeBudget );
+        }
+        try {
+            writer.startGraphml();
+            writer.startDirectedGraph();
+            
+            boolean forward = "forward".equals( this.order );
+            if ( forward ) {
+                this.edges( writer );
+            }
+            for ( Object node : this.nodes ) {
+                writer.startNode( node );
+                writer.endNode();
+            }
+            if ( ! forward ) {
+                this.edges( writer );
+            }
+            writer.resolveEdges();
+            
+            writer.endGraph();
+            writer.endGraphml();
+        } finally {
+            writer.close();
+        }
+        
+        counters.record( this.numNodes, out.count() );
+        return out.count();
+    }
+    
+    private final void edges( final GraphmlWriter writer ) throws Exception {
+        for ( int i = 0; i < this.numNodes; ++i ) {
+            for ( int j = 1; j <= this.edgesPerNode; ++j ) {
+                writer.directedEdge(
+                    this.nodes[ i ],
+                    this.nodes[ RawDocument.target( i, j, this.numNodes ) ] );
+            }
+        }
+    }
+}
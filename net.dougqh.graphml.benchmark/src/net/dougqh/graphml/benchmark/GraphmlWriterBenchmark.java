@@ -0,0 +1,109 @@
+package net.dougqh.graphml.benchmark;
+
+import java.awt.Color;
+import java.util.concurrent.TimeUnit;
+
+import net.dougqh.graphml.GraphmlWriter;
+import net.dougqh.graphml.yed.YedBasicNode;
+import net.dougqh.graphml.yed.YedShape;
+import net.dougqh.graphml.yed.YedWriter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State( Scope.Thread )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class GraphmlWriterBenchmark {
+    @Param( { "1000", "100000" } )
+    public int numNodes;
+    
+    private YedBasicNode prototype;
+    
+    @Setup
+    public final void setUp() {
+        this.prototype = new YedBasicNode().
+            setColor( Color.ORANGE ).
+            setShape( YedShape.RECTANGLE ).
+            setDimension( 60, 30 );
+    }
+    
+    @Benchmark
+    public final long raw( final WriterCounters counters ) throws Exception {
+        CountingOutputStream out = new CountingOutputStream();
+        
+        GraphmlWriter writer = new GraphmlWriter( out );
+        try {
+            writer.startGraphml();
+            writer.startDirectedGraph();
+            for ( int i = 0; i < this.numNodes; ++i ) {
+                writer.startNode();
+                writer.endNode();
+            }
+            writer.endGraph();
+            writer.endGraphml();
+        } finally {
+            writer.close();
+        }
+        
+        counters.record( this.numNodes, out.count() );
+        return out.count();
+    }
+    
+    @Benchmark
+    public final long rawYed( final WriterCounters counters ) throws Exception {
+        CountingOutputStream out = new CountingOutputStream();
+        
+        GraphmlWriter writer = new GraphmlWriter( out ).forYed();
+        try {
+            writer.startGraphml();
+            writer.startDirectedGraph();
+            for ( int i = 0; i < this.numNodes; ++i ) {
+                writer.startNode();
+                writer.yed().startShapeNode();
+                writer.yed().nodeLabel( "Node " + i );
+                writer.yed().shape( YedShape.RECTANGLE );
+                writer.yed().fill( Color.ORANGE );
+                writer.yed().geometry( 60, 30 );
+                writer.yed().endShapeNode();
+                writer.endNode();
+            }
+            writer.endGraph();
+            writer.endGraphml();
+        } finally {
+            writer.close();
+        }
+        
+        counters.record( this.numNodes, out.count() );
+        return out.count();
+    }
+    
+    @Benchmark
+    public final long yedWriter( final WriterCounters counters ) throws Exception {
+        CountingOutputStream out = new CountingOutputStream();
+        
+        YedWriter writer = new YedWriter( out );
+        try {
+            for ( int i = 0; i < this.numNodes; ++i ) {
+                writer.add( this.prototype.clone( "Node " + i ) );
+            }
+        } finally {
+            writer.close();
+        }
+        
+        counters.record( this.numNodes, out.count() );
+        return out.count();
+    }
+}
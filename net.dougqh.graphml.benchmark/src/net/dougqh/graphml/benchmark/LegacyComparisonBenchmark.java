@@ -0,0 +1,87 @@
+package net.dougqh.graphml.benchmark;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * old-src and src both define net.dougqh.graphml.GraphmlWriter, so the
+ * old-src writer is loaded in its own class loader along with a copy of
+ * RawDocument.  The compiled old-src classes are located through the
+ * graphml.oldsrc.classes system property.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class LegacyComparisonBenchmark {
+    public static final String OLD_SRC_CLASSES = "graphml.oldsrc.classes";
+    
+    @Param( { "src", "old-src" } )
+    public String writer;
+    
+    @Param( { "10000" } )
+    public int numNodes;
+    
+    @Param( { "4" } )
+    public int edgesPerNode;
+    
+    private Callable< Long > document;
+    
+    @Setup
+    public final void setUp() throws Exception {
+        if ( "src".equals( this.writer ) ) {
+            this.document = new RawDocument( this.numNodes, this.edgesPerNode );
+        } else {
+            this.document = oldSrcDocument( this.numNodes, this.edgesPerNode );
+        }
+    }
+    
+    @Benchmark
+    public final long write( final WriterCounters counters ) throws Exception {
+        long bytes = this.document.call();
+        counters.record( this.numNodes, bytes );
+        return bytes;
+    }
+    
+    @SuppressWarnings( "unchecked" )
+    private static final Callable< Long > oldSrcDocument(
+        final int numNodes,
+        final int edgesPerNode )
+        throws Exception
+    {
+        String oldSrcClasses = System.getProperty( OLD_SRC_CLASSES );
+        if ( oldSrcClasses == null ) {
+            throw new IllegalStateException( OLD_SRC_CLASSES + " is not set" );
+        }
+        
+        URL benchmarkClasses =
+            RawDocument.class.getProtectionDomain().getCodeSource().getLocation();
+        
+        // null parent - only the JDK is shared, so old-src wins over src
+        ClassLoader loader = new URLClassLoader(
+            new URL[] { new File( oldSrcClasses ).toURI().toURL(), benchmarkClasses },
+            null );
+        
+        Class< ? > documentClass = loader.loadClass( RawDocument.class.getName() );
+        return (Callable< Long >)documentClass.
+            getConstructor( int.class, int.class ).
+            newInstance( numNodes, edgesPerNode );
+    }
+}
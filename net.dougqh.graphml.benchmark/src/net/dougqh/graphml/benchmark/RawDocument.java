@@ -0,0 +1,57 @@
+package net.dougqh.graphml.benchmark;
+
+import java.util.concurrent.Callable;
+
+import net.dougqh.graphml.GraphmlWriter;
+
+/*
+ * Only uses the part of the GraphmlWriter API that old-src and src share,
+ * so that LegacyComparisonBenchmark can link it against either one.
+ */
+public final class RawDocument implements Callable< Long > {
+    private final int numNodes;
+    private final int edgesPerNode;
+    private final String[] ids;
+    
+    public RawDocument( final int numNodes, final int edgesPerNode ) {
+        this.numNodes = numNodes;
+        this.edgesPerNode = edgesPerNode;
+        this.ids = new String[ numNodes ];
+    }
+    
+    @Override
+    public final Long call() throws Exception {
+        CountingOutputStream out = new CountingOutputStream();
+        
+        GraphmlWriter writer = new GraphmlWriter( out );
+        try {
+            writer.startGraphml();
+            writer.startDirectedGraph();
+            
+            for ( int i = 0; i < this.numNodes; ++i ) {
+                this.ids[ i ] = writer.startNode();
+                writer.endNode();
+            }
+            for ( int i = 0; i < this.numNodes; ++i ) {
+                for ( int j = 1; j <= this.edgesPerNode; ++j ) {
+                    writer.directedEdge(
+                        this.ids[ i ],
+                        this.ids[ target( i, j, this.numNodes ) ] );
+                }
+            }
+            
+            writer.endGraph();
+            writer.endGraphml();
+            
+            // old-src only flushes on close when it owns the stream
+            writer.flush();
+        } finally {
+            writer.close();
+        }
+        return out.count();
+    }
+    
+    static final int target( final int source, final int nth, final int numNodes ) {
+        return (int)( ( source * 31L + nth * 7919L ) % numNodes );
+    }
+}
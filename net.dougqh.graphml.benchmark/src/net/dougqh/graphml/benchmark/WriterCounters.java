@@ -0,0 +1,25 @@
+package net.dougqh.graphml.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State( Scope.Thread )
+@AuxCounters( AuxCounters.Type.OPERATIONS )
+public class WriterCounters {
+    public long nodes;
+    public long bytes;
+    
+    @Setup( Level.Iteration )
+    public final void reset() {
+        this.nodes = 0;
+        this.bytes = 0;
+    }
+    
+    final void record( final int nodes, final long bytes ) {
+        this.nodes += nodes;
+        this.bytes += bytes;
+    }
+}
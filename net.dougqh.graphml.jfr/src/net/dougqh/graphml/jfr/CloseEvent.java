@@ -0,0 +1,18 @@
+package net.dougqh.graphml.jfr;
+
+import jdk.jfr.DataAmount;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name( "net.dougqh.graphml.Close" )
+@Label( "GraphML Close" )
+final class CloseEvent extends PhaseEvent {
+    @Label( "Bytes" )
+    @DataAmount
+    long bytes;
+    
+    @Override
+    final void record( final String id, final long count ) {
+        this.bytes = count;
+    }
+}
@@ -0,0 +1,14 @@
+package net.dougqh.graphml.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name( "net.dougqh.graphml.DocumentStart" )
+@Label( "GraphML Document Start" )
+@Description( "XML prolog, namespaces and extension keys" )
+final class DocumentStartEvent extends PhaseEvent {
+    @Override
+    final void record( final String id, final long count ) {
+    }
+}
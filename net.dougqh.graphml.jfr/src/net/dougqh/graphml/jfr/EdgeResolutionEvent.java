@@ -0,0 +1,18 @@
+package net.dougqh.graphml.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name( "net.dougqh.graphml.EdgeResolution" )
+@Label( "GraphML Edge Resolution" )
+@Description( "A batch of buffered edges resolved and written by endGraphml" )
+final class EdgeResolutionEvent extends PhaseEvent {
+    @Label( "Edges" )
+    long edges;
+    
+    @Override
+    final void record( final String id, final long count ) {
+        this.edges = count;
+    }
+}
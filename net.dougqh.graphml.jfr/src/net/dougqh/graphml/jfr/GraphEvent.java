@@ -0,0 +1,20 @@
+package net.dougqh.graphml.jfr;
+
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name( "net.dougqh.graphml.Graph" )
+@Label( "GraphML Graph" )
+final class GraphEvent extends PhaseEvent {
+    @Label( "Graph Id" )
+    String graphId;
+    
+    @Label( "Nodes" )
+    long nodes;
+    
+    @Override
+    final void record( final String id, final long count ) {
+        this.graphId = id;
+        this.nodes = count;
+    }
+}
@@ -0,0 +1,114 @@
+package net.dougqh.graphml.jfr;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+import jdk.jfr.EventType;
+import net.dougqh.graphml.GraphmlPhase;
+import net.dougqh.graphml.GraphmlTracer;
+
+/*
+ * Usage: writer.trace( new JfrGraphmlTracer() )
+ * 
+ * Events are only committed while a recording has them enabled, so an
+ * installed tracer costs a few allocations per graph and per edge batch
+ * when Flight Recorder is off.  Nodes are only timed in documents started
+ * while slow node events are enabled.
+ */
+public final class JfrGraphmlTracer implements GraphmlTracer {
+    private static final long DEFAULT_NODE_THRESHOLD_NANOS =
+        TimeUnit.MILLISECONDS.toNanos( 1 );
+    
+    private static final EventType SLOW_NODE = EventType.getEventType( SlowNodeEvent.class );
+    
+    private final long nodeThresholdNanos;
+    
+    private final ArrayDeque< GraphmlPhase > phases = new ArrayDeque< GraphmlPhase >();
+    private final ArrayDeque< PhaseEvent > events = new ArrayDeque< PhaseEvent >();
+    private final ArrayDeque< String > ids = new ArrayDeque< String >();
+    
+    public JfrGraphmlTracer() {
+        this( DEFAULT_NODE_THRESHOLD_NANOS, TimeUnit.NANOSECONDS );
+    }
+    
+    public JfrGraphmlTracer(
+        final long nodeThreshold,
+        final TimeUnit unit )
+    {
+        if ( nodeThreshold < 0 ) throw new IllegalArgumentException( "nodeThreshold" );
+        
+        this.nodeThresholdNanos = unit.toNanos( nodeThreshold );
+    }
+    
+    @Override
+    public final long nodeThresholdNanos() {
+        return SLOW_NODE.isEnabled() ? this.nodeThresholdNanos : Long.MAX_VALUE;
+    }
+    
+    @Override
+    public final void begin( final GraphmlPhase phase, final String id ) {
+        PhaseEvent event = newEvent( phase );
+        event.begin();
+        
+        this.phases.push( phase );
+        this.events.push( event );
+        this.ids.push( id == null ? "" : id );
+    }
+    
+    /*
+     * A writer that fails mid-phase - an unresolved edge under the FAIL
+     * policy, say - never ends the phases it was in, so those are dropped
+     * on the way down to the one being ended.
+     */
+    @Override
+    public final void end( final GraphmlPhase phase, final long count ) {
+        if ( ! this.phases.contains( phase ) ) {
+            return;
+        }
+        
+        PhaseEvent event;
+        String id;
+        do {
+            event = this.events.pop();
+            id = this.ids.pop();
+        } while ( this.phases.pop() != phase );
+        
+        event.end();
+        if ( event.shouldCommit() ) {
+            event.record( id, count );
+            event.commit();
+        }
+    }
+    
+    @Override
+    public final void slowNode( final String id, final long nanos ) {
+        SlowNodeEvent event = new SlowNodeEvent();
+        if ( event.isEnabled() ) {
+            event.nodeId = id;
+            event.writeTime = nanos;
+            event.commit();
+        }
+    }
+    
+    private static final PhaseEvent newEvent( final GraphmlPhase phase ) {
+        switch ( phase ) {
+            case DOCUMENT_START:
+            return new DocumentStartEvent();
+            
+            case GRAPH:
+            return new GraphEvent();
+            
+            case EDGE_RESOLUTION:
+            return new EdgeResolutionEvent();
+            
+            case FLUSH:
+            return new FlushEvent();
+            
+            case CLOSE:
+            return new CloseEvent();
+            
+            default:
+            throw new IllegalStateException( phase.toString() );
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package net.dougqh.graphml.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.StackTrace;
+
+@Category( { "GraphML" } )
+@StackTrace( false )
+abstract class PhaseEvent extends Event {
+    abstract void record( final String id, final long count );
+}
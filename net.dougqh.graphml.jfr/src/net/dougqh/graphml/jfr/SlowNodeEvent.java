@@ -0,0 +1,23 @@
+package net.dougqh.graphml.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+@Name( "net.dougqh.graphml.SlowNode" )
+@Label( "GraphML Slow Node" )
+@Description( "A node that took longer than the tracer's threshold to write" )
+@Category( { "GraphML" } )
+@StackTrace( false )
+final class SlowNodeEvent extends Event {
+    @Label( "Node Id" )
+    String nodeId;
+    
+    @Label( "Write Time" )
+    @Timespan( Timespan.NANOSECONDS )
+    long writeTime;
+}
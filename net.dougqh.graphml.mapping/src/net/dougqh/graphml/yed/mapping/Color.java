@@ -0,0 +1,19 @@
+package net.dougqh.graphml.yed.mapping;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/*
+ * On a class, the fill color of all its nodes - e.g. "#ff8000".  On a
+ * field or no-arg method, the value - a java.awt.Color or such a string -
+ * is the color of each object's node.
+ */
+@Inherited
+@Retention( RetentionPolicy.RUNTIME )
+@Target( { ElementType.TYPE, ElementType.FIELD, ElementType.METHOD } )
+public @interface Color {
+    public abstract String value() default "";
+}
@@ -0,0 +1,17 @@
+package net.dougqh.graphml.yed.mapping;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/*
+ * A field - or no-arg method - holding the nodes this one is connected
+ * to: a single object, an array, an Iterable or a Map, whose values are
+ * used.
+ */
+@Retention( RetentionPolicy.RUNTIME )
+@Target( { ElementType.FIELD, ElementType.METHOD } )
+public @interface Edge {
+    public abstract boolean directed() default true;
+}
@@ -0,0 +1,27 @@
+package net.dougqh.graphml.yed.mapping;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import net.dougqh.graphml.yed.YedLineStyle;
+import net.dougqh.graphml.yed.YedShape;
+
+/*
+ * Marks a class whose objects YedMapper writes as nodes - a width or
+ * height below zero leaves the node's size to yEd.
+ */
+@Inherited
+@Retention( RetentionPolicy.RUNTIME )
+@Target( ElementType.TYPE )
+public @interface GraphNode {
+    public abstract YedShape shape() default YedShape.RECTANGLE;
+    
+    public abstract YedLineStyle lineStyle() default YedLineStyle.LINE;
+    
+    public abstract int width() default -1;
+    
+    public abstract int height() default -1;
+}
@@ -0,0 +1,363 @@
+package net.dougqh.graphml.yed.mapping;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import net.dougqh.graphml.GraphmlIoException;
+import net.dougqh.graphml.yed.YedBasicNode;
+import net.dougqh.graphml.yed.YedStyle;
+import net.dougqh.graphml.yed.YedWriter;
+
+/*
+ * Writes objects of @GraphNode classes as nodes - styled, labeled and
+ * colored as their annotations say - and follows their @Edge members to
+ * the objects they are connected to, writing those too.  Each object is
+ * written once, however many objects are connected to it.
+ *
+ * The annotations of a class are read once, into a plan holding an
+ * accessor generated for each annotated member and its style, so mapping
+ * an object only reads the members the plan lists, with no reflection.
+ * A mapper is meant for one thread at a time.
+ */
+public final class YedMapper {
+    private final HashMap< Class< ? >, NodePlan > plans = new HashMap< Class< ? >, NodePlan >();
+    
+    // returns the number of objects written - the objects and those they are connected to
+    public final int write( final YedWriter writer, final Object... objects )
+        throws GraphmlIoException
+    {
+        IdentityHashMap< Object, YedBasicNode > nodes = new IdentityHashMap< Object, YedBasicNode >();
+        ArrayList< Object > queue = new ArrayList< Object >();
+        
+        for ( Object object : objects ) {
+            if ( object == null ) throw new IllegalArgumentException( "objects" );
+            
+            this.node( object, nodes, queue, writer );
+        }
+        
+        for ( int i = 0; i < queue.size(); ++i ) {
+            Object object = queue.get( i );
+            YedBasicNode node = nodes.get( object );
+            NodePlan plan = this.plan( object.getClass() );
+            
+            for ( int j = 0; j < plan.edges.length; ++j ) {
+                boolean directed = plan.directed[ j ];
+                Object value = plan.edges[ j ].get( object );
+                
+                if ( value == null ) {
+                    continue;
+                } else if ( value instanceof Iterable ) {
+                    for ( Object target : (Iterable< ? >)value ) {
+                        this.connect( node, target, directed, nodes, queue, writer );
+                    }
+                } else if ( value instanceof Map ) {
+                    for ( Object target : ( (Map< ?, ? >)value ).values() ) {
+                        this.connect( node, target, directed, nodes, queue, writer );
+                    }
+                } else if ( value.getClass().isArray() ) {
+                    int length = Array.getLength( value );
+                    for ( int k = 0; k < length; ++k ) {
+                        this.connect( node, Array.get( value, k ), directed, nodes, queue, writer );
+                    }
+                } else {
+                    this.connect( node, value, directed, nodes, queue, writer );
+                }
+            }
+        }
+        return nodes.size();
+    }
+    
+    private final void connect(
+        final YedBasicNode fromNode,
+        final Object target,
+        final boolean directed,
+        final IdentityHashMap< Object, YedBasicNode > nodes,
+        final ArrayList< Object > queue,
+        final YedWriter writer )
+        throws GraphmlIoException
+    {
+        if ( target == null ) {
+            return;
+        }
+        
+        YedBasicNode toNode = this.node( target, nodes, queue, writer );
+        if ( directed ) {
+            writer.connectWithArrow( fromNode, toNode );
+        } else {
+            writer.connect( fromNode, toNode );
+        }
+    }
+    
+    private final YedBasicNode node(
+        final Object object,
+        final IdentityHashMap< Object, YedBasicNode > nodes,
+        final ArrayList< Object > queue,
+        final YedWriter writer )
+        throws GraphmlIoException
+    {
+        YedBasicNode node = nodes.get( object );
+        if ( node != null ) {
+            return node;
+        }
+        
+        NodePlan plan = this.plan( object.getClass() );
+        node = new YedBasicNode();
+        if ( plan.label != null ) {
+            Object label = plan.label.get( object );
+            if ( label != null ) {
+                node.setLabel( label.toString() );
+            }
+        }
+        node.setStyle( plan.style( object ) );
+        
+        nodes.put( object, node );
+        queue.add( object );
+        writer.add( node );
+        return node;
+    }
+    
+    private final NodePlan plan( final Class< ? > aClass ) {
+        NodePlan plan = this.plans.get( aClass );
+        if ( plan == null ) {
+            plan = new NodePlan( aClass );
+            this.plans.put( aClass, plan );
+        }
+        return plan;
+    }
+    
+    private static final class NodePlan {
+        private static final MethodType GETTER_TYPE = MethodType.methodType( Object.class, Object.class );
+        
+        private final YedStyle style;
+        private final Accessor label;
+        private final Accessor color;
+        private final Accessor[] edges;
+        private final boolean[] directed;
+        
+        // the style for each color the color member has given
+        private HashMap< Object, YedStyle > colorStyles = null;
+        
+        NodePlan( final Class< ? > aClass ) {
+            GraphNode graphNode = aClass.getAnnotation( GraphNode.class );
+            if ( graphNode == null ) {
+                throw new IllegalArgumentException( aClass.getName() + " is not a @GraphNode" );
+            }
+            
+            YedStyle style = YedStyle.DEFAULT.
+                withShape( graphNode.shape() ).
+                withLineStyle( graphNode.lineStyle() );
+            if ( graphNode.width() >= 0 && graphNode.height() >= 0 ) {
+                style = style.withDimension( graphNode.width(), graphNode.height() );
+            }
+            Color color = aClass.getAnnotation( Color.class );
+            if ( color != null && color.value().length() != 0 ) {
+                style = style.withColor( java.awt.Color.decode( color.value() ) );
+            }
+            this.style = style;
+            
+            Accessor label = null;
+            Accessor colorAccessor = null;
+            ArrayList< Accessor > edges = new ArrayList< Accessor >();
+            ArrayList< Boolean > directed = new ArrayList< Boolean >();
+            
+            /*
+             * A subclass's members first - so its @Label wins - and methods
+             * it overrides are skipped further up, as are the bridge methods
+             * for covariant returns, so one reference is one edge.
+             */
+            HashSet< List< Object > > overridden = new HashSet< List< Object > >();
+            for ( Class< ? > cur = aClass; cur != null; cur = cur.getSuperclass() ) {
+                ArrayList< AccessibleObject > members = new ArrayList< AccessibleObject >();
+                for ( Field field : cur.getDeclaredFields() ) {
+                    members.add( field );
+                }
+                for ( Method method : cur.getDeclaredMethods() ) {
+                    if ( method.isBridge() || method.isSynthetic() ) {
+                        continue;
+                    }
+                    // private methods are not overridden
+                    if ( Modifier.isPrivate( method.getModifiers() ) ||
+                        overridden.add( signature( method ) ) )
+                    {
+                        members.add( method );
+                    }
+                }
+                
+                for ( AccessibleObject member : members ) {
+                    if ( member.isAnnotationPresent( Label.class ) && label == null ) {
+                        label = accessor( member );
+                    }
+                    if ( member.isAnnotationPresent( Color.class ) && colorAccessor == null ) {
+                        colorAccessor = accessor( member );
+                    }
+                    Edge edge = member.getAnnotation( Edge.class );
+                    if ( edge != null ) {
+                        edges.add( accessor( member ) );
+                        directed.add( edge.directed() );
+                    }
+                }
+            }
+            this.label = label;
+            this.color = colorAccessor;
+            this.edges = edges.toArray( new Accessor[ edges.size() ] );
+            this.directed = new boolean[ directed.size() ];
+            for ( int i = 0; i < this.directed.length; ++i ) {
+                this.directed[ i ] = directed.get( i );
+            }
+        }
+        
+        final YedStyle style( final Object object ) {
+            if ( this.color == null ) {
+                return this.style;
+            }
+            
+            Object color = this.color.get( object );
+            if ( color == null ) {
+                return this.style;
+            }
+            
+            if ( this.colorStyles == null ) {
+                this.colorStyles = new HashMap< Object, YedStyle >();
+            }
+            YedStyle style = this.colorStyles.get( color );
+            if ( style == null ) {
+                if ( color instanceof java.awt.Color ) {
+                    style = this.style.withColor( (java.awt.Color)color );
+                } else {
+                    style = this.style.withColor( java.awt.Color.decode( color.toString() ) );
+                }
+                this.colorStyles.put( color, style );
+            }
+            return style;
+        }
+        
+        private static final List< Object > signature( final Method method ) {
+            ArrayList< Object > signature = new ArrayList< Object >();
+            signature.add( method.getName() );
+            signature.addAll( Arrays.asList( method.getParameterTypes() ) );
+            return signature;
+        }
+        
+        /*
+         * Methods are bound to a Function by LambdaMetafactory, so reading
+         * one is a call through a generated class.  LambdaMetafactory only
+         * binds methods, and only for a lookup with full privileges - which
+         * a class from another module or class loader (an OSGi bundle, say)
+         * does not give - so everything else is read through a MethodHandle
+         * adapted to ( Object )Object.  Either way, there are no access
+         * checks or argument arrays per object.
+         */
+        @SuppressWarnings( "unchecked" )
+        private static final Accessor accessor( final AccessibleObject member ) {
+            if ( Modifier.isStatic( ( (Member)member ).getModifiers() ) ) {
+                throw new IllegalArgumentException( member + " is static - only instance members can be mapped" );
+            }
+            
+            try {
+                if ( member instanceof Field ) {
+                    Field field = (Field)member;
+                    MethodHandle getter = lookup( field.getDeclaringClass() ).unreflectGetter( field );
+                    return new HandleAccessor( getter.asType( GETTER_TYPE ) );
+                }
+                
+                Method method = (Method)member;
+                if ( method.getParameterCount() != 0 ) {
+                    throw new IllegalArgumentException( method + " takes parameters" );
+                } else if ( method.getReturnType() == void.class ) {
+                    throw new IllegalArgumentException( method + " returns nothing" );
+                }
+                
+                MethodHandles.Lookup lookup = lookup( method.getDeclaringClass() );
+                MethodHandle getter = lookup.unreflect( method );
+                if ( ! hasFullPrivilegeAccess( lookup ) ) {
+                    return new HandleAccessor( getter.asType( GETTER_TYPE ) );
+                }
+                
+                CallSite site = LambdaMetafactory.metafactory(
+                    lookup,
+                    "apply",
+                    MethodType.methodType( Function.class ),
+                    GETTER_TYPE,
+                    getter,
+                    MethodType.methodType( Object.class, method.getDeclaringClass() ) );
+                return new MethodAccessor( (Function< Object, Object >)site.getTarget().invokeExact() );
+            } catch ( IllegalAccessException e ) {
+                throw new IllegalArgumentException( member + " is not accessible", e );
+            } catch ( RuntimeException e ) {
+                throw e;
+            } catch ( Error e ) {
+                throw e;
+            } catch ( Throwable t ) {
+                throw new IllegalStateException( t );
+            }
+        }
+        
+        // Lookup.hasFullPrivilegeAccess is not in Java 11
+        private static final boolean hasFullPrivilegeAccess( final MethodHandles.Lookup lookup ) {
+            int full = MethodHandles.Lookup.PRIVATE | MethodHandles.Lookup.MODULE;
+            return ( lookup.lookupModes() & full ) == full;
+        }
+        
+        // private access to the class's members - its module must be open to this one
+        private static final MethodHandles.Lookup lookup( final Class< ? > aClass )
+            throws IllegalAccessException
+        {
+            return MethodHandles.privateLookupIn( aClass, MethodHandles.lookup() );
+        }
+    }
+    
+    private static abstract class Accessor {
+        abstract Object get( final Object object );
+    }
+    
+    private static final class HandleAccessor extends Accessor {
+        private final MethodHandle getter;
+        
+        HandleAccessor( final MethodHandle getter ) {
+            this.getter = getter;
+        }
+        
+        @Override
+        final Object get( final Object object ) {
+            try {
+                return (Object)this.getter.invokeExact( object );
+            } catch ( RuntimeException e ) {
+                throw e;
+            } catch ( Error e ) {
+                throw e;
+            } catch ( Throwable t ) {
+                throw new IllegalStateException( t );
+            }
+        }
+    }
+    
+    private static final class MethodAccessor extends Accessor {
+        private final Function< Object, Object > function;
+        
+        MethodAccessor( final Function< Object, Object > function ) {
+            this.function = function;
+        }
+        
+        @Override
+        final Object get( final Object object ) {
+            return this.function.apply( object );
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package net.dougqh.graphml.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import net.dougqh.graphml.yed.YedWriter;
+import net.dougqh.graphml.yed.objects.YedObjectGraph;
+
+/*
+ * Checks the nodes and arrows written for small object graphs - throws
+ * AssertionError at the first graph that comes out wrong.
+ */
+public final class YedObjectGraphTest {
+	public static final void main( final String[] args )
+		throws IOException
+	{
+		cycle();
+		maxDepthZero();
+		maxObjectsCutsLevelShort();
+	}
+	
+	private static final void cycle() throws IOException {
+		Link alpha = new Link();
+		Link beta = new Link();
+		alpha.next = beta;
+		beta.next = alpha;
+		
+		// each object is written once, and the reference back to alpha
+		// is still drawn
+		check( "cycle", new YedObjectGraph(), 2, 2, alpha );
+	}
+	
+	private static final void maxDepthZero() throws IOException {
+		Link alpha = new Link();
+		Link beta = new Link();
+		Link gamma = new Link();
+		alpha.next = beta;
+		beta.next = gamma;
+		
+		check( "maxDepth 0", new YedObjectGraph().maxDepth( 0 ), 1, 0, alpha );
+		
+		// references between roots are drawn, but not followed any further
+		check( "maxDepth 0 roots", new YedObjectGraph().maxDepth( 0 ), 2, 1, alpha, beta );
+	}
+	
+	private static final void maxObjectsCutsLevelShort() throws IOException {
+		Link[] links = new Link[ 10 ];
+		for ( int i = 0; i < links.length; ++i ) {
+			links[ i ] = new Link();
+			links[ i ].next = new Link();
+		}
+		
+		// the array and the first three links - the rest of the level,
+		// and the level below it, are left out along with their arrows
+		check( "maxObjects", new YedObjectGraph().maxObjects( 4 ), 4, 3, (Object)links );
+	}
+	
+	private static final void check(
+		final String name,
+		final YedObjectGraph graph,
+		final int expectedNodes,
+		final int expectedArrows,
+		final Object... roots )
+		throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		YedWriter writer = new YedWriter( out );
+		int nodes;
+		try {
+			nodes = graph.write( writer, roots );
+		} finally {
+			writer.close();
+		}
+		
+		String graphml = out.toString( "UTF-8" );
+		int arrows = count( graphml, "<edge " );
+		if ( nodes != expectedNodes || count( graphml, "<node " ) != expectedNodes ) {
+			throw new AssertionError( name + ": expected " + expectedNodes + " nodes, wrote " + nodes );
+		}
+		if ( arrows != expectedArrows ) {
+			throw new AssertionError( name + ": expected " + expectedArrows + " arrows, wrote " + arrows );
+		}
+	}
+	
+	private static final int count( final String text, final String tag ) {
+		int count = 0;
+		for ( int index = text.indexOf( tag ); index != -1; index = text.indexOf( tag, index + 1 ) ) {
+			++count;
+		}
+		return count;
+	}
+	
+	static final class Link {
+		Link next;
+	}
+}
@@ -0,0 +1,319 @@
+package net.dougqh.graphml.yed.objects;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+import net.dougqh.graphml.GraphmlIoException;
+import net.dougqh.graphml.yed.YedBasicNode;
+import net.dougqh.graphml.yed.YedWriter;
+
+/*
+ * Writes live objects - a node for each object reachable from the roots,
+ * and an arrow for each reference between them - for looking at in-memory
+ * data structures in yEd.  Objects are told apart by identity, so cycles
+ * and shared objects are written once, and equals and hashCode are never
+ * called.
+ *
+ * Objects are walked breadth first, so when maxDepth or maxObjects cuts
+ * the walk short, what is written is what is nearest the roots.  Objects
+ * of excluded classes - or, once anything is included, of classes that
+ * are not - are left out along with the references to them.
+ *
+ * Each class's fields are looked up once, as getter MethodHandles, and
+ * kept with the decision whether to walk it, so visiting an object is
+ * just invoking its getters - there are no access checks per visit.
+ */
+public final class YedObjectGraph {
+    private static final int MAX_LABEL_CHARS = 40;
+    
+    private final ArrayList< Class< ? > > includes = new ArrayList< Class< ? > >();
+    private final ArrayList< Class< ? > > excludes = new ArrayList< Class< ? > >();
+    private int maxDepth = Integer.MAX_VALUE;
+    private int maxObjects = Integer.MAX_VALUE;
+    
+    private final HashMap< Class< ? >, ClassPlan > plans = new HashMap< Class< ? >, ClassPlan >();
+    
+    // only objects of these classes - and their subclasses - are walked
+    public final YedObjectGraph include( final Class< ? >... classes ) {
+        for ( Class< ? > aClass : classes ) {
+            this.includes.add( aClass );
+        }
+        this.plans.clear();
+        return this;
+    }
+    
+    public final YedObjectGraph exclude( final Class< ? >... classes ) {
+        for ( Class< ? > aClass : classes ) {
+            this.excludes.add( aClass );
+        }
+        this.plans.clear();
+        return this;
+    }
+    
+    // the roots are at depth 0
+    public final YedObjectGraph maxDepth( final int maxDepth ) {
+        if ( maxDepth < 0 ) throw new IllegalArgumentException( "maxDepth" );
+        
+        this.maxDepth = maxDepth;
+        return this;
+    }
+    
+    public final YedObjectGraph maxObjects( final int maxObjects ) {
+        if ( maxObjects < 0 ) throw new IllegalArgumentException( "maxObjects" );
+        
+        this.maxObjects = maxObjects;
+        return this;
+    }
+    
+    // returns the number of objects written
+    public final int write( final YedWriter writer, final Object... roots )
+        throws GraphmlIoException
+    {
+        IdentityHashMap< Object, YedBasicNode > nodes = new IdentityHashMap< Object, YedBasicNode >();
+        
+        ArrayList< Object > level = new ArrayList< Object >();
+        for ( Object root : roots ) {
+            if ( root != null && ! nodes.containsKey( root ) &&
+                this.node( root, nodes, writer ) != null )
+            {
+                level.add( root );
+            }
+        }
+        
+        for ( int depth = 0; ! level.isEmpty(); ++depth ) {
+            // objects are only added - and written - while within the limits
+            boolean expand = ( depth < this.maxDepth );
+            ArrayList< Object > nextLevel = new ArrayList< Object >();
+            
+            for ( Object object : level ) {
+                YedBasicNode node = nodes.get( object );
+                ClassPlan plan = this.plan( object.getClass() );
+                
+                if ( plan.elements ) {
+                    for ( Object element : (Object[])object ) {
+                        this.reference( node, element, expand, nodes, nextLevel, writer );
+                    }
+                } else {
+                    for ( MethodHandle getter : plan.references ) {
+                        this.reference( node, get( getter, object ), expand, nodes, nextLevel, writer );
+                    }
+                }
+            }
+            level = nextLevel;
+        }
+        return nodes.size();
+    }
+    
+    private final void reference(
+        final YedBasicNode fromNode,
+        final Object target,
+        final boolean expand,
+        final IdentityHashMap< Object, YedBasicNode > nodes,
+        final ArrayList< Object > nextLevel,
+        final YedWriter writer )
+        throws GraphmlIoException
+    {
+        if ( target == null ) {
+            return;
+        }
+        
+        YedBasicNode toNode = nodes.get( target );
+        if ( toNode == null && expand ) {
+            toNode = this.node( target, nodes, writer );
+            if ( toNode != null ) {
+                nextLevel.add( target );
+            }
+        }
+        if ( toNode != null ) {
+            writer.connectWithArrow( fromNode, toNode );
+        }
+    }
+    
+    // writes a node for object - or returns null if object is left out
+    private final YedBasicNode node(
+        final Object object,
+        final IdentityHashMap< Object, YedBasicNode > nodes,
+        final YedWriter writer )
+        throws GraphmlIoException
+    {
+        YedBasicNode node = nodes.get( object );
+        if ( node != null || nodes.size() >= this.maxObjects ) {
+            return node;
+        }
+        
+        ClassPlan plan = this.plan( object.getClass() );
+        if ( ! plan.walked ) {
+            return null;
+        }
+        
+        // not associated with the object - nodes are looked up by the
+        // associated object's equals and hashCode, rather than by identity
+        node = new YedBasicNode( this.label( object, plan ) );
+        nodes.put( object, node );
+        writer.add( node );
+        return node;
+    }
+    
+    private final String label( final Object object, final ClassPlan plan ) {
+        if ( object instanceof String ) {
+            return '"' + truncate( (String)object ) + '"';
+        } else if ( plan.value ) {
+            return truncate( String.valueOf( object ) );
+        } else if ( object.getClass().isArray() ) {
+            // int[3][] - the length goes in the first brackets
+            int brackets = plan.name.indexOf( "[]" );
+            return plan.name.substring( 0, brackets + 1 ) +
+                Array.getLength( object ) +
+                plan.name.substring( brackets + 1 );
+        }
+        
+        StringBuilder builder = new StringBuilder( plan.name );
+        for ( int i = 0; i < plan.values.length; ++i ) {
+            builder.append( '\n' ).
+                append( plan.valueNames[ i ] ).
+                append( " = " ).
+                append( truncate( String.valueOf( get( plan.values[ i ], object ) ) ) );
+        }
+        return builder.toString();
+    }
+    
+    private static final String truncate( final String text ) {
+        if ( text.length() <= MAX_LABEL_CHARS ) {
+            return text;
+        } else {
+            return text.substring( 0, MAX_LABEL_CHARS - 3 ) + "...";
+        }
+    }
+    
+    private static final Object get( final MethodHandle getter, final Object object ) {
+        try {
+            return (Object)getter.invokeExact( object );
+        } catch ( RuntimeException e ) {
+            throw e;
+        } catch ( Error e ) {
+            throw e;
+        } catch ( Throwable t ) {
+            // a field getter throws nothing checked
+            throw new IllegalStateException( t );
+        }
+    }
+    
+    private final ClassPlan plan( final Class< ? > aClass ) {
+        ClassPlan plan = this.plans.get( aClass );
+        if ( plan == null ) {
+            plan = new ClassPlan( aClass, this.isWalked( aClass ) );
+            this.plans.put( aClass, plan );
+        }
+        return plan;
+    }
+    
+    private final boolean isWalked( final Class< ? > aClass ) {
+        for ( Class< ? > excluded : this.excludes ) {
+            if ( excluded.isAssignableFrom( aClass ) ) {
+                return false;
+            }
+        }
+        if ( this.includes.isEmpty() ) {
+            return true;
+        }
+        for ( Class< ? > included : this.includes ) {
+            if ( included.isAssignableFrom( aClass ) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /*
+     * What there is to read from the objects of a class - its instance
+     * fields, inherited ones too, split into references to follow and
+     * primitives to show.
+     */
+    private static final class ClassPlan {
+        private static final MethodHandle[] NO_GETTERS = {};
+        private static final String[] NO_NAMES = {};
+        private static final MethodType GETTER_TYPE = MethodType.methodType( Object.class, Object.class );
+        
+        final String name;
+        final boolean walked;
+        final boolean value;
+        final boolean elements;
+        final MethodHandle[] references;
+        final MethodHandle[] values;
+        final String[] valueNames;
+        
+        ClassPlan( final Class< ? > aClass, final boolean walked ) {
+            this.name = aClass.getSimpleName();
+            this.walked = walked;
+            this.value = isValue( aClass );
+            // the elements of primitive arrays are left in the array
+            this.elements = aClass.isArray() && ! aClass.getComponentType().isPrimitive();
+            
+            ArrayList< MethodHandle > references = new ArrayList< MethodHandle >();
+            ArrayList< MethodHandle > values = new ArrayList< MethodHandle >();
+            ArrayList< String > valueNames = new ArrayList< String >();
+            if ( walked && ! this.value && ! aClass.isArray() ) {
+                for ( Class< ? > cur = aClass; cur != null; cur = cur.getSuperclass() ) {
+                    MethodHandles.Lookup lookup = lookup( cur );
+                    for ( Field field : cur.getDeclaredFields() ) {
+                        MethodHandle getter = Modifier.isStatic( field.getModifiers() ) ?
+                            null : getter( lookup, field );
+                        if ( getter == null ) {
+                            continue;
+                        }
+                        if ( field.getType().isPrimitive() ) {
+                            values.add( getter );
+                            valueNames.add( field.getName() );
+                        } else {
+                            references.add( getter );
+                        }
+                    }
+                }
+            }
+            this.references = references.toArray( NO_GETTERS );
+            this.values = values.toArray( NO_GETTERS );
+            this.valueNames = valueNames.toArray( NO_NAMES );
+        }
+        
+        // shown by their toString rather than their fields
+        private static final boolean isValue( final Class< ? > aClass ) {
+            return aClass == String.class ||
+                aClass == Boolean.class ||
+                aClass == Character.class ||
+                aClass == Class.class ||
+                Number.class.isAssignableFrom( aClass ) ||
+                Enum.class.isAssignableFrom( aClass );
+        }
+        
+        /*
+         * Classes in packages that are not open to this module - e.g. the
+         * JDK's own - only have their public fields read.
+         */
+        private static final MethodHandles.Lookup lookup( final Class< ? > aClass ) {
+            try {
+                return MethodHandles.privateLookupIn( aClass, MethodHandles.lookup() );
+            } catch ( IllegalAccessException e ) {
+                return MethodHandles.publicLookup();
+            }
+        }
+        
+        // null if the field cannot be read
+        private static final MethodHandle getter(
+            final MethodHandles.Lookup lookup,
+            final Field field )
+        {
+            try {
+                return lookup.unreflectGetter( field ).asType( GETTER_TYPE );
+            } catch ( IllegalAccessException e ) {
+                return null;
+            }
+        }
+    }
+}
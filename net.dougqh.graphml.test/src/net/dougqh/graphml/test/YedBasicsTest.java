@@ -50,6 +50,7 @@ public final class YedBasicsTest {
 			writer.edge( alphaId, betaId );
 			writer.edge( alphaId, gammaId );
 			writer.edge( alphaId, deltaId );
+			writer.resolveEdges();
 			
 			writer.endGraph();
 			writer.endGraphml();
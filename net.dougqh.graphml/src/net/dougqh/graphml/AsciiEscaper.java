@@ -0,0 +1,193 @@
+package net.dougqh.graphml;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/*
+ * Fast path for text and attribute values that are plain ASCII - which is
+ * nearly all of them.  The StAX writer escapes and encodes one char at a
+ * time and hands the stream one byte at a time; this checks four chars at
+ * a time (SWAR - one 16-bit lane of a long per char) and, when a chunk has
+ * nothing to escape, copies it as is, then hands over the whole value in
+ * one write.
+ *
+ * Escaping is exactly what the JDK's StAX writer does, so the output does
+ * not depend on which path a value took: & < > always, " in attributes,
+ * everything else as is.  Values with non-ASCII chars are left to the StAX
+ * writer, so that it stays the only thing that encodes UTF-8.
+ */
+final class AsciiEscaper {
+    private static final long LANES = 0x0001000100010001L;
+    private static final long HIGH_BITS = 0x8000800080008000L;
+    private static final long NON_ASCII = 0xFF80FF80FF80FF80L;
+    
+    private static final long AMP = LANES * '&';
+    private static final long LT = LANES * '<';
+    private static final long GT = LANES * '>';
+    private static final long QUOT = LANES * '"';
+    
+    // longest escape - &quot;
+    private static final int MAX_EXPANSION = 6;
+    
+    private char[] chars = new char[ 256 ];
+    private byte[] bytes = new byte[ 256 * MAX_EXPANSION ];
+    
+    /*
+     * Returns false - having written nothing - if text has to go through
+     * the StAX writer instead.
+     */
+    final boolean writeText( final OutputStream out, final String text )
+        throws IOException
+    {
+        this.ensureCapacity( text.length() );
+        int length = this.escape( text, 0, false );
+        if ( length < 0 ) {
+            return false;
+        }
+        out.write( this.bytes, 0, length );
+        return true;
+    }
+    
+    // writes  name="value"  as the StAX writer would
+    final boolean writeAttribute(
+        final OutputStream out,
+        final String name,
+        final String value )
+        throws IOException
+    {
+        int nameLength = name.length();
+        // name and quotes take a byte per char - covered by the expansion
+        this.ensureCapacity( nameLength + 3 + value.length() );
+        
+        byte[] bytes = this.bytes;
+        bytes[ 0 ] = ' ';
+        for ( int i = 0; i < nameLength; ++i ) {
+            char ch = name.charAt( i );
+            if ( ch >= 0x80 ) {
+                return false;
+            }
+            bytes[ i + 1 ] = (byte)ch;
+        }
+        bytes[ nameLength + 1 ] = '=';
+        bytes[ nameLength + 2 ] = '"';
+        
+        int length = this.escape( value, nameLength + 3, true );
+        if ( length < 0 ) {
+            return false;
+        }
+        this.bytes[ length ] = '"';
+        out.write( this.bytes, 0, length + 1 );
+        return true;
+    }
+    
+    /*
+     * Escapes value into bytes from offset - returns where the escaped
+     * value ends, or -1 if value has non-ASCII chars.  The caller ensures
+     * the capacity, so bytes before offset are kept.
+     */
+    private final int escape(
+        final String value,
+        final int offset,
+        final boolean attribute )
+    {
+        int length = value.length();
+        
+        char[] chars = this.chars;
+        byte[] bytes = this.bytes;
+        value.getChars( 0, length, chars, 0 );
+        
+        int pos = offset;
+        int i = 0;
+        for ( ; i + 4 <= length; i += 4 ) {
+            long word = chars[ i ] |
+                (long)chars[ i + 1 ] << 16 |
+                (long)chars[ i + 2 ] << 32 |
+                (long)chars[ i + 3 ] << 48;
+            if ( ( word & NON_ASCII ) != 0 ) {
+                return -1;
+            }
+            
+            if ( hasLane( word, AMP ) || hasLane( word, LT ) || hasLane( word, GT ) ||
+                ( attribute && hasLane( word, QUOT ) ) )
+            {
+                for ( int j = i; j < i + 4; ++j ) {
+                    pos = escape( chars[ j ], bytes, pos, attribute );
+                }
+            } else {
+                bytes[ pos ] = (byte)word;
+                bytes[ pos + 1 ] = (byte)( word >>> 16 );
+                bytes[ pos + 2 ] = (byte)( word >>> 32 );
+                bytes[ pos + 3 ] = (byte)( word >>> 48 );
+                pos += 4;
+            }
+        }
+        for ( ; i < length; ++i ) {
+            if ( chars[ i ] >= 0x80 ) {
+                return -1;
+            }
+            pos = escape( chars[ i ], bytes, pos, attribute );
+        }
+        return pos;
+    }
+    
+    /*
+     * True if some lane of word equals the lane of pattern - or, rarely,
+     * a false positive next to a lane that does, which only costs the
+     * char by char path for that chunk.
+     */
+    private static final boolean hasLane( final long word, final long pattern ) {
+        long x = word ^ pattern;
+        return ( ( x - LANES ) & ~x & HIGH_BITS ) != 0;
+    }
+    
+    private static final int escape(
+        final char ch,
+        final byte[] bytes,
+        final int pos,
+        final boolean attribute )
+    {
+        switch ( ch ) {
+            case '&':
+            return put( "&amp;", bytes, pos );
+            
+            case '<':
+            return put( "&lt;", bytes, pos );
+            
+            case '>':
+            return put( "&gt;", bytes, pos );
+            
+            case '"':
+            if ( attribute ) {
+                return put( "&quot;", bytes, pos );
+            }
+            bytes[ pos ] = (byte)ch;
+            return pos + 1;
+            
+            default:
+            bytes[ pos ] = (byte)ch;
+            return pos + 1;
+        }
+    }
+    
+    private static final int put(
+        final String entity,
+        final byte[] bytes,
+        final int pos )
+    {
+        int length = entity.length();
+        for ( int i = 0; i < length; ++i ) {
+            bytes[ pos + i ] = (byte)entity.charAt( i );
+        }
+        return pos + length;
+    }
+    
+    // worst case, every char of a value is escaped
+    private final void ensureCapacity( final int numChars ) {
+        if ( numChars > this.chars.length ) {
+            this.chars = new char[ Math.max( numChars, this.chars.length * 2 ) ];
+        }
+        if ( numChars * MAX_EXPANSION > this.bytes.length ) {
+            this.bytes = new byte[ Math.max( numChars * MAX_EXPANSION, this.bytes.length * 2 ) ];
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package net.dougqh.graphml;
+
+/*
+ * Digits are 0-9, A-Z, a-z - so ids stay valid XML names after the prefix
+ * and order the same way as the numbers they encode for equal lengths.
+ */
+final class Base62 {
+    private static final char[] DIGITS =
+        "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz".toCharArray();
+    
+    private static final int MAX_DIGITS = 6;
+    
+    private Base62() {}
+    
+    static final String toString( final char prefix, final int value ) {
+        char[] chars = new char[ MAX_DIGITS + 1 ];
+        int pos = chars.length;
+        int remaining = value;
+        do {
+            chars[ --pos ] = DIGITS[ remaining % 62 ];
+            remaining /= 62;
+        } while ( remaining != 0 );
+        chars[ --pos ] = prefix;
+        return new String( chars, pos, chars.length - pos );
+    }
+    
+    /*
+     * Returns -1 unless id is prefix followed by the canonical base-62 form
+     * of a non-negative int - i.e. without leading zeros.
+     */
+    static final int parse( final char prefix, final String id ) {
+        int length = id.length();
+        if ( length < 2 || length > MAX_DIGITS + 1 || id.charAt( 0 ) != prefix ) {
+            return -1;
+        }
+        if ( length > 2 && id.charAt( 1 ) == '0' ) {
+            return -1;
+        }
+        
+        long value = 0;
+        for ( int i = 1; i < length; ++i ) {
+            int digit = digit( id.charAt( i ) );
+            if ( digit < 0 ) {
+                return -1;
+            }
+            value = value * 62 + digit;
+        }
+        return value > Integer.MAX_VALUE ? -1 : (int)value;
+    }
+    
+    private static final int digit( final char ch ) {
+        if ( ch >= '0' && ch <= '9' ) {
+            return ch - '0';
+        } else if ( ch >= 'A' && ch <= 'Z' ) {
+            return ch - 'A' + 10;
+        } else if ( ch >= 'a' && ch <= 'z' ) {
+            return ch - 'a' + 36;
+        } else {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package net.dougqh.graphml;
+
+final class BloomFilter {
+    private static final int NUM_HASHES = 7;
+    private static final int BITS_PER_ELEMENT = 10;
+    
+    private final long[] bits;
+    private final int numBits;
+    
+    BloomFilter( final int expectedElements ) {
+        long numBits = Math.max( 64L, (long)expectedElements * BITS_PER_ELEMENT );
+        this.numBits = (int)Math.min( numBits, Integer.MAX_VALUE - 63 );
+        this.bits = new long[ ( this.numBits + 63 ) >>> 6 ];
+    }
+    
+    final void add( final String value ) {
+        int hash1 = value.hashCode();
+        int hash2 = mix( hash1 );
+        for ( int i = 0; i < NUM_HASHES; ++i ) {
+            int bit = index( hash1 + i * hash2 );
+            this.bits[ bit >>> 6 ] |= 1L << bit;
+        }
+    }
+    
+    final boolean mightContain( final String value ) {
+        int hash1 = value.hashCode();
+        int hash2 = mix( hash1 );
+        for ( int i = 0; i < NUM_HASHES; ++i ) {
+            int bit = index( hash1 + i * hash2 );
+            if ( ( this.bits[ bit >>> 6 ] & ( 1L << bit ) ) == 0 ) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private final int index( final int hash ) {
+        return ( hash & Integer.MAX_VALUE ) % this.numBits;
+    }
+    
+    private static final int mix( final int hash ) {
+        int h = hash * 0x9E3779B9;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return h | 1;
+    }
+}
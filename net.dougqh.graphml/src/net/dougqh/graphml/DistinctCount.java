@@ -0,0 +1,105 @@
+package net.dougqh.graphml;
+
+/*
+ * Counts distinct 64-bit values exactly in an open addressing set until
+ * the set reaches its bound, then switches to a HyperLogLog estimate - so
+ * small counts stay exact and memory stays bounded.
+ */
+final class DistinctCount {
+    private static final long EMPTY = 0L;
+    
+    private final int maxExact;
+    private long[] values = new long[ 64 ];
+    private int size = 0;
+    private boolean hasEmpty = false;
+    private HyperLogLog sketch = null;
+    
+    DistinctCount( final int maxExact ) {
+        this.maxExact = maxExact;
+    }
+    
+    final void add( final String value ) {
+        this.add( GraphmlFragmentKeys.hash( GraphmlFragmentKeys.SEED, value ) );
+    }
+    
+    final void add( final long value ) {
+        if ( this.sketch != null ) {
+            this.sketch.add( value );
+            return;
+        }
+        
+        if ( value == EMPTY ) {
+            this.hasEmpty = true;
+            return;
+        }
+        
+        int mask = this.values.length - 1;
+        int slot = mix( value ) & mask;
+        while ( this.values[ slot ] != EMPTY ) {
+            if ( this.values[ slot ] == value ) {
+                return;
+            }
+            slot = ( slot + 1 ) & mask;
+        }
+        this.values[ slot ] = value;
+        ++this.size;
+        
+        if ( this.size > this.maxExact ) {
+            this.toSketch();
+        } else if ( this.size * 2 > this.values.length ) {
+            this.rehash();
+        }
+    }
+    
+    final long count() {
+        if ( this.sketch != null ) {
+            return this.sketch.estimate();
+        } else {
+            return this.hasEmpty ? this.size + 1 : this.size;
+        }
+    }
+    
+    final boolean isEstimated() {
+        return this.sketch != null;
+    }
+    
+    private final void toSketch() {
+        HyperLogLog sketch = new HyperLogLog();
+        for ( long value : this.values ) {
+            if ( value != EMPTY ) {
+                sketch.add( value );
+            }
+        }
+        if ( this.hasEmpty ) {
+            sketch.add( EMPTY );
+        }
+        this.sketch = sketch;
+        this.values = null;
+    }
+    
+    private final void rehash() {
+        long[] oldValues = this.values;
+        this.values = new long[ oldValues.length * 2 ];
+        
+        int mask = this.values.length - 1;
+        for ( long value : oldValues ) {
+            if ( value != EMPTY ) {
+                int slot = mix( value ) & mask;
+                while ( this.values[ slot ] != EMPTY ) {
+                    slot = ( slot + 1 ) & mask;
+                }
+                this.values[ slot ] = value;
+            }
+        }
+    }
+    
+    private static final int mix( final long value ) {
+        long h = value * 0x9E3779B97F4A7C15L;
+        return (int)( h ^ ( h >>> 32 ) );
+    }
+    
+    @Override
+    public final String toString() {
+        return ( this.isEstimated() ? "~" : "" ) + this.count();
+    }
+}
@@ -0,0 +1,319 @@
+package net.dougqh.graphml;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/*
+ * Buffers edges as packed longs - see GraphmlWriter.pack.
+ * 
+ * Edges stay in insertion order while they fit in the memory budget.  Once
+ * the budget is exceeded, the buffer is sorted and spilled to a temporary
+ * file as a run, and the runs are k-way merged when the edges are read
+ * back.  At most MERGE_FAN_IN runs are read at once - beyond that, the
+ * oldest runs are first merged into longer ones - so the heap and file
+ * handles used are fixed regardless of the number of edges.
+ */
+final class EdgeStore {
+    static final int RECORD_BYTES = 8;
+    
+    private static final int MIN_CAPACITY = 1024;
+    private static final int MAX_RECORDS = Integer.MAX_VALUE - 8;
+    private static final int IO_BUFFER_SIZE = 64 * 1024;
+    private static final int MERGE_FAN_IN = 32;
+    
+    private long[] records = new long[ 32 ];
+    private int size = 0;
+    
+    private int maxRecords = MAX_RECORDS;
+    private File spillDirectory = null;
+    private final List< File > runs = new ArrayList< File >();
+    private long spilled = 0;
+    
+    final void memoryBudget( final long bytes ) {
+        this.maxRecords = (int)Math.max(
+            MIN_CAPACITY,
+            Math.min( bytes / RECORD_BYTES, MAX_RECORDS ) );
+    }
+    
+    final void spillDirectory( final File directory ) {
+        this.spillDirectory = directory;
+    }
+    
+    final void ensureCapacity( final int numEdges ) {
+        int capacity = Math.min( numEdges, this.maxRecords );
+        if ( capacity > this.records.length ) {
+            this.records = Arrays.copyOf( this.records, capacity );
+        }
+    }
+    
+    final long size() {
+        return this.spilled + this.size;
+    }
+    
+    final long spilled() {
+        return this.spilled;
+    }
+    
+    final void add( final long record ) throws GraphmlIoException {
+        if ( this.size == this.records.length ) {
+            if ( this.size >= this.maxRecords ) {
+                this.spill();
+            } else {
+                int capacity = (int)Math.min(
+                    this.maxRecords,
+                    Math.max( this.size * 2L, MIN_CAPACITY ) );
+                this.records = Arrays.copyOf( this.records, capacity );
+            }
+        }
+        this.records[ this.size++ ] = record;
+    }
+    
+    private final void spill() throws GraphmlIoException {
+        Arrays.sort( this.records, 0, this.size );
+        
+        File run = this.newRun();
+        try {
+            DataOutputStream out = output( run );
+            try {
+                for ( int i = 0; i < this.size; ++i ) {
+                    out.writeLong( this.records[ i ] );
+                }
+            } finally {
+                out.close();
+            }
+        } catch ( IOException e ) {
+            throw new GraphmlIoException( e );
+        }
+        
+        this.spilled += this.size;
+        this.size = 0;
+    }
+    
+    final Cursor cursor() throws GraphmlIoException {
+        if ( this.runs.isEmpty() ) {
+            return new MemoryCursor( this.records, 0, this.size );
+        }
+        
+        Arrays.sort( this.records, 0, this.size );
+        
+        while ( this.runs.size() > MERGE_FAN_IN ) {
+            this.mergeOldestRuns();
+        }
+        
+        PriorityQueue< Cursor > heads = open( this.runs );
+        MemoryCursor memory = new MemoryCursor( this.records, 0, this.size );
+        if ( memory.next() ) {
+            heads.add( memory );
+        }
+        return new MergeCursor( heads );
+    }
+    
+    private final void mergeOldestRuns() throws GraphmlIoException {
+        File merged = this.newRun();
+        List< File > oldest = this.runs.subList( 0, MERGE_FAN_IN );
+        
+        MergeCursor cursor = new MergeCursor( open( oldest ) );
+        boolean written = false;
+        try {
+            DataOutputStream out = output( merged );
+            try {
+                while ( cursor.next() ) {
+                    out.writeLong( cursor.record() );
+                }
+            } finally {
+                out.close();
+            }
+            written = true;
+        } catch ( GraphmlIoException e ) {
+            throw e;
+        } catch ( IOException e ) {
+            throw new GraphmlIoException( e );
+        } finally {
+            cursor.close();
+            // the oldest runs still hold these edges
+            if ( ! written ) {
+                this.runs.remove( merged );
+                merged.delete();
+            }
+        }
+        
+        for ( File run : oldest ) {
+            run.delete();
+        }
+        oldest.clear();
+    }
+    
+    // registered before anything is written, so clear always deletes it
+    private final File newRun() throws GraphmlIoException {
+        try {
+            File run = File.createTempFile( "edges", ".run", this.spillDirectory );
+            this.runs.add( run );
+            return run;
+        } catch ( IOException e ) {
+            throw new GraphmlIoException( e );
+        }
+    }
+    
+    private static final DataOutputStream output( final File run ) throws IOException {
+        return new DataOutputStream(
+            new BufferedOutputStream( new FileOutputStream( run ), IO_BUFFER_SIZE ) );
+    }
+    
+    private static final PriorityQueue< Cursor > open( final List< File > runs )
+        throws GraphmlIoException
+    {
+        PriorityQueue< Cursor > heads = new PriorityQueue< Cursor >( runs.size() + 1 );
+        try {
+            for ( File run : runs ) {
+                RunCursor cursor = new RunCursor( run );
+                if ( cursor.next() ) {
+                    heads.add( cursor );
+                } else {
+                    cursor.close();
+                }
+            }
+        } catch ( IOException e ) {
+            for ( Cursor cursor : heads ) {
+                cursor.close();
+            }
+            throw new GraphmlIoException( e );
+        }
+        return heads;
+    }
+    
+    final void clear() {
+        this.size = 0;
+        this.spilled = 0;
+        for ( File run : this.runs ) {
+            run.delete();
+        }
+        this.runs.clear();
+    }
+    
+    final void clearSettings() {
+        this.maxRecords = MAX_RECORDS;
+        this.spillDirectory = null;
+    }
+    
+    static abstract class Cursor implements Comparable< Cursor > {
+        protected long record;
+        
+        abstract boolean next() throws GraphmlIoException;
+        
+        final long record() {
+            return this.record;
+        }
+        
+        void close() {
+        }
+        
+        @Override
+        public final int compareTo( final Cursor that ) {
+            if ( this.record < that.record ) {
+                return -1;
+            } else if ( this.record > that.record ) {
+                return 1;
+            } else {
+                return 0;
+            }
+        }
+    }
+    
+    private static final class MemoryCursor extends Cursor {
+        private final long[] records;
+        private int index;
+        private final int end;
+        
+        MemoryCursor(
+            final long[] records,
+            final int start,
+            final int end )
+        {
+            this.records = records;
+            this.index = start;
+            this.end = end;
+        }
+        
+        @Override
+        final boolean next() {
+            if ( this.index == this.end ) {
+                return false;
+            }
+            this.record = this.records[ this.index++ ];
+            return true;
+        }
+    }
+    
+    private static final class RunCursor extends Cursor {
+        private final DataInputStream in;
+        
+        RunCursor( final File run ) throws IOException {
+            this.in = new DataInputStream(
+                new BufferedInputStream( new FileInputStream( run ), IO_BUFFER_SIZE ) );
+        }
+        
+        @Override
+        final boolean next() throws GraphmlIoException {
+            try {
+                this.record = this.in.readLong();
+                return true;
+            } catch ( EOFException e ) {
+                return false;
+            } catch ( IOException e ) {
+                throw new GraphmlIoException( e );
+            }
+        }
+        
+        @Override
+        final void close() {
+            try {
+                this.in.close();
+            } catch ( IOException e ) {
+                // only ever read from - nothing is lost
+            }
+        }
+    }
+    
+    private static final class MergeCursor extends Cursor {
+        private final PriorityQueue< Cursor > heads;
+        
+        MergeCursor( final PriorityQueue< Cursor > heads ) {
+            this.heads = heads;
+        }
+        
+        @Override
+        final boolean next() throws GraphmlIoException {
+            Cursor head = this.heads.poll();
+            if ( head == null ) {
+                return false;
+            }
+            
+            this.record = head.record();
+            if ( head.next() ) {
+                this.heads.add( head );
+            } else {
+                head.close();
+            }
+            return true;
+        }
+        
+        @Override
+        final void close() {
+            for ( Cursor cursor : this.heads ) {
+                cursor.close();
+            }
+            this.heads.clear();
+        }
+    }
+}
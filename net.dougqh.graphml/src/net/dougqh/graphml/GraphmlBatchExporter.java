@@ -0,0 +1,154 @@
+package net.dougqh.graphml;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/*
+ * Exports many small documents concurrently.  Each document is encoded
+ * into a pooled in-memory buffer and then written to its file in a single
+ * call, so a file handle is only held for the write itself and the number
+ * of files open at once is capped independently of the number of tasks.
+ * 
+ * Buffers and the writers that encode into them are pooled in a shared
+ * queue rather than per thread, so the pool still works when the executor
+ * starts a thread per task - e.g. Executors.newVirtualThreadPerTaskExecutor()
+ * on Java 21.
+ */
+public final class GraphmlBatchExporter implements Closeable {
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_POOLED_BUFFER_SIZE = 16 * 1024 * 1024;
+    
+    private final ExecutorService executor;
+    private final boolean shutdown;
+    private final Semaphore fileHandles;
+    
+    private final Queue< Encoder > encoders = new ConcurrentLinkedQueue< Encoder >();
+    
+    public GraphmlBatchExporter( final int maxOpenFiles ) {
+        this(
+            Executors.newFixedThreadPool( Runtime.getRuntime().availableProcessors() ),
+            true,
+            maxOpenFiles );
+    }
+    
+    public GraphmlBatchExporter(
+        final ExecutorService executor,
+        final int maxOpenFiles )
+    {
+        this( executor, false, maxOpenFiles );
+    }
+    
+    private GraphmlBatchExporter(
+        final ExecutorService executor,
+        final boolean shutdown,
+        final int maxOpenFiles )
+    {
+        if ( maxOpenFiles <= 0 ) throw new IllegalArgumentException( "maxOpenFiles" );
+        
+        this.executor = executor;
+        this.shutdown = shutdown;
+        this.fileHandles = new Semaphore( maxOpenFiles );
+    }
+    
+    public final Future< GraphmlExportResult > submit(
+        final File file,
+        final GraphmlDocument document )
+    {
+        return this.executor.submit( new Callable< GraphmlExportResult >() {
+            @Override
+            public final GraphmlExportResult call() throws IOException, InterruptedException {
+                return GraphmlBatchExporter.this.export( file, document );
+            }
+        } );
+    }
+    
+    final GraphmlExportResult export(
+        final File file,
+        final GraphmlDocument document )
+        throws IOException, InterruptedException
+    {
+        Encoder encoder = this.acquireEncoder();
+        ByteArrayOutputStream buffer = encoder.buffer;
+        try {
+            long encodeStart = System.nanoTime();
+            GraphmlWriter writer = encoder.writer.reset( buffer );
+            try {
+                document.write( writer );
+            } finally {
+                writer.close();
+            }
+            long encodeNanos = System.nanoTime() - encodeStart;
+            
+            long waitStart = System.nanoTime();
+            this.fileHandles.acquire();
+            long waitNanos = System.nanoTime() - waitStart;
+            
+            long writeStart = System.nanoTime();
+            try {
+                FileOutputStream out = new FileOutputStream( file );
+                try {
+                    buffer.writeTo( out );
+                } finally {
+                    out.close();
+                }
+            } finally {
+                this.fileHandles.release();
+            }
+            long writeNanos = System.nanoTime() - writeStart;
+            
+            return new GraphmlExportResult(
+                file,
+                buffer.size(),
+                encodeNanos,
+                waitNanos,
+                writeNanos );
+        } finally {
+            this.releaseEncoder( encoder );
+        }
+    }
+    
+    private final Encoder acquireEncoder() throws GraphmlIoException {
+        Encoder encoder = this.encoders.poll();
+        if ( encoder == null ) {
+            return new Encoder();
+        } else {
+            return encoder;
+        }
+    }
+    
+    private final void releaseEncoder( final Encoder encoder ) {
+        // don't let one huge document pin its buffer forever
+        if ( encoder.buffer.size() <= MAX_POOLED_BUFFER_SIZE ) {
+            encoder.buffer.reset();
+            this.encoders.offer( encoder );
+        }
+    }
+    
+    @Override
+    public final void close() {
+        if ( this.shutdown ) {
+            this.executor.shutdown();
+        }
+        this.encoders.clear();
+    }
+    
+    private static final class Encoder {
+        final ByteArrayOutputStream buffer =
+            new ByteArrayOutputStream( INITIAL_BUFFER_SIZE );
+        final GraphmlWriter writer;
+        
+        Encoder() throws GraphmlIoException {
+            this.writer = new GraphmlWriter( this.buffer );
+        }
+    }
+}
@@ -0,0 +1,6 @@
+package net.dougqh.graphml;
+
+public interface GraphmlCommand {
+    // replayed against every sink of a GraphmlTee, possibly concurrently
+    public abstract void write( final GraphmlWriter writer ) throws GraphmlIoException;
+}
@@ -0,0 +1,8 @@
+package net.dougqh.graphml;
+
+import java.io.IOException;
+
+public interface GraphmlDocument {
+    // writes a complete document - startGraphml through endGraphml
+    public abstract void write( final GraphmlWriter writer ) throws IOException;
+}
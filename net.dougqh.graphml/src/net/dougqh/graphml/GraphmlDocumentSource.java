@@ -0,0 +1,9 @@
+package net.dougqh.graphml;
+
+import java.io.IOException;
+import java.net.URI;
+
+public interface GraphmlDocumentSource {
+    // the document for a request - or null if there is none for uri
+    public abstract GraphmlDocument document( final URI uri ) throws IOException;
+}
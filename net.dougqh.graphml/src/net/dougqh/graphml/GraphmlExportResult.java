@@ -0,0 +1,57 @@
+package net.dougqh.graphml;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+public final class GraphmlExportResult {
+    private final File file;
+    private final long bytes;
+    private final long encodeNanos;
+    private final long waitNanos;
+    private final long writeNanos;
+    
+    GraphmlExportResult(
+        final File file,
+        final long bytes,
+        final long encodeNanos,
+        final long waitNanos,
+        final long writeNanos )
+    {
+        this.file = file;
+        this.bytes = bytes;
+        this.encodeNanos = encodeNanos;
+        this.waitNanos = waitNanos;
+        this.writeNanos = writeNanos;
+    }
+    
+    public final File getFile() {
+        return this.file;
+    }
+    
+    public final long getBytes() {
+        return this.bytes;
+    }
+    
+    // time spent producing the document in memory
+    public final long getEncodeTime( final TimeUnit unit ) {
+        return unit.convert( this.encodeNanos, TimeUnit.NANOSECONDS );
+    }
+    
+    // time spent waiting for a file handle
+    public final long getWaitTime( final TimeUnit unit ) {
+        return unit.convert( this.waitNanos, TimeUnit.NANOSECONDS );
+    }
+    
+    // time spent opening, writing and closing the file
+    public final long getWriteTime( final TimeUnit unit ) {
+        return unit.convert( this.writeNanos, TimeUnit.NANOSECONDS );
+    }
+    
+    @Override
+    public final String toString() {
+        return this.file + ": " + this.bytes + " bytes, encode " +
+            TimeUnit.NANOSECONDS.toMicros( this.encodeNanos ) + "us, wait " +
+            TimeUnit.NANOSECONDS.toMicros( this.waitNanos ) + "us, write " +
+            TimeUnit.NANOSECONDS.toMicros( this.writeNanos ) + "us";
+    }
+}
@@ -1,5 +1,8 @@
 package net.dougqh.graphml;
 
+import java.io.IOException;
+import java.util.List;
+
 import net.dougqh.graphml.GraphmlWriter.Edge;
 
 @SuppressWarnings( "unchecked" )
@@ -17,6 +20,19 @@ public abstract class GraphmlExtension< T extends GraphmlExtension< T > > {
     protected void edge( final Edge edge ) throws GraphmlIoException {
     }
     
+    // if true, prepareEdges is called with each batch of edges
+    protected boolean batchesEdges() {
+        return false;
+    }
+    
+    /*
+     * Called before a batch of edges is written, with the edges in the
+     * order they are passed to edge - except that edges dropped as
+     * unresolved are never passed to edge.
+     */
+    protected void prepareEdges( final List< ? extends Edge > edges ) throws IOException {
+    }
+    
     protected final T start( final String element ) throws GraphmlIoException {
         this.graphmlWriter.start( element );
         return (T)this;
@@ -41,6 +57,21 @@ public abstract class GraphmlExtension< T extends GraphmlExtension< T > > {
         return (T)this;
     }
     
+    protected final T startLeaf(
+        final String prefix,
+        final String element,
+        final String namespaceUri )
+        throws GraphmlIoException
+    {
+        this.graphmlWriter.startLeaf( prefix, element, namespaceUri );
+        return (T)this;
+    }
+    
+    protected final T endLeaf() throws GraphmlIoException {
+        this.graphmlWriter.endLeaf();
+        return (T)this;
+    }
+    
     protected final T characters( final String text ) throws GraphmlIoException {
         this.graphmlWriter.characters( text );
         return (T)this;
@@ -0,0 +1,610 @@
+package net.dougqh.graphml;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/*
+ * Checks an export in a single streaming pass - counts, degrees, self loops,
+ * parallel edges, dangling references, label lengths, key usage and, for
+ * yEd files, the number of distinct styles.
+ *
+ * Memory is a few bytes per node: degrees are kept in an int array indexed
+ * by node number, which works because ids written by GraphmlWriter are just
+ * numbers - ids from elsewhere also cost a map entry, up to a bound past
+ * which further foreign nodes are only counted.  Parallel edges and
+ * distinct styles are counted exactly up to a bound, then estimated with
+ * HyperLogLog - see DistinctCount.
+ */
+public final class GraphmlFileStats {
+    private static final XMLInputFactory FACTORY = XMLInputFactory.newInstance();
+    
+    // graphs past this many are still counted, but not itemized
+    private static final int MAX_GRAPHS = 4096;
+    // node numbers past this are treated like foreign ids - bounds the arrays
+    private static final int MAX_NODE_NUMBER = 1 << 28;
+    // as are numbers more than this far past twice the numbers seen so far
+    private static final int MIN_REACH = 1 << 16;
+    // distinct counts past this are estimated - bounds each set to 32MB
+    private static final int MAX_EXACT = 1 << 21;
+    // foreign ids past this many are only counted - bounds the id map
+    private static final int MAX_FOREIGN_IDS = 1 << 18;
+    // keys of untracked foreign ids are hashes above every other key
+    private static final long UNTRACKED_KEY = 1L << 31;
+    
+    private static final int UNDECIDED = 0;
+    private static final int DECIMAL = 1;
+    private static final int BASE62 = 2;
+    
+    public static final GraphmlFileStats read( final File file )
+        throws GraphmlIoException
+    {
+        try {
+            InputStream in = new BufferedInputStream( new FileInputStream( file ), 64 * 1024 );
+            try {
+                return read( in );
+            } finally {
+                in.close();
+            }
+        } catch ( GraphmlIoException e ) {
+            throw e;
+        } catch ( IOException e ) {
+            throw new GraphmlIoException( e );
+        }
+    }
+    
+    public static final GraphmlFileStats read( final InputStream in )
+        throws GraphmlIoException
+    {
+        GraphmlFileStats stats = new GraphmlFileStats();
+        try {
+            XMLStreamReader reader = FACTORY.createXMLStreamReader( in );
+            try {
+                stats.read( reader );
+            } finally {
+                reader.close();
+            }
+        } catch ( XMLStreamException e ) {
+            throw new GraphmlIoException( e );
+        }
+        stats.finish();
+        return stats;
+    }
+    
+    private long graphs = 0;
+    private long nodes = 0;
+    private long edges = 0;
+    private long hyperedges = 0;
+    private long selfLoops = 0;
+    private long danglingReferences = 0;
+    private long danglingNodes = 0;
+    private long duplicateNodes = 0;
+    private int maxDegree = 0;
+    private final long[] degreeHistogram = new long[ 33 ];
+    
+    private long labels = 0;
+    private long totalLabelLength = 0;
+    private int maxLabelLength = 0;
+    private final long[] labelLengthHistogram = new long[ 33 ];
+    
+    private final LinkedHashMap< String, long[] > graphCounts =
+        new LinkedHashMap< String, long[] >();
+    private final ArrayList< long[] > openGraphs = new ArrayList< long[] >();
+    
+    private final LinkedHashMap< String, String > keyNames = new LinkedHashMap< String, String >();
+    private final HashMap< String, Long > keyUsage = new HashMap< String, Long >();
+    
+    private final DistinctCount edgePairs = new DistinctCount( MAX_EXACT );
+    private final DistinctCount shapes = new DistinctCount( MAX_EXACT );
+    private final DistinctCount fills = new DistinctCount( MAX_EXACT );
+    private final DistinctCount styles = new DistinctCount( MAX_EXACT );
+    private boolean styled = false;
+    private long style = GraphmlFragmentKeys.SEED;
+    
+    private int idMode = UNDECIDED;
+    private final NodeTable numbered = new NodeTable();
+    private final NodeTable foreign = new NodeTable();
+    private final HashMap< String, Integer > foreignNumbers = new HashMap< String, Integer >();
+    private final DistinctCount untrackedNodes = new DistinctCount( MAX_EXACT );
+    // the least number treated as foreign for being too far out
+    private int minFarNumber = Integer.MAX_VALUE;
+    
+    private GraphmlFileStats() {}
+    
+    private final void read( final XMLStreamReader reader ) throws XMLStreamException {
+        while ( reader.hasNext() ) {
+            int event = reader.next();
+            if ( event == XMLStreamConstants.START_ELEMENT ) {
+                String name = reader.getLocalName();
+                if ( name.equals( "node" ) ) {
+                    this.node( reader.getAttributeValue( null, "id" ) );
+                } else if ( name.equals( "edge" ) ) {
+                    this.edge(
+                        reader.getAttributeValue( null, "source" ),
+                        reader.getAttributeValue( null, "target" ) );
+                } else if ( name.equals( "data" ) ) {
+                    this.data( reader.getAttributeValue( null, "key" ) );
+                } else if ( name.equals( "graph" ) ) {
+                    this.startGraph( reader.getAttributeValue( null, "id" ) );
+                } else if ( name.equals( "hyperedge" ) ) {
+                    ++this.hyperedges;
+                } else if ( name.equals( "endpoint" ) ) {
+                    this.reference( reader.getAttributeValue( null, "node" ) );
+                } else if ( name.equals( "key" ) ) {
+                    this.key( reader );
+                } else if ( name.equals( "NodeLabel" ) ) {
+                    this.label( labelText( reader ) );
+                } else if ( name.equals( "ShapeNode" ) ) {
+                    this.styled = true;
+                    this.style = GraphmlFragmentKeys.SEED;
+                } else if ( this.styled ) {
+                    this.styleElement( name, reader );
+                }
+            } else if ( event == XMLStreamConstants.END_ELEMENT ) {
+                String name = reader.getLocalName();
+                if ( name.equals( "graph" ) ) {
+                    this.openGraphs.remove( this.openGraphs.size() - 1 );
+                } else if ( name.equals( "ShapeNode" ) ) {
+                    this.styles.add( this.style );
+                    this.styled = false;
+                }
+            }
+        }
+    }
+    
+    private final void startGraph( final String id ) {
+        ++this.graphs;
+        
+        long[] counts = null;
+        if ( this.graphCounts.size() < MAX_GRAPHS ) {
+            counts = new long[ 2 ];
+            this.graphCounts.put( ( id == null ) ? "#" + this.graphs : id, counts );
+        }
+        this.openGraphs.add( counts );
+    }
+    
+    private final void count( final int index ) {
+        if ( ! this.openGraphs.isEmpty() ) {
+            long[] counts = this.openGraphs.get( this.openGraphs.size() - 1 );
+            if ( counts != null ) {
+                ++counts[ index ];
+            }
+        }
+    }
+    
+    private final void node( final String id ) {
+        ++this.nodes;
+        this.count( 0 );
+        if ( id == null ) {
+            return;
+        }
+        
+        int number = this.number( id );
+        if ( number >= 0 ) {
+            if ( ! this.numbered.declare( number ) ) {
+                ++this.duplicateNodes;
+            }
+        } else {
+            int foreignNumber = this.foreignNumber( id );
+            if ( foreignNumber < 0 ) {
+                this.untrackedNodes.add( id );
+            } else if ( ! this.foreign.declare( foreignNumber ) ) {
+                ++this.duplicateNodes;
+            }
+        }
+    }
+    
+    private final void edge( final String source, final String target ) {
+        ++this.edges;
+        this.count( 1 );
+        
+        long sourceKey = this.reference( source );
+        long targetKey = this.reference( target );
+        if ( sourceKey == targetKey && sourceKey >= 0 ) {
+            ++this.selfLoops;
+        }
+        this.edgePairs.add( ( sourceKey << 32 ) | ( targetKey & 0xFFFFFFFFL ) );
+    }
+    
+    /*
+     * Counts a reference towards the node's degree and returns a key that
+     * identifies the node - numbered nodes as themselves, foreign ones
+     * offset past every node number and untracked ones by their hash.
+     */
+    private final long reference( final String id ) {
+        if ( id == null ) {
+            return -1;
+        }
+        
+        int number = this.number( id );
+        if ( number >= 0 ) {
+            this.numbered.reference( number );
+            return number;
+        }
+        
+        int foreignNumber = this.foreignNumber( id );
+        if ( foreignNumber < 0 ) {
+            long hash = GraphmlFragmentKeys.hash( GraphmlFragmentKeys.SEED, id );
+            return UNTRACKED_KEY | ( hash & Integer.MAX_VALUE );
+        } else {
+            this.foreign.reference( foreignNumber );
+            return (long)MAX_NODE_NUMBER + foreignNumber;
+        }
+    }
+    
+    /*
+     * GraphmlWriter writes N<decimal> ids, or N<base 62> in compact mode -
+     * N0 through N9 read the same either way, so the first id past those
+     * decides how the rest of the file is read.
+     */
+    private final int number( final String id ) {
+        int number;
+        switch ( this.idMode ) {
+            case DECIMAL:
+            number = ReferenceChecker.nodeNumber( id );
+            break;
+            
+            case BASE62:
+            number = Base62.parse( 'N', id );
+            break;
+            
+            default:
+            number = ReferenceChecker.nodeNumber( id );
+            if ( number >= 10 ) {
+                this.idMode = DECIMAL;
+            } else if ( number < 0 ) {
+                number = Base62.parse( 'N', id );
+                if ( number >= 0 ) {
+                    this.idMode = BASE62;
+                }
+            }
+        }
+        
+        /*
+         * A stray id like "N2147483" would grow the table to hold it, so
+         * numbers far past the table are counted as foreign - and stay
+         * foreign once the table has grown to reach them.
+         */
+        if ( number < 0 || number > MAX_NODE_NUMBER ) {
+            return -1;
+        } else if ( number >= this.minFarNumber && this.foreignNumbers.containsKey( id ) ) {
+            return -1;
+        } else if ( number - MIN_REACH > this.numbered.size() * 2 ) {
+            this.minFarNumber = Math.min( this.minFarNumber, number );
+            return -1;
+        } else {
+            return number;
+        }
+    }
+    
+    // -1 for an id past the bound
+    private final int foreignNumber( final String id ) {
+        Integer number = this.foreignNumbers.get( id );
+        if ( number == null ) {
+            if ( this.foreignNumbers.size() == MAX_FOREIGN_IDS ) {
+                return -1;
+            }
+            number = this.foreignNumbers.size();
+            this.foreignNumbers.put( id, number );
+        }
+        return number;
+    }
+    
+    private final void data( final String key ) {
+        if ( key != null ) {
+            Long count = this.keyUsage.get( key );
+            this.keyUsage.put( key, ( count == null ) ? 1L : count + 1 );
+        }
+    }
+    
+    private final void key( final XMLStreamReader reader ) {
+        String id = reader.getAttributeValue( null, "id" );
+        if ( id == null ) {
+            return;
+        }
+        
+        String name = reader.getAttributeValue( null, "attr.name" );
+        if ( name == null ) {
+            name = reader.getAttributeValue( null, "yfiles.type" );
+        }
+        String target = reader.getAttributeValue( null, "for" );
+        this.keyNames.put( id, ( target == null ) ? name : target + " " + name );
+    }
+    
+    /*
+     * yEd saves a label's model as child elements after the text, so only
+     * the label's own text is collected - getElementText rejects children.
+     */
+    private static final String labelText( final XMLStreamReader reader )
+        throws XMLStreamException
+    {
+        StringBuilder text = new StringBuilder();
+        int depth = 0;
+        while ( true ) {
+            int event = reader.next();
+            if ( event == XMLStreamConstants.START_ELEMENT ) {
+                ++depth;
+            } else if ( event == XMLStreamConstants.END_ELEMENT ) {
+                if ( depth == 0 ) {
+                    return text.toString();
+                }
+                --depth;
+            } else if ( depth == 0 && (
+                event == XMLStreamConstants.CHARACTERS ||
+                event == XMLStreamConstants.CDATA ||
+                event == XMLStreamConstants.SPACE ||
+                event == XMLStreamConstants.ENTITY_REFERENCE ) )
+            {
+                text.append( reader.getText() );
+            }
+        }
+    }
+    
+    private final void label( final String text ) {
+        int length = text.length();
+        ++this.labels;
+        this.totalLabelLength += length;
+        this.maxLabelLength = Math.max( this.maxLabelLength, length );
+        ++this.labelLengthHistogram[ bucket( length ) ];
+    }
+    
+    private final void styleElement( final String name, final XMLStreamReader reader ) {
+        if ( name.equals( "Shape" ) ) {
+            String type = reader.getAttributeValue( null, "type" );
+            this.shapes.add( type );
+            this.style = GraphmlFragmentKeys.hash( this.style, "Shape " + type );
+        } else if ( name.equals( "Fill" ) ) {
+            String color = reader.getAttributeValue( null, "color" );
+            this.fills.add( color );
+            this.style = GraphmlFragmentKeys.hash( this.style, "Fill " + color );
+        } else if ( name.equals( "BorderStyle" ) || name.equals( "Geometry" ) ) {
+            this.style = GraphmlFragmentKeys.hash( this.style, name );
+            int count = reader.getAttributeCount();
+            for ( int i = 0; i < count; ++i ) {
+                String attribute = reader.getAttributeLocalName( i );
+                // position is not part of the style
+                if ( ! attribute.equals( "x" ) && ! attribute.equals( "y" ) ) {
+                    this.style = GraphmlFragmentKeys.hash( this.style, attribute );
+                    this.style = GraphmlFragmentKeys.hash( this.style, reader.getAttributeValue( i ) );
+                }
+            }
+        }
+    }
+    
+    private final void finish() {
+        this.numbered.finish( this );
+        this.foreign.finish( this );
+    }
+    
+    // 0 for 0, otherwise k for [ 2^(k-1), 2^k )
+    private static final int bucket( final int value ) {
+        return 32 - Integer.numberOfLeadingZeros( value );
+    }
+    
+    public final long getGraphs() {
+        return this.graphs;
+    }
+    
+    public final long getNodes() {
+        return this.nodes;
+    }
+    
+    public final long getEdges() {
+        return this.edges;
+    }
+    
+    public final long getHyperedges() {
+        return this.hyperedges;
+    }
+    
+    /*
+     * Node and edge counts of each graph, by id, in document order - only
+     * the first 4096 graphs are itemized.
+     */
+    public final Map< String, long[] > getGraphCounts() {
+        LinkedHashMap< String, long[] > copy = new LinkedHashMap< String, long[] >();
+        for ( Map.Entry< String, long[] > entry : this.graphCounts.entrySet() ) {
+            copy.put( entry.getKey(), entry.getValue().clone() );
+        }
+        return Collections.unmodifiableMap( copy );
+    }
+    
+    public final long getSelfLoops() {
+        return this.selfLoops;
+    }
+    
+    // edges beyond the first between the same source and target
+    public final long getParallelEdges() {
+        return this.edges - Math.min( this.edgePairs.count(), this.edges );
+    }
+    
+    public final long getDanglingReferences() {
+        return this.danglingReferences;
+    }
+    
+    public final long getDanglingNodes() {
+        return this.danglingNodes;
+    }
+    
+    public final long getDuplicateNodes() {
+        return this.duplicateNodes;
+    }
+    
+    /*
+     * Foreign nodes declared after the first 2^18 foreign ids - these are
+     * left out of the degree, dangling and duplicate counts.
+     */
+    public final long getUntrackedNodes() {
+        return this.untrackedNodes.count();
+    }
+    
+    public final int getMaxDegree() {
+        return this.maxDegree;
+    }
+    
+    /*
+     * Entry 0 counts nodes of degree 0, entry k nodes of degree in
+     * [ 2^(k-1), 2^k ).
+     */
+    public final long[] getDegreeHistogram() {
+        return trim( this.degreeHistogram );
+    }
+    
+    public final long getLabels() {
+        return this.labels;
+    }
+    
+    public final double getMeanLabelLength() {
+        return ( this.labels == 0 ) ? 0 : (double)this.totalLabelLength / this.labels;
+    }
+    
+    public final int getMaxLabelLength() {
+        return this.maxLabelLength;
+    }
+    
+    // buckets as for getDegreeHistogram
+    public final long[] getLabelLengthHistogram() {
+        return trim( this.labelLengthHistogram );
+    }
+    
+    // uses of each key, by key id
+    public final Map< String, Long > getKeyUsage() {
+        return Collections.unmodifiableMap( this.keyUsage );
+    }
+    
+    // what each declared key is for - e.g. d2 -> "node description"
+    public final Map< String, String > getKeyNames() {
+        return Collections.unmodifiableMap( this.keyNames );
+    }
+    
+    public final long getDistinctShapes() {
+        return this.shapes.count();
+    }
+    
+    public final long getDistinctFills() {
+        return this.fills.count();
+    }
+    
+    // distinct combinations of shape, fill, border and size
+    public final long getDistinctStyles() {
+        return this.styles.count();
+    }
+    
+    /*
+     * True if any distinct count - parallel edges and untracked nodes
+     * included - grew past what is counted exactly and is a HyperLogLog
+     * estimate.
+     */
+    public final boolean isEstimated() {
+        return this.edgePairs.isEstimated() ||
+            this.untrackedNodes.isEstimated() ||
+            this.shapes.isEstimated() ||
+            this.fills.isEstimated() ||
+            this.styles.isEstimated();
+    }
+    
+    private static final long[] trim( final long[] histogram ) {
+        int length = histogram.length;
+        while ( length > 1 && histogram[ length - 1 ] == 0 ) {
+            --length;
+        }
+        return Arrays.copyOf( histogram, length );
+    }
+    
+    @Override
+    public final String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append( "graphs: " ).append( this.graphs ).
+            append( ", nodes: " ).append( this.nodes ).
+            append( ", edges: " ).append( this.edges ).
+            append( ", hyperedges: " ).append( this.hyperedges ).append( '\n' );
+        builder.append( "self loops: " ).append( this.selfLoops ).
+            append( ", parallel edges: " ).
+            append( this.edgePairs.isEstimated() ? "~" : "" ).append( this.getParallelEdges() ).
+            append( ", dangling references: " ).append( this.danglingReferences ).
+            append( " (" ).append( this.danglingNodes ).append( " ids)" ).
+            append( ", duplicate nodes: " ).append( this.duplicateNodes ).
+            append( ", untracked nodes: " ).append( this.untrackedNodes ).append( '\n' );
+        builder.append( "degree: max " ).append( this.maxDegree ).
+            append( ", histogram " ).append( Arrays.toString( this.getDegreeHistogram() ) ).append( '\n' );
+        builder.append( "labels: " ).append( this.labels ).
+            append( ", mean length " ).append( String.format( "%.1f", this.getMeanLabelLength() ) ).
+            append( ", max " ).append( this.maxLabelLength ).
+            append( ", histogram " ).append( Arrays.toString( this.getLabelLengthHistogram() ) ).append( '\n' );
+        builder.append( "keys:" );
+        for ( Map.Entry< String, String > entry : this.keyNames.entrySet() ) {
+            Long count = this.keyUsage.get( entry.getKey() );
+            builder.append( ' ' ).append( entry.getKey() ).
+                append( " (" ).append( entry.getValue() ).append( ")=" ).
+                append( ( count == null ) ? 0 : count );
+        }
+        builder.append( '\n' );
+        builder.append( "styles: " ).append( this.styles ).
+            append( ", shapes: " ).append( this.shapes ).
+            append( ", fills: " ).append( this.fills );
+        return builder.toString();
+    }
+    
+    /*
+     * Degree and declared bit of each node by number - grown as needed.
+     */
+    private static final class NodeTable {
+        private int[] degrees = new int[ 1024 ];
+        private long[] declared = new long[ 16 ];
+        private int size = 0;
+        
+        final boolean declare( final int number ) {
+            this.ensure( number );
+            long bit = 1L << number;
+            boolean added = ( this.declared[ number >>> 6 ] & bit ) == 0;
+            this.declared[ number >>> 6 ] |= bit;
+            return added;
+        }
+        
+        final void reference( final int number ) {
+            this.ensure( number );
+            ++this.degrees[ number ];
+        }
+        
+        final int size() {
+            return this.size;
+        }
+        
+        private final void ensure( final int number ) {
+            if ( number >= this.degrees.length ) {
+                int capacity = Math.max( this.degrees.length * 2, number + 1 );
+                this.degrees = Arrays.copyOf( this.degrees, capacity );
+                this.declared = Arrays.copyOf( this.declared, ( capacity + 63 ) >>> 6 );
+            }
+            if ( number >= this.size ) {
+                this.size = number + 1;
+            }
+        }
+        
+        final void finish( final GraphmlFileStats stats ) {
+            for ( int i = 0; i < this.size; ++i ) {
+                int degree = this.degrees[ i ];
+                if ( ( this.declared[ i >>> 6 ] & ( 1L << i ) ) != 0 ) {
+                    ++stats.degreeHistogram[ bucket( degree ) ];
+                    stats.maxDegree = Math.max( stats.maxDegree, degree );
+                } else if ( degree != 0 ) {
+                    ++stats.danglingNodes;
+                    stats.danglingReferences += degree;
+                }
+            }
+        }
+    }
+}
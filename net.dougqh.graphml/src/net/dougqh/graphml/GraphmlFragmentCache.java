@@ -0,0 +1,201 @@
+package net.dougqh.graphml;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/*
+ * Lets a writer copy unchanged nodes from the previous run's output instead
+ * of encoding them again.
+ *
+ * Each run leaves an index next to its output - see GraphmlFragmentIndex - that
+ * maps a content key of every cached node to where that node's element is
+ * in the output.  On the next run, a node whose key is found is copied from
+ * the previous output with FileChannel.transferTo - when its id is also
+ * unchanged, adjacent hits are merged into a single transfer, so a long
+ * unchanged stretch of the graph costs one system call.
+ *
+ * Keys are 64-bit content hashes - see GraphmlFragmentKeys.  The index is
+ * ignored if the previous output has changed size since it was written or
+ * was written in a different id mode (compact or not).
+ */
+public final class GraphmlFragmentCache {
+    private static final long EMPTY = 0L;
+    
+    private final File previousOutput;
+    private final File output;
+    private FileInputStream previousIn = null;
+    private FileChannel previousChannel = null;
+    
+    // previous run - open addressing on key, EMPTY marks a free slot
+    private long[] previousKeys = new long[ 0 ];
+    private long[] previousStarts;
+    private int[] previousInnerOffsets;
+    private int[] previousLengths;
+    private int[] previousNodeNumbers;
+    private boolean previousCompact;
+    
+    // this run
+    private long[] keys = new long[ 1024 ];
+    private long[] starts = new long[ 1024 ];
+    private int[] innerOffsets = new int[ 1024 ];
+    private int[] lengths = new int[ 1024 ];
+    private int[] nodeNumbers = new int[ 1024 ];
+    private int size = 0;
+    
+    private long hits = 0;
+    private long misses = 0;
+    
+    public GraphmlFragmentCache( final File previousOutput, final File output )
+        throws IOException
+    {
+        if ( previousOutput.getAbsoluteFile().equals( output.getAbsoluteFile() ) ) {
+            throw new IllegalArgumentException( "output must differ from previousOutput" );
+        }
+        
+        this.previousOutput = previousOutput;
+        this.output = output;
+        
+        GraphmlFragmentIndex index = GraphmlFragmentIndex.read( previousOutput );
+        if ( index != null ) {
+            this.load( index );
+        }
+    }
+    
+    public final long getHits() {
+        return this.hits;
+    }
+    
+    public final long getMisses() {
+        return this.misses;
+    }
+    
+    private final void load( final GraphmlFragmentIndex index ) {
+        int count = index.size();
+        int capacity = Integer.highestOneBit( Math.max( 16, count ) * 2 - 1 ) << 1;
+        long[] keys = new long[ capacity ];
+        long[] starts = new long[ capacity ];
+        int[] innerOffsets = new int[ capacity ];
+        int[] lengths = new int[ capacity ];
+        int[] nodeNumbers = new int[ capacity ];
+
+        int mask = capacity - 1;
+        for ( int i = 0; i < count; ++i ) {
+            long key = index.key( i );
+            int slot = slot( key ) & mask;
+            while ( keys[ slot ] != EMPTY && keys[ slot ] != key ) {
+                slot = ( slot + 1 ) & mask;
+            }
+            keys[ slot ] = key;
+            starts[ slot ] = index.start( i );
+            innerOffsets[ slot ] = index.innerOffset( i );
+            lengths[ slot ] = index.length( i );
+            nodeNumbers[ slot ] = index.nodeNumber( i );
+        }
+
+        this.previousKeys = keys;
+        this.previousStarts = starts;
+        this.previousInnerOffsets = innerOffsets;
+        this.previousLengths = lengths;
+        this.previousNodeNumbers = nodeNumbers;
+        this.previousCompact = index.isCompact();
+    }
+
+    final int find( final long key, final boolean compact ) {
+        if ( key == EMPTY || this.previousKeys.length == 0 || compact != this.previousCompact ) {
+            ++this.misses;
+            return -1;
+        }
+        
+        int mask = this.previousKeys.length - 1;
+        int slot = slot( key ) & mask;
+        while ( this.previousKeys[ slot ] != EMPTY ) {
+            if ( this.previousKeys[ slot ] == key ) {
+                ++this.hits;
+                return slot;
+            }
+            slot = ( slot + 1 ) & mask;
+        }
+        ++this.misses;
+        return -1;
+    }
+    
+    final long start( final int entry ) {
+        return this.previousStarts[ entry ];
+    }
+    
+    final int innerOffset( final int entry ) {
+        return this.previousInnerOffsets[ entry ];
+    }
+    
+    final int length( final int entry ) {
+        return this.previousLengths[ entry ];
+    }
+    
+    final int nodeNumber( final int entry ) {
+        return this.previousNodeNumbers[ entry ];
+    }
+    
+    final FileChannel previousChannel() throws IOException {
+        if ( this.previousChannel == null ) {
+            this.previousIn = new FileInputStream( this.previousOutput );
+            this.previousChannel = this.previousIn.getChannel();
+        }
+        return this.previousChannel;
+    }
+    
+    final void record(
+        final long key,
+        final long start,
+        final int innerOffset,
+        final int length,
+        final int nodeNumber )
+    {
+        if ( key == EMPTY ) {
+            return;
+        }
+        if ( this.size == this.keys.length ) {
+            int capacity = this.size * 2;
+            this.keys = Arrays.copyOf( this.keys, capacity );
+            this.starts = Arrays.copyOf( this.starts, capacity );
+            this.innerOffsets = Arrays.copyOf( this.innerOffsets, capacity );
+            this.lengths = Arrays.copyOf( this.lengths, capacity );
+            this.nodeNumbers = Arrays.copyOf( this.nodeNumbers, capacity );
+        }
+        this.keys[ this.size ] = key;
+        this.starts[ this.size ] = start;
+        this.innerOffsets[ this.size ] = innerOffset;
+        this.lengths[ this.size ] = length;
+        this.nodeNumbers[ this.size ] = nodeNumber;
+        ++this.size;
+    }
+    
+    /*
+     * Called by the writer once its output is complete.
+     */
+    final void finish( final boolean compact, final long outputLength )
+        throws IOException
+    {
+        try {
+            new GraphmlFragmentIndex(
+                compact, outputLength, this.size,
+                this.keys, this.starts, this.innerOffsets, this.lengths, this.nodeNumbers ).write( this.output );
+        } finally {
+            this.release();
+        }
+    }
+    
+    final void release() throws IOException {
+        if ( this.previousIn != null ) {
+            this.previousIn.close();
+            this.previousIn = null;
+            this.previousChannel = null;
+        }
+    }
+    
+    private static final int slot( final long key ) {
+        return (int)( key ^ ( key >>> 32 ) );
+    }
+}
@@ -0,0 +1,231 @@
+package net.dougqh.graphml;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+
+/*
+ * The sidecar index a GraphmlFragmentCache leaves next to an output - for
+ * each cached node, its content key and where its element is in the output.
+ *
+ * Besides the cache itself, tools that edit an output in place use it to
+ * find nodes by id without scanning the whole file.
+ */
+public final class GraphmlFragmentIndex {
+    public static final String EXTENSION = ".fragments";
+    
+    private static final int MAGIC = 0x47464331;
+    
+    private final boolean compact;
+    private final long outputLength;
+    private final int size;
+    private final long[] keys;
+    private final long[] starts;
+    private final int[] innerOffsets;
+    private final int[] lengths;
+    private final int[] nodeNumbers;
+    
+    private HashMap< Integer, Integer > entriesByNodeNumber = null;
+    
+    GraphmlFragmentIndex(
+        final boolean compact,
+        final long outputLength,
+        final int size,
+        final long[] keys,
+        final long[] starts,
+        final int[] innerOffsets,
+        final int[] lengths,
+        final int[] nodeNumbers )
+    {
+        this.compact = compact;
+        this.outputLength = outputLength;
+        this.size = size;
+        this.keys = keys;
+        this.starts = starts;
+        this.innerOffsets = innerOffsets;
+        this.lengths = lengths;
+        this.nodeNumbers = nodeNumbers;
+    }
+    
+    public static final File indexFile( final File output ) {
+        return new File( output.getPath() + EXTENSION );
+    }
+    
+    /*
+     * Returns null if output has no index or has changed size since the
+     * index was written - i.e. the index can no longer be trusted.
+     */
+    public static final GraphmlFragmentIndex read( final File output )
+        throws IOException
+    {
+        File index = indexFile( output );
+        if ( ! output.isFile() || ! index.isFile() ) {
+            return null;
+        }
+        
+        DataInputStream in = new DataInputStream( new BufferedInputStream(
+            new FileInputStream( index ) ) );
+        try {
+            if ( in.readInt() != MAGIC ) {
+                return null;
+            }
+            boolean compact = in.readBoolean();
+            long outputLength = in.readLong();
+            int size = in.readInt();
+            if ( outputLength != output.length() ) {
+                return null;
+            }
+            
+            long[] keys = new long[ size ];
+            long[] starts = new long[ size ];
+            int[] innerOffsets = new int[ size ];
+            int[] lengths = new int[ size ];
+            int[] nodeNumbers = new int[ size ];
+            for ( int i = 0; i < size; ++i ) {
+                keys[ i ] = in.readLong();
+                starts[ i ] = in.readLong();
+                innerOffsets[ i ] = in.readInt();
+                lengths[ i ] = in.readInt();
+                nodeNumbers[ i ] = in.readInt();
+            }
+            return new GraphmlFragmentIndex(
+                compact, outputLength, size,
+                keys, starts, innerOffsets, lengths, nodeNumbers );
+        } finally {
+            in.close();
+        }
+    }
+    
+    public final boolean isCompact() {
+        return this.compact;
+    }
+    
+    public final long getOutputLength() {
+        return this.outputLength;
+    }
+    
+    public final int size() {
+        return this.size;
+    }
+    
+    public final long key( final int entry ) {
+        return this.keys[ entry ];
+    }
+    
+    public final long start( final int entry ) {
+        return this.starts[ entry ];
+    }
+    
+    public final int innerOffset( final int entry ) {
+        return this.innerOffsets[ entry ];
+    }
+    
+    public final int length( final int entry ) {
+        return this.lengths[ entry ];
+    }
+    
+    public final int nodeNumber( final int entry ) {
+        return this.nodeNumbers[ entry ];
+    }
+    
+    public final String nodeId( final int entry ) {
+        return GraphmlWriter.nodeId( this.compact, this.nodeNumbers[ entry ] );
+    }
+    
+    /*
+     * Returns the entry for the node with the given id, or -1 if the node
+     * was not cached.
+     */
+    public final int find( final String nodeId ) {
+        int nodeNumber = GraphmlWriter.nodeNumber( this.compact, nodeId );
+        if ( nodeNumber < 0 ) {
+            return -1;
+        }
+        
+        if ( this.entriesByNodeNumber == null ) {
+            HashMap< Integer, Integer > entries = new HashMap< Integer, Integer >( this.size * 2 );
+            for ( int i = 0; i < this.size; ++i ) {
+                entries.put( this.nodeNumbers[ i ], i );
+            }
+            this.entriesByNodeNumber = entries;
+        }
+        Integer entry = this.entriesByNodeNumber.get( nodeNumber );
+        return ( entry == null ) ? -1 : entry.intValue();
+    }
+    
+    /*
+     * Writes the index for a copy of this index's output in which the
+     * given regions - in ascending order, not overlapping - were replaced.
+     * Entries overlapping a region are dropped, since their content no
+     * longer matches their key, and entries after it are shifted.
+     */
+    public final void writePatched(
+        final File patchedOutput,
+        final long patchedLength,
+        final long[] regionStarts,
+        final long[] regionLengths,
+        final long[] replacementLengths,
+        final int numRegions )
+        throws IOException
+    {
+        long[] keys = new long[ this.size ];
+        long[] starts = new long[ this.size ];
+        int[] innerOffsets = new int[ this.size ];
+        int[] lengths = new int[ this.size ];
+        int[] nodeNumbers = new int[ this.size ];
+        int size = 0;
+        
+        int region = 0;
+        long shift = 0;
+        for ( int i = 0; i < this.size; ++i ) {
+            long start = this.starts[ i ];
+            long end = start + this.lengths[ i ];
+            while ( region < numRegions &&
+                regionStarts[ region ] + regionLengths[ region ] <= start )
+            {
+                shift += replacementLengths[ region ] - regionLengths[ region ];
+                ++region;
+            }
+            if ( region < numRegions && regionStarts[ region ] < end ) {
+                continue;
+            }
+            
+            keys[ size ] = this.keys[ i ];
+            starts[ size ] = start + shift;
+            innerOffsets[ size ] = this.innerOffsets[ i ];
+            lengths[ size ] = this.lengths[ i ];
+            nodeNumbers[ size ] = this.nodeNumbers[ i ];
+            ++size;
+        }
+        
+        new GraphmlFragmentIndex(
+            this.compact, patchedLength, size,
+            keys, starts, innerOffsets, lengths, nodeNumbers ).write( patchedOutput );
+    }
+    
+    final void write( final File output ) throws IOException {
+        DataOutputStream out = new DataOutputStream( new BufferedOutputStream(
+            new FileOutputStream( indexFile( output ) ) ) );
+        try {
+            out.writeInt( MAGIC );
+            out.writeBoolean( this.compact );
+            out.writeLong( this.outputLength );
+            out.writeInt( this.size );
+            for ( int i = 0; i < this.size; ++i ) {
+                out.writeLong( this.keys[ i ] );
+                out.writeLong( this.starts[ i ] );
+                out.writeInt( this.innerOffsets[ i ] );
+                out.writeInt( this.lengths[ i ] );
+                out.writeInt( this.nodeNumbers[ i ] );
+            }
+        } finally {
+            out.close();
+        }
+    }
+}
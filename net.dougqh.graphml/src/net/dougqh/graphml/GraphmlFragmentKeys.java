@@ -0,0 +1,47 @@
+package net.dougqh.graphml;
+
+/*
+ * 64-bit FNV-1a, for building GraphmlFragmentCache keys out of everything
+ * that affects how a node is written - e.g.
+ *   long key = GraphmlFragmentKeys.hash( GraphmlFragmentKeys.SEED, label );
+ *   key = GraphmlFragmentKeys.hash( key, description );
+ *   key = GraphmlFragmentKeys.finish( key );
+ * Unlike hashCode, the result is the same from one run to the next.
+ */
+public final class GraphmlFragmentKeys {
+    public static final long SEED = 0xCBF29CE484222325L;
+    
+    private static final long PRIME = 0x100000001B3L;
+    
+    private GraphmlFragmentKeys() {}
+    
+    public static final long hash( final long hash, final String value ) {
+        if ( value == null ) {
+            return hash( hash, -1 );
+        }
+        
+        long h = hash;
+        int length = value.length();
+        for ( int i = 0; i < length; ++i ) {
+            char ch = value.charAt( i );
+            h = ( h ^ ( ch & 0xFF ) ) * PRIME;
+            h = ( h ^ ( ch >>> 8 ) ) * PRIME;
+        }
+        // the length separates adjacent strings - "ab", "c" from "a", "bc"
+        return hash( h, length );
+    }
+    
+    public static final long hash( final long hash, final int value ) {
+        long h = hash;
+        h = ( h ^ ( value & 0xFF ) ) * PRIME;
+        h = ( h ^ ( ( value >>> 8 ) & 0xFF ) ) * PRIME;
+        h = ( h ^ ( ( value >>> 16 ) & 0xFF ) ) * PRIME;
+        h = ( h ^ ( value >>> 24 ) ) * PRIME;
+        return h;
+    }
+    
+    // 0 is reserved for "not cached"
+    public static final long finish( final long hash ) {
+        return ( hash == 0 ) ? 1 : hash;
+    }
+}
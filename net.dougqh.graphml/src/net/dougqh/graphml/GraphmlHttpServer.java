@@ -0,0 +1,315 @@
+package net.dougqh.graphml;
+
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/*
+ * Serves documents over HTTP as they are written - the response is sent
+ * chunked, so the first bytes go out as soon as the writer's buffer fills
+ * rather than once the whole document has been encoded.
+ *
+ * Writes to the socket block, so a slow client slows the export down to
+ * its pace - the only memory held per request is the writer's buffer (and
+ * the deflater's, when gzipped).  Writers are pooled and reset for each
+ * request, and at most maxConcurrentExports documents are written at once;
+ * further requests wait in the server's queue.
+ */
+public final class GraphmlHttpServer implements Closeable {
+    private static final String CONTENT_TYPE = "application/xml; charset=utf-8";
+    private static final int GZIP_BUFFER_SIZE = 8192;
+    
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Queue< GraphmlWriter > writers = new ConcurrentLinkedQueue< GraphmlWriter >();
+    
+    private volatile boolean compact = false;
+    private volatile boolean gzip = true;
+    
+    public GraphmlHttpServer(
+        final InetSocketAddress address,
+        final int maxConcurrentExports )
+        throws IOException
+    {
+        if ( maxConcurrentExports <= 0 ) throw new IllegalArgumentException( "maxConcurrentExports" );
+        
+        this.server = HttpServer.create( address, 0 );
+        this.executor = Executors.newFixedThreadPool( maxConcurrentExports );
+        this.server.setExecutor( this.executor );
+    }
+    
+    // see GraphmlWriter.compact
+    public final GraphmlHttpServer compact() {
+        this.compact = true;
+        return this;
+    }
+    
+    // on by default - only used when the client accepts gzip
+    public final GraphmlHttpServer gzip( final boolean gzip ) {
+        this.gzip = gzip;
+        return this;
+    }
+    
+    public final GraphmlHttpServer serve(
+        final String path,
+        final GraphmlDocument document )
+    {
+        if ( document == null ) throw new IllegalArgumentException( "document" );
+        
+        return this.serveSource( path, new GraphmlDocumentSource() {
+            @Override
+            public final GraphmlDocument document( final URI uri ) {
+                return document;
+            }
+        } );
+    }
+    
+    /*
+     * Serves every path under path - the source is handed the request URI
+     * to decide what to write, e.g. from its query.
+     */
+    public final GraphmlHttpServer serveSource(
+        final String path,
+        final GraphmlDocumentSource source )
+    {
+        if ( path == null ) throw new IllegalArgumentException( "path" );
+        if ( source == null ) throw new IllegalArgumentException( "source" );
+        
+        this.server.createContext( path, new HttpHandler() {
+            @Override
+            public final void handle( final HttpExchange exchange ) throws IOException {
+                GraphmlHttpServer.this.handle( exchange, source );
+            }
+        } );
+        return this;
+    }
+    
+    public final GraphmlHttpServer start() {
+        this.server.start();
+        return this;
+    }
+    
+    public final InetSocketAddress getAddress() {
+        return this.server.getAddress();
+    }
+    
+    private final void handle(
+        final HttpExchange exchange,
+        final GraphmlDocumentSource source )
+        throws IOException
+    {
+        String method = exchange.getRequestMethod();
+        boolean head = method.equals( "HEAD" );
+        if ( ! head && ! method.equals( "GET" ) ) {
+            exchange.getResponseHeaders().set( "Allow", "GET, HEAD" );
+            respond( exchange, 405 );
+            return;
+        }
+        
+        GraphmlDocument document;
+        try {
+            document = source.document( exchange.getRequestURI() );
+        } catch ( IOException e ) {
+            respond( exchange, 500 );
+            throw e;
+        } catch ( RuntimeException e ) {
+            respond( exchange, 500 );
+            throw e;
+        }
+        if ( document == null ) {
+            respond( exchange, 404 );
+            return;
+        }
+        
+        boolean gzip = this.gzip && acceptsGzip( exchange );
+        exchange.getResponseHeaders().set( "Content-Type", CONTENT_TYPE );
+        exchange.getResponseHeaders().set( "Vary", "Accept-Encoding" );
+        if ( gzip ) {
+            exchange.getResponseHeaders().set( "Content-Encoding", "gzip" );
+        }
+        if ( head ) {
+            respond( exchange, 200 );
+            return;
+        }
+        
+        // 0 - the length is unknown, so the response is chunked
+        exchange.sendResponseHeaders( 200, 0 );
+        // if the export fails, the exception propagates without closing the
+        // exchange - the server then drops the connection before the final
+        // chunk, which is the only way left to tell the client
+        this.write( document, exchange.getResponseBody(), gzip );
+        exchange.close();
+    }
+    
+    private static final void respond(
+        final HttpExchange exchange,
+        final int status )
+        throws IOException
+    {
+        exchange.sendResponseHeaders( status, -1 );
+        exchange.close();
+    }
+    
+    private final void write(
+        final GraphmlDocument document,
+        final OutputStream body,
+        final boolean gzip )
+        throws IOException
+    {
+        ResponseStream response = new ResponseStream( body );
+        OutputStream out = gzip ?
+            new GZIPOutputStream( response, GZIP_BUFFER_SIZE ) :
+            response;
+        
+        GraphmlWriter writer = this.acquireWriter( out );
+        boolean written = false;
+        try {
+            document.write( writer );
+            writer.close();
+            // writes the gzip trailer - the response itself stays open
+            out.close();
+            written = true;
+        } finally {
+            if ( ! written ) {
+                response.abort();
+                closeAfterFailure( writer );
+                closeAfterFailure( out );
+            }
+            this.writers.offer( writer );
+        }
+    }
+    
+    // the original failure is the one worth reporting
+    private static final void closeAfterFailure( final Closeable closeable ) {
+        try {
+            closeable.close();
+        } catch ( IOException e ) {
+            // ignored
+        } catch ( RuntimeException e ) {
+            // ignored
+        }
+    }
+    
+    private final GraphmlWriter acquireWriter( final OutputStream out )
+        throws GraphmlIoException
+    {
+        GraphmlWriter writer = this.writers.poll();
+        if ( writer != null ) {
+            writer.reset( out );
+        } else {
+            writer = new GraphmlWriter( out );
+        }
+        // reset drops the previous request's settings, so they are applied
+        // to every writer handed out
+        if ( this.compact ) {
+            writer.compact();
+        }
+        return writer;
+    }
+    
+    /*
+     * An explicit gzip coding decides on its own, otherwise * stands in for
+     * it - either way, q=0 means the client refuses it.
+     */
+    private static final boolean acceptsGzip( final HttpExchange exchange ) {
+        List< String > values = exchange.getRequestHeaders().get( "Accept-Encoding" );
+        if ( values == null ) {
+            return false;
+        }
+        
+        boolean anyAccepted = false;
+        for ( String value : values ) {
+            for ( String coding : value.split( "," ) ) {
+                String[] parts = coding.split( ";" );
+                String name = parts[ 0 ].trim().toLowerCase();
+                if ( name.equals( "gzip" ) || name.equals( "x-gzip" ) ) {
+                    return isAccepted( parts );
+                } else if ( name.equals( "*" ) ) {
+                    anyAccepted = isAccepted( parts );
+                }
+            }
+        }
+        return anyAccepted;
+    }
+    
+    private static final boolean isAccepted( final String[] parts ) {
+        for ( int i = 1; i < parts.length; ++i ) {
+            String param = parts[ i ].trim();
+            if ( param.length() > 2 && Character.toLowerCase( param.charAt( 0 ) ) == 'q' &&
+                param.charAt( 1 ) == '=' )
+            {
+                try {
+                    return Double.parseDouble( param.substring( 2 ).trim() ) > 0;
+                } catch ( NumberFormatException e ) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+    
+    @Override
+    public final void close() {
+        this.server.stop( 0 );
+        this.executor.shutdown();
+        this.writers.clear();
+    }
+    
+    /*
+     * Keeps the writer from closing the exchange's stream, and drops
+     * whatever a failed export still tries to write.
+     */
+    private static final class ResponseStream extends FilterOutputStream {
+        private boolean aborted = false;
+        
+        ResponseStream( final OutputStream out ) {
+            super( out );
+        }
+        
+        final void abort() {
+            this.aborted = true;
+        }
+        
+        @Override
+        public final void write( final int b ) throws IOException {
+            if ( ! this.aborted ) {
+                this.out.write( b );
+            }
+        }
+        
+        @Override
+        public final void write(
+            final byte[] bytes,
+            final int offset,
+            final int length )
+            throws IOException
+        {
+            if ( ! this.aborted ) {
+                this.out.write( bytes, offset, length );
+            }
+        }
+        
+        @Override
+        public final void flush() throws IOException {
+            if ( ! this.aborted ) {
+                this.out.flush();
+            }
+        }
+        
+        @Override
+        public final void close() {}
+    }
+}
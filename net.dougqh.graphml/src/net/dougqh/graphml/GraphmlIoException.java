@@ -8,4 +8,8 @@ public final class GraphmlIoException extends IOException {
     GraphmlIoException( final Throwable cause ) {
         super( cause );
     }
+    
+    GraphmlIoException( final String message ) {
+        super( message );
+    }
 }
@@ -0,0 +1,14 @@
+package net.dougqh.graphml;
+
+public enum GraphmlPhase {
+    // id is null, count is 0
+    DOCUMENT_START,
+    // id is the graph id, count is the number of nodes started in the graph
+    GRAPH,
+    // id is null, count is the number of edges in the batch
+    EDGE_RESOLUTION,
+    // id is null, count is the number of bytes that reached the stream
+    FLUSH,
+    // id is null, count is the number of bytes that reached the stream
+    CLOSE;
+}
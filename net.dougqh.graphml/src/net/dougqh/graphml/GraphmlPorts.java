@@ -0,0 +1,57 @@
+package net.dougqh.graphml;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/*
+ * The ports shared by one kind of node - e.g. North / South / East / West.
+ * Create one per node type and hand the same instance to every node of that
+ * type, so the names are held once rather than once per node.
+ */
+public final class GraphmlPorts {
+    public static final GraphmlPorts of( final String... names ) {
+        if ( names == null ) throw new IllegalArgumentException( "names" );
+        
+        LinkedHashSet< String > uniqueNames = new LinkedHashSet< String >( names.length * 2 );
+        for ( String name : names ) {
+            if ( name == null ) throw new IllegalArgumentException( "names" );
+            
+            uniqueNames.add( name.intern() );
+        }
+        return new GraphmlPorts( uniqueNames.toArray( new String[ uniqueNames.size() ] ) );
+    }
+    
+    private final String[] names;
+    
+    private GraphmlPorts( final String[] names ) {
+        this.names = names;
+    }
+    
+    public final List< String > names() {
+        return Collections.unmodifiableList( Arrays.asList( this.names ) );
+    }
+    
+    public final boolean contains( final String name ) {
+        for ( String curName : this.names ) {
+            if ( curName.equals( name ) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    final void write( final GraphmlWriter graphmlWriter )
+        throws GraphmlIoException
+    {
+        for ( String name : this.names ) {
+            graphmlWriter.port( name );
+        }
+    }
+    
+    @Override
+    public final String toString() {
+        return Arrays.toString( this.names );
+    }
+}
@@ -0,0 +1,173 @@
+package net.dougqh.graphml;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/*
+ * A GraphmlWriter is only ever used from one thread at a time, so each
+ * counter has a single writer.  Counters are bumped with ordered (lazySet)
+ * stores rather than full volatile writes, which keeps them cheap enough to
+ * always be on; rates are only computed when the MBean is read.
+ */
+public final class GraphmlStatistics implements GraphmlStatisticsMBean {
+    static final long ESTIMATED_EDGE_BYTES = EdgeStore.RECORD_BYTES;
+    
+    private static final AtomicLongFieldUpdater< GraphmlStatistics > GRAPHS =
+        AtomicLongFieldUpdater.newUpdater( GraphmlStatistics.class, "graphs" );
+    private static final AtomicLongFieldUpdater< GraphmlStatistics > NODES =
+        AtomicLongFieldUpdater.newUpdater( GraphmlStatistics.class, "nodes" );
+    private static final AtomicLongFieldUpdater< GraphmlStatistics > EDGES =
+        AtomicLongFieldUpdater.newUpdater( GraphmlStatistics.class, "edges" );
+    private static final AtomicLongFieldUpdater< GraphmlStatistics > BUFFERED =
+        AtomicLongFieldUpdater.newUpdater( GraphmlStatistics.class, "buffered" );
+    private static final AtomicLongFieldUpdater< GraphmlStatistics > SPILLED =
+        AtomicLongFieldUpdater.newUpdater( GraphmlStatistics.class, "spilled" );
+    private static final AtomicLongFieldUpdater< GraphmlStatistics > UNRESOLVED =
+        AtomicLongFieldUpdater.newUpdater( GraphmlStatistics.class, "unresolved" );
+    private static final AtomicLongFieldUpdater< GraphmlStatistics > BYTES =
+        AtomicLongFieldUpdater.newUpdater( GraphmlStatistics.class, "bytes" );
+    private static final AtomicLongFieldUpdater< GraphmlStatistics > IO_NANOS =
+        AtomicLongFieldUpdater.newUpdater( GraphmlStatistics.class, "ioNanos" );
+    private static final AtomicLongFieldUpdater< GraphmlStatistics > END_NANOS =
+        AtomicLongFieldUpdater.newUpdater( GraphmlStatistics.class, "endNanos" );
+    
+    private final long startNanos = System.nanoTime();
+    
+    private volatile long graphs = 0;
+    private volatile long nodes = 0;
+    private volatile long edges = 0;
+    private volatile long buffered = 0;
+    private volatile long spilled = 0;
+    private volatile long unresolved = 0;
+    private volatile long bytes = 0;
+    private volatile long ioNanos = 0;
+    private volatile long endNanos = 0;
+    
+    GraphmlStatistics() {}
+    
+    final void graphWritten() {
+        GRAPHS.lazySet( this, this.graphs + 1 );
+    }
+    
+    final void nodeWritten() {
+        NODES.lazySet( this, this.nodes + 1 );
+    }
+    
+    final void edgeWritten() {
+        EDGES.lazySet( this, this.edges + 1 );
+    }
+    
+    final void edgeBuffered( final long numSpilled ) {
+        BUFFERED.lazySet( this, this.buffered + 1 );
+        SPILLED.lazySet( this, numSpilled );
+    }
+    
+    final void edgesBuffered( final long numEdges ) {
+        BUFFERED.lazySet( this, numEdges );
+        SPILLED.lazySet( this, 0 );
+    }
+    
+    final void edgeUnresolved() {
+        UNRESOLVED.lazySet( this, this.unresolved + 1 );
+    }
+    
+    final void bytesFlushed( final long numBytes, final long nanos ) {
+        BYTES.lazySet( this, this.bytes + numBytes );
+        IO_NANOS.lazySet( this, this.ioNanos + nanos );
+    }
+    
+    final void ioBlocked( final long nanos ) {
+        IO_NANOS.lazySet( this, this.ioNanos + nanos );
+    }
+    
+    final void finished() {
+        END_NANOS.lazySet( this, System.nanoTime() );
+    }
+    
+    // counters are cumulative across documents written by a reset writer
+    final void restarted() {
+        END_NANOS.lazySet( this, 0 );
+    }
+    
+    @Override
+    public final long getGraphsWritten() {
+        return this.graphs;
+    }
+    
+    @Override
+    public final long getNodesWritten() {
+        return this.nodes;
+    }
+    
+    @Override
+    public final long getEdgesWritten() {
+        return this.edges;
+    }
+    
+    @Override
+    public final long getEdgesBuffered() {
+        return this.buffered;
+    }
+    
+    @Override
+    public final long getEdgesSpilled() {
+        return this.spilled;
+    }
+    
+    @Override
+    public final long getEstimatedBufferedBytes() {
+        return ( this.buffered - this.spilled ) * ESTIMATED_EDGE_BYTES;
+    }
+    
+    @Override
+    public final long getUnresolvedEdges() {
+        return this.unresolved;
+    }
+    
+    @Override
+    public final long getBytesFlushed() {
+        return this.bytes;
+    }
+    
+    @Override
+    public final long getIoBlockedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis( this.ioNanos );
+    }
+    
+    @Override
+    public final long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis( this.elapsedNanos() );
+    }
+    
+    @Override
+    public final double getNodesPerSecond() {
+        return this.perSecond( this.nodes );
+    }
+    
+    @Override
+    public final double getEdgesPerSecond() {
+        return this.perSecond( this.edges );
+    }
+    
+    @Override
+    public final double getBytesPerSecond() {
+        return this.perSecond( this.bytes );
+    }
+    
+    private final long elapsedNanos() {
+        long endNanos = this.endNanos;
+        if ( endNanos == 0 ) {
+            endNanos = System.nanoTime();
+        }
+        return endNanos - this.startNanos;
+    }
+    
+    private final double perSecond( final long count ) {
+        long elapsedNanos = this.elapsedNanos();
+        if ( elapsedNanos <= 0 ) {
+            return 0;
+        } else {
+            return count * (double)TimeUnit.SECONDS.toNanos( 1 ) / elapsedNanos;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package net.dougqh.graphml;
+
+public interface GraphmlStatisticsMBean {
+    public abstract long getGraphsWritten();
+    
+    public abstract long getNodesWritten();
+    
+    public abstract long getEdgesWritten();
+    
+    public abstract long getEdgesBuffered();
+    
+    public abstract long getEdgesSpilled();
+    
+    public abstract long getEstimatedBufferedBytes();
+    
+    public abstract long getUnresolvedEdges();
+    
+    public abstract long getBytesFlushed();
+    
+    public abstract long getIoBlockedMillis();
+    
+    public abstract long getElapsedMillis();
+    
+    public abstract double getNodesPerSecond();
+    
+    public abstract double getEdgesPerSecond();
+    
+    public abstract double getBytesPerSecond();
+}
@@ -0,0 +1,471 @@
+package net.dougqh.graphml;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/*
+ * Fans a single stream of writer calls out to several GraphmlWriters -
+ * e.g. a plain one for tools and one configured with forYed() for people.
+ * 
+ * Calls are recorded as GraphmlCommands and handed over in batches to one
+ * thread per sink, which replays them against its own writer, so each sink
+ * encodes in parallel and producing N outputs takes about as long as the
+ * slowest one.  Each sink only buffers a bounded number of batches, so a
+ * slow sink holds back the producer rather than letting the backlog grow.
+ * A sink that fails stops taking batches, and the failure is rethrown by
+ * close().
+ * 
+ * Commands and the objects they reference are shared between the sinks'
+ * threads, so they must not be changed once passed in.  Ids are assigned
+ * by each sink, so the calls that return ids on GraphmlWriter return
+ * nothing here.
+ */
+public final class GraphmlTee implements Closeable {
+    private static final int BATCH_SIZE = 1024;
+    private static final int MAX_PENDING_BATCHES = 64;
+    
+    private static final List< GraphmlCommand > END = Collections.emptyList();
+    
+    private final ExecutorService executor;
+    private final boolean shutdown;
+    private final Sink[] sinks;
+    
+    private ArrayList< GraphmlCommand > batch =
+        new ArrayList< GraphmlCommand >( BATCH_SIZE );
+    private boolean closed = false;
+    
+    public GraphmlTee( final GraphmlWriter... writers ) {
+        this( Executors.newFixedThreadPool( Math.max( 1, writers.length ) ), true, writers );
+    }
+    
+    /*
+     * The executor must be able to run all of the sinks at once - i.e.
+     * have at least as many threads as there are writers - or the producer
+     * blocks forever on a sink that never starts.  A ThreadPoolExecutor
+     * that is too small is rejected.
+     */
+    public GraphmlTee(
+        final ExecutorService executor,
+        final GraphmlWriter... writers )
+    {
+        this( executor, false, writers );
+    }
+    
+    private GraphmlTee(
+        final ExecutorService executor,
+        final boolean shutdown,
+        final GraphmlWriter[] writers )
+    {
+        if ( executor == null ) throw new IllegalArgumentException( "executor" );
+        if ( writers.length == 0 ) throw new IllegalArgumentException( "writers" );
+        if ( ! canRunAtOnce( executor, writers.length ) ) {
+            throw new IllegalArgumentException( "executor has fewer threads than writers" );
+        }
+        
+        this.executor = executor;
+        this.shutdown = shutdown;
+        this.sinks = new Sink[ writers.length ];
+        for ( int i = 0; i < writers.length; ++i ) {
+            if ( writers[ i ] == null ) throw new IllegalArgumentException( "writers" );
+            
+            this.sinks[ i ] = new Sink( writers[ i ] );
+            this.sinks[ i ].future = executor.submit( this.sinks[ i ] );
+        }
+    }
+    
+    // false only if executor is known to be unable to run count tasks at once
+    private static final boolean canRunAtOnce(
+        final ExecutorService executor,
+        final int count )
+    {
+        if ( ! ( executor instanceof ThreadPoolExecutor ) ) {
+            return true;
+        }
+        
+        // tasks beyond the core threads only get a thread of their own once the queue is full
+        ThreadPoolExecutor pool = (ThreadPoolExecutor)executor;
+        if ( pool.getQueue().remainingCapacity() >= count ) {
+            return pool.getCorePoolSize() >= count;
+        } else {
+            return pool.getMaximumPoolSize() >= count;
+        }
+    }
+    
+    public final void write( final GraphmlCommand command )
+        throws GraphmlIoException
+    {
+        if ( command == null ) throw new IllegalArgumentException( "command" );
+        if ( this.closed ) throw new IllegalStateException( "closed" );
+        
+        this.batch.add( command );
+        if ( this.batch.size() == BATCH_SIZE ) {
+            this.dispatch( this.batch );
+            this.batch = new ArrayList< GraphmlCommand >( BATCH_SIZE );
+        }
+    }
+    
+    public final void startGraphml() throws GraphmlIoException {
+        this.write( new Call( Call.START_GRAPHML ) );
+    }
+    
+    public final void startGraph( final Object graph ) throws GraphmlIoException {
+        this.write( new Call( Call.START_GRAPH, graph ) );
+    }
+    
+    public final void startGraph() throws GraphmlIoException {
+        this.write( new Call( Call.START_GRAPH ) );
+    }
+    
+    public final void startDirectedGraph( final Object graph ) throws GraphmlIoException {
+        this.write( new Call( Call.START_DIRECTED_GRAPH, graph ) );
+    }
+    
+    public final void startDirectedGraph() throws GraphmlIoException {
+        this.write( new Call( Call.START_DIRECTED_GRAPH ) );
+    }
+    
+    public final void startNode( final Object node ) throws GraphmlIoException {
+        if ( node == null ) throw new IllegalArgumentException( "node" );
+        
+        this.write( new Call( Call.START_NODE, node ) );
+    }
+    
+    public final void port( final String name ) throws GraphmlIoException {
+        this.write( new Call( Call.PORT, name ) );
+    }
+    
+    public final void ports( final GraphmlPorts ports ) throws GraphmlIoException {
+        if ( ports == null ) throw new IllegalArgumentException( "ports" );
+        
+        this.write( new Call( Call.PORTS, ports ) );
+    }
+    
+    public final void endNode() throws GraphmlIoException {
+        this.write( new Call( Call.END_NODE ) );
+    }
+    
+    public final void edge(
+        final Object sourceNode,
+        final Object targetNode )
+        throws GraphmlIoException
+    {
+        this.write( new Call( Call.EDGE, sourceNode, null, targetNode, null ) );
+    }
+    
+    public final void undirectedEdge(
+        final Object sourceNode,
+        final Object targetNode )
+        throws GraphmlIoException
+    {
+        this.write( new Call( Call.UNDIRECTED_EDGE, sourceNode, null, targetNode, null ) );
+    }
+    
+    public final void directedEdge(
+        final Object sourceNode,
+        final Object targetNode )
+        throws GraphmlIoException
+    {
+        this.write( new Call( Call.DIRECTED_EDGE, sourceNode, null, targetNode, null ) );
+    }
+    
+    public final void edge(
+        final Object sourceNode,
+        final String sourcePort,
+        final Object targetNode,
+        final String targetPort )
+        throws GraphmlIoException
+    {
+        this.write( new Call( Call.EDGE, sourceNode, sourcePort, targetNode, targetPort ) );
+    }
+    
+    public final void undirectedEdge(
+        final Object sourceNode,
+        final String sourcePort,
+        final Object targetNode,
+        final String targetPort )
+        throws GraphmlIoException
+    {
+        this.write( new Call( Call.UNDIRECTED_EDGE, sourceNode, sourcePort, targetNode, targetPort ) );
+    }
+    
+    public final void directedEdge(
+        final Object sourceNode,
+        final String sourcePort,
+        final Object targetNode,
+        final String targetPort )
+        throws GraphmlIoException
+    {
+        this.write( new Call( Call.DIRECTED_EDGE, sourceNode, sourcePort, targetNode, targetPort ) );
+    }
+    
+    public final void hyperedge( final Object... nodes ) throws GraphmlIoException {
+        this.write( new Call( Call.HYPEREDGE, nodes.clone() ) );
+    }
+    
+    public final void resolveEdges() throws GraphmlIoException {
+        this.write( new Call( Call.RESOLVE_EDGES ) );
+    }
+    
+    public final void endGraph() throws GraphmlIoException {
+        this.write( new Call( Call.END_GRAPH ) );
+    }
+    
+    public final void endGraphml() throws GraphmlIoException {
+        this.write( new Call( Call.END_GRAPHML ) );
+    }
+    
+    private final void dispatch( final List< GraphmlCommand > commands )
+        throws GraphmlIoException
+    {
+        try {
+            for ( Sink sink : this.sinks ) {
+                if ( ! sink.dead ) {
+                    sink.queue.put( commands );
+                }
+            }
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new GraphmlIoException( e );
+        }
+    }
+    
+    /*
+     * Waits for every sink to finish and closes its writer.  If any sink
+     * failed, the first failure is rethrown once all of them are done.
+     */
+    @Override
+    public final void close() throws IOException {
+        if ( this.closed ) {
+            return;
+        }
+        this.closed = true;
+        
+        try {
+            if ( ! this.batch.isEmpty() ) {
+                this.dispatch( this.batch );
+                this.batch = null;
+            }
+            this.dispatch( END );
+            
+            Throwable failure = null;
+            for ( Sink sink : this.sinks ) {
+                try {
+                    sink.future.get();
+                } catch ( ExecutionException e ) {
+                    if ( failure == null ) {
+                        failure = e.getCause();
+                    }
+                } catch ( InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                    throw new GraphmlIoException( e );
+                }
+                if ( failure == null ) {
+                    failure = sink.failure;
+                }
+            }
+            
+            if ( failure instanceof IOException ) {
+                throw (IOException)failure;
+            } else if ( failure instanceof Error ) {
+                throw (Error)failure;
+            } else if ( failure != null ) {
+                throw new IOException( failure );
+            }
+        } finally {
+            if ( this.shutdown ) {
+                this.executor.shutdown();
+            }
+        }
+    }
+    
+    /*
+     * Failures of any kind - Errors included - are recorded rather than
+     * thrown, and mark the sink dead so that the producer stops handing it
+     * batches.  The queue is cleared after that, so a put already waiting
+     * on a full queue still gets through.
+     */
+    private static final class Sink implements Callable< Void > {
+        final GraphmlWriter writer;
+        final BlockingQueue< List< GraphmlCommand > > queue =
+            new ArrayBlockingQueue< List< GraphmlCommand > >( MAX_PENDING_BATCHES );
+        Future< Void > future;
+        
+        volatile boolean dead = false;
+        volatile Throwable failure = null;
+        
+        Sink( final GraphmlWriter writer ) {
+            this.writer = writer;
+        }
+        
+        @Override
+        public final Void call() throws InterruptedException {
+            try {
+                for ( List< GraphmlCommand > commands = this.queue.take();
+                    commands != END;
+                    commands = this.queue.take() )
+                {
+                    for ( GraphmlCommand command : commands ) {
+                        command.write( this.writer );
+                    }
+                }
+            } catch ( InterruptedException e ) {
+                this.die( e );
+                throw e;
+            } catch ( Throwable t ) {
+                this.die( t );
+            } finally {
+                try {
+                    this.writer.close();
+                } catch ( Throwable t ) {
+                    this.die( t );
+                }
+            }
+            return null;
+        }
+        
+        private final void die( final Throwable t ) {
+            if ( this.failure == null ) {
+                this.failure = t;
+            }
+            this.dead = true;
+            this.queue.clear();
+        }
+    }
+    
+    private static final class Call implements GraphmlCommand {
+        static final int START_GRAPHML = 0;
+        static final int START_GRAPH = 1;
+        static final int START_DIRECTED_GRAPH = 2;
+        static final int START_NODE = 3;
+        static final int PORT = 4;
+        static final int PORTS = 5;
+        static final int END_NODE = 6;
+        static final int EDGE = 7;
+        static final int UNDIRECTED_EDGE = 8;
+        static final int DIRECTED_EDGE = 9;
+        static final int HYPEREDGE = 10;
+        static final int RESOLVE_EDGES = 11;
+        static final int END_GRAPH = 12;
+        static final int END_GRAPHML = 13;
+        
+        private final int op;
+        private final Object first;
+        private final String firstPort;
+        private final Object second;
+        private final String secondPort;
+        
+        Call( final int op ) {
+            this( op, null, null, null, null );
+        }
+        
+        Call( final int op, final Object first ) {
+            this( op, first, null, null, null );
+        }
+        
+        Call(
+            final int op,
+            final Object first,
+            final String firstPort,
+            final Object second,
+            final String secondPort )
+        {
+            this.op = op;
+            this.first = first;
+            this.firstPort = firstPort;
+            this.second = second;
+            this.secondPort = secondPort;
+        }
+        
+        @Override
+        public final void write( final GraphmlWriter writer ) throws GraphmlIoException {
+            switch ( this.op ) {
+                case START_GRAPHML:
+                writer.startGraphml();
+                break;
+                
+                case START_GRAPH:
+                if ( this.first == null ) {
+                    writer.startGraph();
+                } else {
+                    writer.startGraph( this.first );
+                }
+                break;
+                
+                case START_DIRECTED_GRAPH:
+                if ( this.first == null ) {
+                    writer.startDirectedGraph();
+                } else {
+                    writer.startDirectedGraph( this.first );
+                }
+                break;
+                
+                case START_NODE:
+                writer.startNode( this.first );
+                break;
+                
+                case PORT:
+                writer.port( (String)this.first );
+                break;
+                
+                case PORTS:
+                writer.ports( (GraphmlPorts)this.first );
+                break;
+                
+                case END_NODE:
+                writer.endNode();
+                break;
+                
+                case EDGE:
+                if ( this.firstPort == null && this.secondPort == null ) {
+                    writer.edge( this.first, this.second );
+                } else {
+                    writer.edge( this.first, this.firstPort, this.second, this.secondPort );
+                }
+                break;
+                
+                case UNDIRECTED_EDGE:
+                if ( this.firstPort == null && this.secondPort == null ) {
+                    writer.undirectedEdge( this.first, this.second );
+                } else {
+                    writer.undirectedEdge( this.first, this.firstPort, this.second, this.secondPort );
+                }
+                break;
+                
+                case DIRECTED_EDGE:
+                if ( this.firstPort == null && this.secondPort == null ) {
+                    writer.directedEdge( this.first, this.second );
+                } else {
+                    writer.directedEdge( this.first, this.firstPort, this.second, this.secondPort );
+                }
+                break;
+                
+                case HYPEREDGE:
+                writer.hyperedge( (Object[])this.first );
+                break;
+                
+                case RESOLVE_EDGES:
+                writer.resolveEdges();
+                break;
+                
+                case END_GRAPH:
+                writer.endGraph();
+                break;
+                
+                case END_GRAPHML:
+                writer.endGraphml();
+                break;
+            }
+        }
+    }
+}
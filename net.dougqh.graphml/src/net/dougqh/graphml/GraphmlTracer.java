@@ -0,0 +1,14 @@
+package net.dougqh.graphml;
+
+public interface GraphmlTracer {
+    // Nodes that take at least this long between startNode and endNode
+    // are reported through slowNode.  Long.MAX_VALUE disables sampling.
+    // Asked at the start of each document.
+    public abstract long nodeThresholdNanos();
+    
+    public abstract void begin( final GraphmlPhase phase, final String id );
+    
+    public abstract void end( final GraphmlPhase phase, final long count );
+    
+    public abstract void slowNode( final String id, final long nanos );
+}
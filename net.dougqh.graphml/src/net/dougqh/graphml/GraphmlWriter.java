@@ -7,10 +7,16 @@ import java.io.FileOutputStream;
 import java.io.Flushable;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
@@ -29,15 +35,70 @@ public final class GraphmlWriter
     private static final String ENCODING = "UTF-8";
     
     private static final XMLOutputFactory FACTORY = XMLOutputFactory.newInstance();
+    /*
+     * Escaped text, attributes and cached fragments are written around the
+     * StAX writer, which is only safe when it passes bytes straight through
+     * to the stream - as the JDK's own does.  Another provider (Woodstox,
+     * say) may buffer, so with one of those everything goes through the
+     * StAX writer, which is flushed before fragments are copied.
+     */
+    private static final boolean PASS_THROUGH = FACTORY.getClass().getName().equals(
+        "com.sun.xml.internal.stream.XMLOutputFactoryImpl" );
+    
+    private static final int BUFFER_SIZE = 8192;
+    private static final int EDGE_BATCH_SIZE = 4096;
+    
+    private static final int FOREIGN_ENDPOINT = 1 << 30;
+    private static final int PORT_ENDPOINT = 1 << 29;
+    private static final int MAX_NODE_NUMBER = PORT_ENDPOINT - 1;
+    private static final int MAX_ENDPOINT_INDEX = PORT_ENDPOINT - 1;
+    private static final int ENDPOINT_MASK = Integer.MAX_VALUE;
+    // node ids issued by the writer always start with 'N'
+    private static final String STUB_ESCAPE = "_";
+    private static final AtomicInteger MBEAN_IDS = new AtomicInteger();
+    
+    private static final long NO_FRAGMENT = 0;
     
-    private final OutputStream out;
-    private final boolean close;
-    private final XMLStreamWriter xmlWriter;
+    private OutputStream out;
+    private boolean close;
+    private final MeteredOutputStream meteredOut;
+    private final PositionedOutputStream bufferedOut;
+    private XMLStreamWriter xmlWriter;
+    
+    private final GraphmlStatistics statistics = new GraphmlStatistics();
+    private ObjectName mbeanName = null;
+    private Tracing tracing = null;
     
     private final Map< Object, String > graphIds = new HashMap< Object, String >( 8 );
-    private final Map< Object, String > nodeIds = new HashMap< Object, String >( 32 );
+    private Map< Object, Integer > nodeNumbers = new HashMap< Object, Integer >( 32 );
+    
+    private final EdgeStore edges = new EdgeStore();
+    private final PackedEdge packedEdge = new PackedEdge();
+    private final List< String > foreignIds = new ArrayList< String >();
+    private final Map< String, Integer > foreignIndexes = new HashMap< String, Integer >();
+    
+    private final List< String > portNames = new ArrayList< String >();
+    private final Map< String, Integer > portCodes = new HashMap< String, Integer >();
+    private final PortEndpoints portEndpoints = new PortEndpoints();
+    private final HyperedgeStore hyperedges = new HyperedgeStore();
     
-    private final List< Edge > edges = new ArrayList< Edge >( 32 );
+    private final ReferenceChecker references = new ReferenceChecker();
+    private UnresolvedEdgePolicy unresolvedEdgePolicy = UnresolvedEdgePolicy.DROP;
+    private final UnresolvedEdgeReport unresolvedEdges =
+        new UnresolvedEdgeReport( UnresolvedEdgeReport.DEFAULT_SAMPLE_SIZE );
+    
+    private boolean compact = false;
+    private final AsciiEscaper escaper = new AsciiEscaper();
+    
+    private GraphmlFragmentCache fragmentCache = null;
+    private long fragmentKey = NO_FRAGMENT;
+    private long fragmentStart;
+    private long fragmentInnerStart;
+    private int fragmentNodeNumber;
+    private int fragmentDepth = -1;
+    private long transferSource;
+    private long transferLength = 0;
+    private final ArrayList< Boolean > edgeDefaults = new ArrayList< Boolean >( 8 );
     
     private int curGraphId = 0;
     private int curNodeId = 0;
@@ -61,18 +122,97 @@ public final class GraphmlWriter
     {
         this.out = out;
         this.close = close;
+        // the StAX writer hands bytes to the stream one at a time, so it
+        // always needs a buffer in front of the caller's stream
+        this.meteredOut = new MeteredOutputStream( out, this.statistics );
+        this.bufferedOut = new PositionedOutputStream( this.meteredOut, BUFFER_SIZE );
+        this.xmlWriter = createXmlWriter( this.bufferedOut );
+    }
+    
+    private static final XMLStreamWriter createXmlWriter( final OutputStream out )
+        throws GraphmlIoException
+    {
         try {
-            this.xmlWriter = FACTORY.createXMLStreamWriter( out, "utf-8" );
+            return FACTORY.createXMLStreamWriter( out, "utf-8" );
         } catch ( XMLStreamException e ) {
             throw new GraphmlIoException( e );
         }
     }
     
+    public final GraphmlWriter reset( final OutputStream out )
+        throws GraphmlIoException
+    {
+        return this.reset( out, false );
+    }
+    
+    /*
+     * Starts a new document on out, reusing the already grown node map,
+     * edge buffer and output buffer.  The previous document must have been
+     * closed.  Everything else goes back to how a new writer starts out -
+     * compact ids, edge budget, unresolved edge policy, external node
+     * checking, tracer and extensions all belong to a single document.
+     */
+    public final GraphmlWriter reset( final OutputStream out, final boolean close )
+        throws GraphmlIoException
+    {
+        this.out = out;
+        this.close = close;
+        this.meteredOut.reset( out );
+        this.bufferedOut.reset();
+        this.xmlWriter = createXmlWriter( this.bufferedOut );
+        this.fragmentCache = null;
+        this.fragmentKey = NO_FRAGMENT;
+        this.fragmentDepth = -1;
+        
+        this.graphIds.clear();
+        this.edgeDefaults.clear();
+        this.nodeNumbers.clear();
+        this.edges.clear();
+        this.edges.clearSettings();
+        this.foreignIds.clear();
+        this.foreignIndexes.clear();
+        this.portNames.clear();
+        this.portCodes.clear();
+        this.portEndpoints.clear();
+        this.hyperedges.clear();
+        this.references.clear();
+        this.unresolvedEdges.clear();
+        
+        this.curGraphId = 0;
+        this.curNodeId = 0;
+        this.yed = null;
+        this.compact = false;
+        this.unresolvedEdgePolicy = UnresolvedEdgePolicy.DROP;
+        this.tracing = null;
+        this.statistics.restarted();
+        return this;
+    }
+    
+    public final GraphmlWriter expectedSize(
+        final int numNodes,
+        final int numEdges )
+    {
+        if ( numNodes < 0 ) throw new IllegalArgumentException( "numNodes" );
+        if ( numEdges < 0 ) throw new IllegalArgumentException( "numEdges" );
+        
+        if ( this.nodeNumbers.isEmpty() ) {
+            this.nodeNumbers = new HashMap< Object, Integer >(
+                (int)Math.min( Integer.MAX_VALUE, numNodes * 4L / 3 + 1 ) );
+        }
+        this.references.ensureCapacity( numNodes );
+        this.edges.ensureCapacity( numEdges );
+        return this;
+    }
+    
     public final GraphmlWriter forYed() {
         this.yed = new YedGraphmlExtension( this );
         return this;
     }
     
+    public final boolean isForYed() {
+        return this.yed != null;
+    }
+    
     public final YedGraphmlExtension yed() {
         if ( this.yed != null ) {
             return (YedGraphmlExtension)this.yed;
@@ -81,9 +221,118 @@ public final class GraphmlWriter
         }
     }
     
+    /*
+     * Compact output uses base-62 node and graph ids, leaves out directed
+     * on edges that match the enclosing graph's edgedefault and lets
+     * extensions skip attributes that only restate the reader's defaults.
+     */
+    public final GraphmlWriter compact() {
+        if ( this.curNodeId != 0 || this.curGraphId != 0 ) {
+            throw new IllegalStateException( "ids have already been assigned" );
+        }
+        
+        this.compact = true;
+        return this;
+    }
+    
+    public final boolean isCompact() {
+        return this.compact;
+    }
+    
+    /*
+     * Offsets in the fragment index are from the start of the document, so
+     * caching is only possible when writing a whole file.
+     */
+    public final GraphmlWriter fragmentCache( final GraphmlFragmentCache cache ) {
+        if ( ! ( this.out instanceof FileOutputStream ) ) {
+            throw new IllegalStateException( "fragment caching needs a file" );
+        }
+        
+        this.fragmentCache = cache;
+        return this;
+    }
+    
+    public final boolean isFragmentCaching() {
+        return this.fragmentCache != null;
+    }
+    
+    public final GraphmlStatistics statistics() {
+        return this.statistics;
+    }
+    
+    public final GraphmlWriter registerMBean() {
+        return this.registerMBean(
+            GraphmlWriter.class.getPackage().getName() +
+            ":type=GraphmlWriter,id=" + MBEAN_IDS.incrementAndGet() );
+    }
+    
+    public final GraphmlWriter registerMBean( final String name ) {
+        if ( this.mbeanName != null ) {
+            throw new IllegalStateException( "MBean already registered" );
+        }
+        try {
+            ObjectName objectName = new ObjectName( name );
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+                this.statistics,
+                objectName );
+            this.mbeanName = objectName;
+        } catch ( JMException e ) {
+            throw new IllegalStateException( e );
+        }
+        return this;
+    }
+    
+    public final GraphmlWriter onUnresolvedEdge( final UnresolvedEdgePolicy policy ) {
+        if ( policy == null ) throw new IllegalArgumentException( "policy" );
+        
+        this.unresolvedEdgePolicy = policy;
+        return this;
+    }
+    
+    public final GraphmlWriter edgeMemoryBudget( final long bytes ) {
+        if ( bytes <= 0 ) throw new IllegalArgumentException( "bytes" );
+        
+        this.edges.memoryBudget( bytes );
+        return this;
+    }
+    
+    public final GraphmlWriter spillDirectory( final File directory ) {
+        this.edges.spillDirectory( directory );
+        return this;
+    }
+    
+    public final GraphmlWriter expectExternalNodes( final int expectedCount ) {
+        if ( expectedCount < 0 ) throw new IllegalArgumentException( "expectedCount" );
+        
+        this.references.expectExternalNodes( expectedCount );
+        return this;
+    }
+    
+    public final void externalNode( final String id ) {
+        this.references.externalNode( id );
+    }
+    
+    // dropped edges are only reported here - nothing is logged
+    public final UnresolvedEdgeReport unresolvedEdges() {
+        return this.unresolvedEdges;
+    }
+    
+    public final GraphmlWriter trace( final GraphmlTracer tracer ) {
+        if ( tracer == null ) {
+            this.tracing = null;
+        } else {
+            this.tracing = new Tracing( tracer, this.statistics );
+        }
+        return this;
+    }
+    
     public final void startGraphml()
         throws GraphmlIoException
     {
+        if ( this.tracing != null ) {
+            this.tracing.beginDocument();
+        }
+        
         this.startDocument( ENCODING, VERSION );
         
         this.start( "graphml" ).
@@ -98,6 +347,10 @@ public final class GraphmlWriter
         if ( this.yed != null ) {
             this.yed.addMetaInfo();
         }
+        
+        if ( this.tracing != null ) {
+            this.tracing.endDocument();
+        }
     }
     
     public final void startKey() throws GraphmlIoException {
@@ -120,9 +373,14 @@ public final class GraphmlWriter
         throws GraphmlIoException
     {
         String graphId = this.nextGraphId();
+        this.statistics.graphWritten();
+        if ( this.tracing != null ) {
+            this.tracing.startGraph( graphId );
+        }
         this.start( "graph" ).
             attrib( "id", graphId ).
             attrib( "edgedefault", "undirected" );
+        this.edgeDefaults.add( Boolean.FALSE );
         return graphId;
     }
     
@@ -138,21 +396,116 @@ public final class GraphmlWriter
         throws GraphmlIoException
     {
         String graphId = this.nextGraphId();
+        this.statistics.graphWritten();
+        if ( this.tracing != null ) {
+            this.tracing.startGraph( graphId );
+        }
         this.start( "graph" ).
             attrib( "id", graphId ).
             attrib( "edgedefault", "directed" );
+        this.edgeDefaults.add( Boolean.TRUE );
         return graphId;
     }
     
     public final String startNode( final Object node ) throws GraphmlIoException {
-        String id = this.startNode();
-        this.nodeIds.put( node, id );
-        return id;
+        return this.startNode( this.nodeNumber( node ) );
+    }
+    
+    private final int nodeNumber( final Object node ) {
+        Integer reserved = this.nodeNumbers.get( node );
+        if ( reserved != null && ! this.references.isWritten( reserved ) ) {
+            // an edge to this node was declared before the node itself
+            return reserved;
+        } else {
+            int nodeNumber = this.nextNodeNumber();
+            this.nodeNumbers.put( node, nodeNumber );
+            return nodeNumber;
+        }
+    }
+    
+    /*
+     * Writes the whole node element from the fragment cache and returns
+     * its id if the cache has an entry for key.  Otherwise, nothing is
+     * written and null is returned - the caller then writes the node as
+     * usual, starting with startNode, and it is recorded under key.
+     */
+    public final String writeCachedNode( final Object node, final long key )
+        throws GraphmlIoException
+    {
+        if ( this.fragmentCache == null || this.fragmentDepth >= 0 ) {
+            return null;
+        }
+        
+        GraphmlFragmentCache cache = this.fragmentCache;
+        int entry = cache.find( key, this.compact );
+        if ( entry < 0 ) {
+            this.fragmentKey = key;
+            return null;
+        }
+        
+        int nodeNumber = this.nodeNumber( node );
+        String nodeId = this.nodeId( nodeNumber );
+        this.references.nodeWritten( nodeNumber );
+        this.statistics.nodeWritten();
+        if ( this.tracing != null ) {
+            this.tracing.startNode( nodeId );
+        }
+        
+        long start = this.position();
+        if ( nodeNumber == cache.nodeNumber( entry ) ) {
+            this.transfer( cache.start( entry ), cache.length( entry ) );
+            cache.record(
+                key,
+                start,
+                cache.innerOffset( entry ),
+                cache.length( entry ),
+                nodeNumber );
+        } else {
+            // same content under a different id - only the start tag changes
+            this.raw( "<node id=\"" + nodeId + "\">" );
+            int innerOffset = cache.innerOffset( entry );
+            this.transfer(
+                cache.start( entry ) + innerOffset,
+                cache.length( entry ) - innerOffset );
+            cache.record(
+                key,
+                start,
+                (int)( this.position() - start - ( cache.length( entry ) - innerOffset ) ),
+                (int)( this.position() - start ),
+                nodeNumber );
+        }
+        
+        if ( this.tracing != null ) {
+            this.tracing.endNode();
+        }
+        return nodeId;
     }
     
     public final String startNode() throws GraphmlIoException {
-        String nodeId = this.nextNodeId();
+        return this.startNode( this.nextNodeNumber() );
+    }
+    
+    private final String startNode( final int nodeNumber ) throws GraphmlIoException {
+        String nodeId = this.nodeId( nodeNumber );
+        this.references.nodeWritten( nodeNumber );
+        this.statistics.nodeWritten();
+        if ( this.tracing != null ) {
+            this.tracing.startNode( nodeId );
+        }
+        
+        if ( this.fragmentDepth >= 0 ) {
+            ++this.fragmentDepth;
+        } else if ( this.fragmentKey != NO_FRAGMENT ) {
+            this.fragmentDepth = 0;
+            this.fragmentNodeNumber = nodeNumber;
+            this.fragmentStart = this.position();
+        }
+        
         this.start( "node" ).attrib( "id", nodeId );
+        
+        if ( this.fragmentDepth == 0 ) {
+            this.fragmentInnerStart = this.position();
+        }
         return nodeId;
     }
     
@@ -164,8 +517,36 @@ public final class GraphmlWriter
         this.end();
     }
     
+    public final void port( final String name ) throws GraphmlIoException {
+        this.startLeaf( "port" ).attrib( "name", name ).endLeaf();
+    }
+    
+    public final void ports( final GraphmlPorts ports ) throws GraphmlIoException {
+        if ( ports == null ) throw new IllegalArgumentException( "ports" );
+        
+        ports.write( this );
+    }
+    
     public final void endNode() throws GraphmlIoException {
         this.end();
+        
+        if ( this.fragmentDepth == 0 ) {
+            long end = this.position();
+            this.fragmentCache.record(
+                this.fragmentKey,
+                this.fragmentStart,
+                (int)( this.fragmentInnerStart - this.fragmentStart ),
+                (int)( end - this.fragmentStart ),
+                this.fragmentNodeNumber );
+            this.fragmentKey = NO_FRAGMENT;
+            this.fragmentDepth = -1;
+        } else if ( this.fragmentDepth > 0 ) {
+            --this.fragmentDepth;
+        }
+        
+        if ( this.tracing != null ) {
+            this.tracing.endNode();
+        }
     }
     
     public final void edge(
@@ -173,7 +554,7 @@ public final class GraphmlWriter
         final Object targetNode )
         throws GraphmlIoException
     {
-        this.edges.add( new UnresolvedEdge( sourceNode, targetNode, null ) );
+        this.buffer( this.reserve( sourceNode ), this.reserve( targetNode ), null );
     }
     
     public final void undirectedEdge(
@@ -181,7 +562,7 @@ public final class GraphmlWriter
         final Object targetNode )
         throws GraphmlIoException
     {
-        this.edges.add( new UnresolvedEdge( sourceNode, targetNode, false ) );
+        this.buffer( this.reserve( sourceNode ), this.reserve( targetNode ), false );
     }
     
     public final void directedEdge(
@@ -189,43 +570,450 @@ public final class GraphmlWriter
         final Object targetNode )
         throws GraphmlIoException
     {
-        this.edges.add( new UnresolvedEdge( sourceNode, targetNode, true ) );
+        this.buffer( this.reserve( sourceNode ), this.reserve( targetNode ), true );
     }
     
     public final void edge( final String sourceId, final String targetId )
         throws GraphmlIoException
     {
-        this.edges.add( new ResolvedEdge( sourceId, targetId, null ) );
+        this.buffer( this.endpointOf( sourceId ), this.endpointOf( targetId ), null );
     }
 
     public final void undirectedEdge( final String sourceId, final String targetId )
         throws GraphmlIoException
     {
-        this.edges.add( new ResolvedEdge( sourceId, targetId, false ) );
+        this.buffer( this.endpointOf( sourceId ), this.endpointOf( targetId ), false );
     }
     
     public final void directedEdge( final String sourceId, final String targetId )
         throws GraphmlIoException
     {
-        this.edges.add( new ResolvedEdge( sourceId, targetId, true ) );
+        this.buffer( this.endpointOf( sourceId ), this.endpointOf( targetId ), true );
+    }
+    
+    public final void edge(
+        final Object sourceNode,
+        final String sourcePort,
+        final Object targetNode,
+        final String targetPort )
+        throws GraphmlIoException
+    {
+        this.buffer(
+            this.portEndpoint( this.reserve( sourceNode ), sourcePort ),
+            this.portEndpoint( this.reserve( targetNode ), targetPort ),
+            null );
+    }
+    
+    public final void undirectedEdge(
+        final Object sourceNode,
+        final String sourcePort,
+        final Object targetNode,
+        final String targetPort )
+        throws GraphmlIoException
+    {
+        this.buffer(
+            this.portEndpoint( this.reserve( sourceNode ), sourcePort ),
+            this.portEndpoint( this.reserve( targetNode ), targetPort ),
+            false );
+    }
+    
+    public final void directedEdge(
+        final Object sourceNode,
+        final String sourcePort,
+        final Object targetNode,
+        final String targetPort )
+        throws GraphmlIoException
+    {
+        this.buffer(
+            this.portEndpoint( this.reserve( sourceNode ), sourcePort ),
+            this.portEndpoint( this.reserve( targetNode ), targetPort ),
+            true );
+    }
+    
+    public final void edge(
+        final String sourceId,
+        final String sourcePort,
+        final String targetId,
+        final String targetPort )
+        throws GraphmlIoException
+    {
+        this.buffer(
+            this.portEndpoint( this.endpointOf( sourceId ), sourcePort ),
+            this.portEndpoint( this.endpointOf( targetId ), targetPort ),
+            null );
+    }
+    
+    public final void undirectedEdge(
+        final String sourceId,
+        final String sourcePort,
+        final String targetId,
+        final String targetPort )
+        throws GraphmlIoException
+    {
+        this.buffer(
+            this.portEndpoint( this.endpointOf( sourceId ), sourcePort ),
+            this.portEndpoint( this.endpointOf( targetId ), targetPort ),
+            false );
+    }
+    
+    public final void directedEdge(
+        final String sourceId,
+        final String sourcePort,
+        final String targetId,
+        final String targetPort )
+        throws GraphmlIoException
+    {
+        this.buffer(
+            this.portEndpoint( this.endpointOf( sourceId ), sourcePort ),
+            this.portEndpoint( this.endpointOf( targetId ), targetPort ),
+            true );
+    }
+    
+    public final void hyperedge( final Object... nodes ) {
+        this.startHyperedge();
+        for ( Object node : nodes ) {
+            this.endpoint( node );
+        }
+        this.endHyperedge();
+    }
+    
+    public final void startHyperedge() {
+        this.hyperedges.start();
+    }
+    
+    public final void endpoint( final Object node ) {
+        this.hyperedges.add( this.reserve( node ), HyperedgeStore.NO_PORT );
+    }
+    
+    public final void endpoint( final Object node, final String port ) {
+        this.hyperedges.add( this.reserve( node ), this.portCode( port ) );
+    }
+    
+    public final void endpoint( final String id ) {
+        this.hyperedges.add( this.endpointOf( id ), HyperedgeStore.NO_PORT );
+    }
+    
+    public final void endpoint( final String id, final String port ) {
+        this.hyperedges.add( this.endpointOf( id ), this.portCode( port ) );
+    }
+    
+    public final void endHyperedge() {
+        this.hyperedges.end();
+    }
+    
+    private final int reserve( final Object node ) {
+        Integer nodeNumber = this.nodeNumbers.get( node );
+        if ( nodeNumber == null ) {
+            nodeNumber = this.nextNodeNumber();
+            this.nodeNumbers.put( node, nodeNumber );
+        }
+        return nodeNumber;
+    }
+    
+    private final int endpointOf( final String id ) {
+        int nodeNumber = this.issuedNodeNumber( id );
+        if ( nodeNumber >= 0 ) {
+            return nodeNumber;
+        }
+        
+        Integer index = this.foreignIndexes.get( id );
+        if ( index == null ) {
+            index = this.foreignIds.size();
+            if ( index > MAX_ENDPOINT_INDEX ) {
+                throw new IllegalStateException( "too many foreign node ids" );
+            }
+            this.foreignIds.add( id );
+            this.foreignIndexes.put( id, index );
+        }
+        return FOREIGN_ENDPOINT | index;
+    }
+    
+    // only ids this writer has handed out - "Nancy" may parse as a number too
+    private final int issuedNodeNumber( final String id ) {
+        if ( id == null ) {
+            return -1;
+        }
+        
+        int nodeNumber = nodeNumber( this.compact, id );
+        if ( nodeNumber >= 0 && nodeNumber < this.curNodeId &&
+            this.references.isWritten( nodeNumber ) )
+        {
+            return nodeNumber;
+        } else {
+            return -1;
+        }
+    }
+    
+    private final int portEndpoint( final int endpoint, final String port ) {
+        if ( port == null ) {
+            return endpoint;
+        }
+        
+        int index = this.portEndpoints.intern( endpoint, this.portCode( port ) );
+        if ( index > MAX_ENDPOINT_INDEX ) {
+            throw new IllegalStateException( "too many connected ports" );
+        }
+        return PORT_ENDPOINT | index;
+    }
+    
+    private final int portCode( final String port ) {
+        if ( port == null ) throw new IllegalArgumentException( "port" );
+        
+        Integer code = this.portCodes.get( port );
+        if ( code == null ) {
+            code = this.portNames.size();
+            this.portNames.add( port );
+            this.portCodes.put( port, code );
+        }
+        return code;
+    }
+    
+    private final void buffer(
+        final int source,
+        final int target,
+        final Boolean directed )
+        throws GraphmlIoException
+    {
+        this.edges.add( pack( source, target, directed ) );
+        this.statistics.edgeBuffered( this.edges.spilled() );
     }
     
-    private final void edge( final Edge edge ) throws GraphmlIoException {
-        String sourceId = edge.sourceId();
-        String targetId = edge.targetId();
-        if ( sourceId == null || targetId == null ) {
-            System.err.println( "Unresolved edge" );
-        } else {        
-            this.start( "edge" ).
-                attrib( "source", edge.sourceId() ).
-                attrib( "target", edge.targetId() ).
-                attrib( "directed", edge.directed() );
+    /*
+     * An edge is packed into a single long:
+     *   bits 63-33 - source endpoint
+     *   bits 32-2  - target endpoint
+     *   bits 1-0   - direction: 0 unspecified, 1 undirected, 2 directed
+     * 
+     * An endpoint is either a node number or, with FOREIGN_ENDPOINT set,
+     * an index into foreignIds for ids that did not come from this writer.
+     * With PORT_ENDPOINT set, it is instead an index into portEndpoints,
+     * which holds the node endpoint together with the port.
+     */
+    static final long pack(
+        final int source,
+        final int target,
+        final Boolean directed )
+    {
+        long direction;
+        if ( directed == null ) {
+            direction = 0;
+        } else if ( directed ) {
+            direction = 2;
+        } else {
+            direction = 1;
+        }
+        return ( (long)source << 33 ) | ( (long)target << 2 ) | direction;
+    }
+    
+    private final void edge( final long record ) throws GraphmlIoException {
+        int sourceNode = this.node( (int)( record >>> 33 ) );
+        int targetNode = this.node( (int)( record >>> 2 ) & ENDPOINT_MASK );
+        
+        PackedEdge edge = this.unpack( record, this.packedEdge );
+        
+        boolean sourceKnown = this.isKnown( sourceNode, edge.sourceId );
+        boolean targetKnown = this.isKnown( targetNode, edge.targetId );
+        if ( ! sourceKnown || ! targetKnown ) {
+            this.statistics.edgeUnresolved();
+            this.unresolvedEdges.add( edge.sourceId, edge.targetId );
             
-            if ( this.yed != null ) {
-                this.yed.edge( edge );
+            switch ( this.unresolvedEdgePolicy ) {
+                case DROP:
+                return;
+                
+                case FAIL:
+                throw new GraphmlIoException( this.unresolvedEdges.toString() );
+                
+                case STUB:
+                if ( ! sourceKnown ) {
+                    this.stub( sourceNode, edge.sourceId );
+                }
+                if ( ! targetKnown && targetNode != sourceNode ) {
+                    this.stub( targetNode, edge.targetId );
+                }
+                break;
             }
+        }
+        
+        //DQH - GraphML Spec indicates that "sourcePort" should be "sourceport"
+        //and "targetPort" should be "targetport", but that does not work in
+        //yEd.
+        this.statistics.edgeWritten();
+        this.start( "edge" ).
+            attrib( "source", this.reference( sourceNode, edge.sourceId ) ).
+            attrib( "sourcePort", edge.sourcePort ).
+            attrib( "target", this.reference( targetNode, edge.targetId ) ).
+            attrib( "targetPort", edge.targetPort ).
+            attrib( "directed", this.isEdgeDefault( edge.directed ) ? null : edge.directed );
+        
+        if ( this.yed != null ) {
+            this.yed.edge( edge );
+        }
+        
+        this.end();
+    }
+    
+    private final PackedEdge unpack( final long record, final PackedEdge edge ) {
+        int source = (int)( record >>> 33 );
+        int target = (int)( record >>> 2 ) & ENDPOINT_MASK;
+        
+        edge.sourceId = this.id( this.node( source ) );
+        edge.sourcePort = this.portName( source );
+        edge.targetId = this.id( this.node( target ) );
+        edge.targetPort = this.portName( target );
+        switch ( (int)( record & 3 ) ) {
+            case 0:
+            edge.directed = null;
+            break;
             
-            this.end();
+            case 1:
+            edge.directed = Boolean.FALSE;
+            break;
+            
+            default:
+            edge.directed = Boolean.TRUE;
+        }
+        return edge;
+    }
+    
+    private final void prepareEdges( final long[] batch, final int batchSize )
+        throws GraphmlIoException
+    {
+        ArrayList< PackedEdge > edges = new ArrayList< PackedEdge >( batchSize );
+        for ( int i = 0; i < batchSize; ++i ) {
+            edges.add( this.unpack( batch[ i ], new PackedEdge() ) );
+        }
+        
+        try {
+            this.yed.prepareEdges( edges );
+        } catch ( GraphmlIoException e ) {
+            throw e;
+        } catch ( IOException e ) {
+            throw new GraphmlIoException( e );
+        }
+    }
+    
+    private final void hyperedge( final int hyperedge ) throws GraphmlIoException {
+        int from = this.hyperedges.from( hyperedge );
+        int to = this.hyperedges.to( hyperedge );
+        
+        boolean unresolved = false;
+        for ( int i = from; i < to; ++i ) {
+            int endpoint = this.hyperedges.endpoint( i );
+            String id = this.id( endpoint );
+            if ( ! this.isKnown( endpoint, id ) ) {
+                if ( ! unresolved ) {
+                    unresolved = true;
+                    this.statistics.edgeUnresolved();
+                    this.unresolvedEdges.addHyperedge( id );
+                }
+                
+                switch ( this.unresolvedEdgePolicy ) {
+                    case DROP:
+                    return;
+                    
+                    case FAIL:
+                    throw new GraphmlIoException( this.unresolvedEdges.toString() );
+                    
+                    case STUB:
+                    this.stub( endpoint, id );
+                    break;
+                }
+            }
+        }
+        
+        this.statistics.edgeWritten();
+        this.start( "hyperedge" );
+        for ( int i = from; i < to; ++i ) {
+            int endpoint = this.hyperedges.endpoint( i );
+            int port = this.hyperedges.port( i );
+            this.startLeaf( "endpoint" ).
+                attrib( "node", this.reference( endpoint, this.id( endpoint ) ) ).
+                attrib( "port", port == HyperedgeStore.NO_PORT ? null : this.portNames.get( port ) ).
+                endLeaf();
+        }
+        this.end();
+    }
+    
+    private final boolean isEdgeDefault( final Boolean directed ) {
+        return this.compact &&
+            ! this.edgeDefaults.isEmpty() &&
+            this.edgeDefaults.get( this.edgeDefaults.size() - 1 ).equals( directed );
+    }
+    
+    private final int node( final int endpoint ) {
+        if ( ( endpoint & PORT_ENDPOINT ) == 0 ) {
+            return endpoint;
+        } else {
+            return this.portEndpoints.endpoint( endpoint & ~PORT_ENDPOINT );
+        }
+    }
+    
+    private final String portName( final int endpoint ) {
+        if ( ( endpoint & PORT_ENDPOINT ) == 0 ) {
+            return null;
+        } else {
+            return this.portNames.get(
+                this.portEndpoints.port( endpoint & ~PORT_ENDPOINT ) );
+        }
+    }
+    
+    private final String id( final int endpoint ) {
+        if ( ( endpoint & FOREIGN_ENDPOINT ) == 0 ) {
+            return this.nodeId( endpoint );
+        } else {
+            return this.foreignIds.get( endpoint & ~FOREIGN_ENDPOINT );
+        }
+    }
+    
+    private final boolean isKnown( final int endpoint, final String id ) {
+        if ( ( endpoint & FOREIGN_ENDPOINT ) == 0 ) {
+            return this.references.isWritten( endpoint );
+        } else {
+            // the writer may have issued the id since the edge was added
+            return this.issuedNodeNumber( id ) >= 0 || this.references.isKnown( id );
+        }
+    }
+    
+    private final void stub( final int endpoint, final String id )
+        throws GraphmlIoException
+    {
+        if ( id == null ) {
+            throw new GraphmlIoException( "Cannot stub a null node id" );
+        }
+        
+        if ( ( endpoint & FOREIGN_ENDPOINT ) == 0 ) {
+            this.startLeaf( "node" ).attrib( "id", id ).endLeaf();
+            this.references.nodeWritten( endpoint );
+        } else {
+            this.startLeaf( "node" ).attrib( "id", this.stubId( id ) ).endLeaf();
+            this.references.stubWritten( id );
+        }
+    }
+    
+    /*
+     * A stub written under a foreign id like "N50" would collide with the
+     * node the writer later issues that id, so those stubs are escaped -
+     * as are stubs whose ids already start with the escape, so that no two
+     * foreign ids end up with the same stub.
+     */
+    private final String stubId( final String id ) {
+        if ( id.startsWith( STUB_ESCAPE ) || nodeNumber( this.compact, id ) >= 0 ) {
+            return STUB_ESCAPE + id;
+        } else {
+            return id;
+        }
+    }
+    
+    // the id written for an endpoint - a foreign id may have been stubbed
+    private final String reference( final int endpoint, final String id ) {
+        if ( ( endpoint & FOREIGN_ENDPOINT ) != 0 &&
+            this.issuedNodeNumber( id ) < 0 &&
+            this.references.isStub( id ) )
+        {
+            return this.stubId( id );
+        } else {
+            return id;
         }
     }
     
@@ -235,19 +1023,77 @@ public final class GraphmlWriter
     
     public final void endGraph() throws GraphmlIoException {
         this.end();
+        if ( ! this.edgeDefaults.isEmpty() ) {
+            this.edgeDefaults.remove( this.edgeDefaults.size() - 1 );
+        }
+        
+        if ( this.tracing != null ) {
+            this.tracing.endGraph();
+        }
     }    
     
     public final void endGraphml() throws GraphmlIoException {
-        for ( Edge edge : this.edges ) {
-            this.edge( edge );
-        }
-        this.edges.clear();
+        this.resolveEdges();
         
         this.end();
     }
     
+    public final void resolveEdges() throws GraphmlIoException {
+        EdgeStore.Cursor cursor = this.edges.cursor();
+        try {
+            long[] batch = new long[ EDGE_BATCH_SIZE ];
+            while ( true ) {
+                int batchSize = 0;
+                while ( batchSize < EDGE_BATCH_SIZE && cursor.next() ) {
+                    if ( batchSize == 0 && this.tracing != null ) {
+                        this.tracing.beginEdgeBatch();
+                    }
+                    batch[ batchSize++ ] = cursor.record();
+                }
+                if ( batchSize == 0 ) {
+                    break;
+                }
+                
+                if ( this.yed != null && this.yed.batchesEdges() ) {
+                    this.prepareEdges( batch, batchSize );
+                }
+                for ( int i = 0; i < batchSize; ++i ) {
+                    this.edge( batch[ i ] );
+                }
+                
+                if ( this.tracing != null ) {
+                    this.tracing.endEdgeBatch( batchSize );
+                }
+            }
+            
+            int numHyperedges = this.hyperedges.size();
+            if ( numHyperedges != 0 ) {
+                if ( this.tracing != null ) {
+                    this.tracing.beginEdgeBatch();
+                }
+                for ( int i = 0; i < numHyperedges; ++i ) {
+                    this.hyperedge( i );
+                }
+                if ( this.tracing != null ) {
+                    this.tracing.endEdgeBatch( numHyperedges );
+                }
+            }
+        } finally {
+            cursor.close();
+            this.edges.clear();
+            this.portEndpoints.clear();
+            this.hyperedges.clear();
+            this.statistics.edgesBuffered( 0 );
+        }
+    }
+    
     public final String getId( final Object object ) {
-    	return this.nodeIds.get( object );
+        Integer nodeNumber = this.nodeNumbers.get( object );
+        if ( nodeNumber == null || ! this.references.isWritten( nodeNumber ) ) {
+            return null;
+        } else {
+            return this.nodeId( nodeNumber );
+        }
     }
     
     private final GraphmlWriter startDocument(
@@ -266,6 +1112,9 @@ public final class GraphmlWriter
     final GraphmlWriter start( final String element )
         throws GraphmlIoException
     {
+        if ( this.transferLength != 0 ) {
+            this.drainTransfer();
+        }
         try {
             this.xmlWriter.writeStartElement( element );
         } catch ( XMLStreamException e ) {
@@ -280,6 +1129,9 @@ public final class GraphmlWriter
         final String namespaceUri )
         throws GraphmlIoException
     {
+        if ( this.transferLength != 0 ) {
+            this.drainTransfer();
+        }
         try {
             this.xmlWriter.writeStartElement( prefix, element, namespaceUri );
         } catch ( XMLStreamException e ) {
@@ -288,32 +1140,98 @@ public final class GraphmlWriter
         return this;
     }
     
+    /*
+     * For elements that never have content - in compact mode these are
+     * written as empty elements rather than as a start / end tag pair.
+     */
+    final GraphmlWriter startLeaf( final String element )
+        throws GraphmlIoException
+    {
+        if ( this.transferLength != 0 ) {
+            this.drainTransfer();
+        }
+        if ( ! this.compact ) {
+            return this.start( element );
+        }
+        try {
+            this.xmlWriter.writeEmptyElement( element );
+        } catch ( XMLStreamException e ) {
+            throw new GraphmlIoException( e );
+        }
+        return this;
+    }
+    
+    final GraphmlWriter startLeaf(
+        final String prefix,
+        final String element,
+        final String namespaceUri )
+        throws GraphmlIoException
+    {
+        if ( this.transferLength != 0 ) {
+            this.drainTransfer();
+        }
+        if ( ! this.compact ) {
+            return this.start( prefix, element, namespaceUri );
+        }
+        try {
+            this.xmlWriter.writeEmptyElement( prefix, element, namespaceUri );
+        } catch ( XMLStreamException e ) {
+            throw new GraphmlIoException( e );
+        }
+        return this;
+    }
+    
+    final GraphmlWriter endLeaf()
+        throws GraphmlIoException
+    {
+        if ( ! this.compact ) {
+            this.end();
+        }
+        return this;
+    }
+    
     final GraphmlWriter characters( final String characters )
         throws GraphmlIoException
     {
+        if ( this.transferLength != 0 ) {
+            this.drainTransfer();
+        }
         try {
-            this.xmlWriter.writeCharacters( characters );
+            // closes a pending start tag before writing around the StAX writer
+            this.xmlWriter.writeCharacters( "" );
+            if ( ! PASS_THROUGH || ! this.escaper.writeText( this.bufferedOut, characters ) ) {
+                this.xmlWriter.writeCharacters( characters );
+            }
             return this;
         } catch ( XMLStreamException e ) {
             throw new GraphmlIoException( e );
+        } catch ( IOException e ) {
+            throw new GraphmlIoException( e );
         }
     }
     
     final GraphmlWriter attrib( final String name, final Object value )
         throws GraphmlIoException
     {
+        String string;
+        if ( value instanceof Boolean ) {
+            string = (Boolean)value ? "true" : "false";
+        } else if ( value != null ) {
+            string = value.toString();
+        } else {
+            return this;
+        }
+        
+        // the StAX writer writes attributes as they come, so one written
+        // around it still lands inside the open start tag
         try {
-            if ( value instanceof Boolean ) {
-                if ( (Boolean)value ) {
-                    this.xmlWriter.writeAttribute( name, "true" );
-                } else {
-                    this.xmlWriter.writeAttribute( name, "false" );
-                }
-            } else if ( value != null ) {
-                this.xmlWriter.writeAttribute( name, value.toString() );
+            if ( ! PASS_THROUGH || ! this.escaper.writeAttribute( this.bufferedOut, name, string ) ) {
+                this.xmlWriter.writeAttribute( name, string );
             }
         } catch ( XMLStreamException e ) {
             throw new GraphmlIoException( e );
+        } catch ( IOException e ) {
+            throw new GraphmlIoException( e );
         }
         return this;
     }
@@ -321,6 +1239,9 @@ public final class GraphmlWriter
     final GraphmlWriter end()
         throws GraphmlIoException
     {
+        if ( this.transferLength != 0 ) {
+            this.drainTransfer();
+        }
         try {
             this.xmlWriter.writeEndElement();
         } catch ( XMLStreamException e ) {
@@ -329,32 +1250,168 @@ public final class GraphmlWriter
         return this;
     }
     
+    /*
+     * Bytes of the document written so far.  Once any open start tag is
+     * closed - and anything the StAX writer holds is flushed to the buffer
+     * - the buffer's count is exact.  Raw writes and transfers always come
+     * after a call to this.
+     */
+    private final long position() throws GraphmlIoException {
+        try {
+            this.xmlWriter.writeCharacters( "" );
+            if ( ! PASS_THROUGH ) {
+                this.xmlWriter.flush();
+            }
+        } catch ( XMLStreamException e ) {
+            throw new GraphmlIoException( e );
+        }
+        return this.bufferedOut.position() + this.transferLength;
+    }
+    
+    private final void raw( final String ascii ) throws GraphmlIoException {
+        if ( this.transferLength != 0 ) {
+            this.drainTransfer();
+        }
+        try {
+            int length = ascii.length();
+            for ( int i = 0; i < length; ++i ) {
+                this.bufferedOut.write( ascii.charAt( i ) );
+            }
+        } catch ( IOException e ) {
+            throw new GraphmlIoException( e );
+        }
+    }
+    
+    /*
+     * Transfers are queued, so that consecutive regions of the previous
+     * output go out in one transferTo call.
+     */
+    private final void transfer( final long source, final long length )
+        throws GraphmlIoException
+    {
+        if ( this.transferLength != 0 &&
+            this.transferSource + this.transferLength == source )
+        {
+            this.transferLength += length;
+        } else {
+            if ( this.transferLength != 0 ) {
+                this.drainTransfer();
+            }
+            this.transferSource = source;
+            this.transferLength = length;
+        }
+    }
+    
+    private final void drainTransfer() throws GraphmlIoException {
+        long length = this.transferLength;
+        this.transferLength = 0;
+        try {
+            this.bufferedOut.flush();
+            
+            long startNanos = System.nanoTime();
+            FileChannel source = this.fragmentCache.previousChannel();
+            FileChannel target = ( (FileOutputStream)this.out ).getChannel();
+            long position = this.transferSource;
+            long remaining = length;
+            while ( remaining > 0 ) {
+                long transferred = source.transferTo( position, remaining, target );
+                if ( transferred <= 0 ) {
+                    throw new GraphmlIoException( "previous output is shorter than its fragment index" );
+                }
+                position += transferred;
+                remaining -= transferred;
+            }
+            this.statistics.bytesFlushed( length, System.nanoTime() - startNanos );
+            this.bufferedOut.skipped( length );
+        } catch ( IOException e ) {
+            throw new GraphmlIoException( e );
+        }
+    }
+    
+    private final int nextNodeNumber() {
+        if ( this.curNodeId > MAX_NODE_NUMBER ) {
+            throw new IllegalStateException( "too many nodes" );
+        }
+        return this.curNodeId++;
+    }
+    
     private final String nextGraphId() {
-        return "G" + ( this.curGraphId++ );
+        int graphNumber = this.curGraphId++;
+        return this.compact ? Base62.toString( 'G', graphNumber ) : "G" + graphNumber;
+    }
+    
+    private final String nodeId( final int nodeNumber ) {
+        return nodeId( this.compact, nodeNumber );
     }
     
-    private final String nextNodeId() {
-        return "N" + ( this.curNodeId++ );
+    static final String nodeId( final boolean compact, final int nodeNumber ) {
+        return compact ? Base62.toString( 'N', nodeNumber ) : "N" + nodeNumber;
+    }
+    
+    // -1 if id is not one this writer would assign
+    public static final int nodeNumber( final boolean compact, final String id ) {
+        return compact ? Base62.parse( 'N', id ) : ReferenceChecker.nodeNumber( id );
     }
     
     @Override
     public final void flush() throws IOException {
+        if ( this.tracing != null ) {
+            this.tracing.beginFlush();
+        }
         try {
             this.xmlWriter.flush();
+            this.bufferedOut.flush();
         } catch ( XMLStreamException e ) {
             throw new IOException( e );
+        } finally {
+            if ( this.tracing != null ) {
+                this.tracing.endFlush();
+            }
         }
     }
     
     @Override
     public void close() throws IOException {
-        if ( this.close ) {
+        if ( this.tracing != null ) {
+            this.tracing.beginClose();
+        }
+        try {
+            if ( this.transferLength != 0 ) {
+                this.drainTransfer();
+            }
+            this.xmlWriter.close();
+            this.bufferedOut.flush();
+            if ( this.fragmentCache != null ) {
+                this.fragmentCache.finish( this.compact, this.bufferedOut.position() );
+            }
+        } catch ( XMLStreamException e ) {
+            throw new IOException( e );
+        } finally {
+            if ( this.tracing != null ) {
+                this.tracing.endClose();
+            }
+            if ( this.fragmentCache != null ) {
+                this.fragmentCache.release();
+            }
+            this.statistics.finished();
+            this.unregisterMBean();
+            this.edges.clear();
+            this.hyperedges.clear();
+            if ( this.close ) {
+                this.out.close();
+            }
+        }
+    }
+    
+    private final void unregisterMBean() {
+        if ( this.mbeanName != null ) {
             try {
-                this.xmlWriter.close();
-            } catch ( XMLStreamException e ) {
-                throw new IOException( e );
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(
+                    this.mbeanName );
+            } catch ( JMException e ) {
+                // already gone - nothing left to report on
             } finally {
-                this.out.close();
+                this.mbeanName = null;
             }
         }
     }
@@ -363,25 +1420,21 @@ public final class GraphmlWriter
     public static abstract class Edge {
         public abstract String sourceId();
         
+        public abstract String sourcePort();
+        
         public abstract String targetId();
         
+        public abstract String targetPort();
+        
         public abstract Boolean directed();
     }
     
-    static final class ResolvedEdge extends Edge {
-        private final String sourceId;
-        private final String targetId;
-        private final Boolean directed;
-        
-        ResolvedEdge(
-            final String sourceId,
-            final String targetId,
-            final Boolean directed )
-        {
-            this.sourceId = sourceId;
-            this.targetId = targetId;
-            this.directed = directed;
-        }
+    static final class PackedEdge extends Edge {
+        String sourceId;
+        String sourcePort;
+        String targetId;
+        String targetPort;
+        Boolean directed;
         
         @Override
         public final String sourceId() {
@@ -389,39 +1442,18 @@ public final class GraphmlWriter
         }
         
         @Override
-        public final String targetId() {
-            return this.targetId;
-        }
-        
-        @Override
-        public final Boolean directed() {
-            return this.directed;
-        }
-    }
-    
-    final class UnresolvedEdge extends Edge {
-        private final Object source;
-        private final Object target;
-        private final Boolean directed;
-        
-        UnresolvedEdge(
-            final Object source,
-            final Object target,
-            final Boolean directed )
-        {
-            this.source = source;
-            this.target = target;
-            this.directed = directed;
+        public final String sourcePort() {
+            return this.sourcePort;
         }
         
         @Override
-        public final String sourceId() {
-            return GraphmlWriter.this.nodeIds.get( this.source );
+        public final String targetId() {
+            return this.targetId;
         }
         
         @Override
-        public final String targetId() {
-            return GraphmlWriter.this.nodeIds.get( this.target );
+        public final String targetPort() {
+            return this.targetPort;
         }
         
         @Override
@@ -0,0 +1,56 @@
+package net.dougqh.graphml;
+
+/*
+ * Distinct count estimate in a fixed 16KB - about 1% standard error -
+ * for counts too large to keep a set of.  Small counts fall back to
+ * linear counting, which is near exact.
+ */
+final class HyperLogLog {
+    private static final int PRECISION = 14;
+    private static final int NUM_REGISTERS = 1 << PRECISION;
+    private static final double ALPHA = 0.7213 / ( 1 + 1.079 / NUM_REGISTERS );
+    
+    private final byte[] registers = new byte[ NUM_REGISTERS ];
+    
+    final void add( final String value ) {
+        this.add( GraphmlFragmentKeys.hash( GraphmlFragmentKeys.SEED, value ) );
+    }
+    
+    final void add( final long hash ) {
+        long h = mix( hash );
+        int register = (int)( h >>> ( 64 - PRECISION ) );
+        // the marker bit caps the rank when the remaining bits are all 0
+        int rank = Long.numberOfLeadingZeros( ( h << PRECISION ) | ( 1L << ( PRECISION - 1 ) ) ) + 1;
+        if ( rank > this.registers[ register ] ) {
+            this.registers[ register ] = (byte)rank;
+        }
+    }
+    
+    final long estimate() {
+        double sum = 0;
+        int numZeros = 0;
+        for ( byte rank : this.registers ) {
+            sum += 1.0 / ( 1L << rank );
+            if ( rank == 0 ) {
+                ++numZeros;
+            }
+        }
+        
+        double estimate = ALPHA * NUM_REGISTERS * NUM_REGISTERS / sum;
+        if ( estimate <= 2.5 * NUM_REGISTERS && numZeros != 0 ) {
+            estimate = NUM_REGISTERS * Math.log( (double)NUM_REGISTERS / numZeros );
+        }
+        return Math.round( estimate );
+    }
+    
+    // FNV and friends are weak in the high bits - MurmurHash3's finalizer
+    private static final long mix( final long hash ) {
+        long h = hash;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,80 @@
+package net.dougqh.graphml;
+
+import java.util.Arrays;
+
+/*
+ * Buffers hyperedges as packed int arrays.  The endpoints of every
+ * hyperedge sit back to back in endpoints / ports, and offsets marks where
+ * each hyperedge starts, so a hyperedge of k nodes costs 8 bytes per node
+ * rather than the k^2 / 2 edges needed to model it pairwise.
+ */
+final class HyperedgeStore {
+    static final int NO_PORT = -1;
+    
+    private int[] endpoints = new int[ 32 ];
+    private int[] ports = new int[ 32 ];
+    private int numEndpoints = 0;
+    
+    private int[] offsets = new int[ 9 ];
+    private int size = 0;
+    
+    private boolean open = false;
+    
+    final void start() {
+        if ( this.open ) {
+            throw new IllegalStateException( "hyperedge already started" );
+        }
+        this.open = true;
+    }
+    
+    final void add( final int endpoint, final int port ) {
+        if ( ! this.open ) {
+            throw new IllegalStateException( "no hyperedge started" );
+        }
+        if ( this.numEndpoints == this.endpoints.length ) {
+            this.endpoints = Arrays.copyOf( this.endpoints, this.numEndpoints * 2 );
+            this.ports = Arrays.copyOf( this.ports, this.numEndpoints * 2 );
+        }
+        this.endpoints[ this.numEndpoints ] = endpoint;
+        this.ports[ this.numEndpoints ] = port;
+        ++this.numEndpoints;
+    }
+    
+    final void end() {
+        if ( ! this.open ) {
+            throw new IllegalStateException( "no hyperedge started" );
+        }
+        this.open = false;
+        
+        if ( this.size + 1 == this.offsets.length ) {
+            this.offsets = Arrays.copyOf( this.offsets, this.offsets.length * 2 );
+        }
+        this.offsets[ ++this.size ] = this.numEndpoints;
+    }
+    
+    final int size() {
+        return this.size;
+    }
+    
+    final int from( final int hyperedge ) {
+        return this.offsets[ hyperedge ];
+    }
+    
+    final int to( final int hyperedge ) {
+        return this.offsets[ hyperedge + 1 ];
+    }
+    
+    final int endpoint( final int index ) {
+        return this.endpoints[ index ];
+    }
+    
+    final int port( final int index ) {
+        return this.ports[ index ];
+    }
+    
+    final void clear() {
+        this.numEndpoints = 0;
+        this.size = 0;
+        this.open = false;
+    }
+}
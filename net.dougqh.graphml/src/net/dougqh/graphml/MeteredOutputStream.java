@@ -0,0 +1,56 @@
+package net.dougqh.graphml;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/*
+ * Sits underneath the writer's buffer, so it is only called once per
+ * buffer-full and timing each call is cheap.
+ */
+final class MeteredOutputStream extends OutputStream {
+    private OutputStream out;
+    private final GraphmlStatistics statistics;
+    
+    MeteredOutputStream(
+        final OutputStream out,
+        final GraphmlStatistics statistics )
+    {
+        this.out = out;
+        this.statistics = statistics;
+    }
+    
+    final void reset( final OutputStream out ) {
+        this.out = out;
+    }
+    
+    @Override
+    public final void write( final int b ) throws IOException {
+        long startNanos = System.nanoTime();
+        this.out.write( b );
+        this.statistics.bytesFlushed( 1, System.nanoTime() - startNanos );
+    }
+    
+    @Override
+    public final void write(
+        final byte[] bytes,
+        final int offset,
+        final int length )
+        throws IOException
+    {
+        long startNanos = System.nanoTime();
+        this.out.write( bytes, offset, length );
+        this.statistics.bytesFlushed( length, System.nanoTime() - startNanos );
+    }
+    
+    @Override
+    public final void flush() throws IOException {
+        long startNanos = System.nanoTime();
+        this.out.flush();
+        this.statistics.ioBlocked( System.nanoTime() - startNanos );
+    }
+    
+    @Override
+    public final void close() throws IOException {
+        this.out.close();
+    }
+}
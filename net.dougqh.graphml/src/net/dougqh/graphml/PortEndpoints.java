@@ -0,0 +1,99 @@
+package net.dougqh.graphml;
+
+import java.util.Arrays;
+
+/*
+ * Interns (endpoint, port) pairs so that an edge between ports still packs
+ * into a single long - the edge record holds the index of the pair instead
+ * of the endpoint itself.
+ *
+ * Pairs are deduplicated through an open addressing table keyed on the pair
+ * packed into a long, so the storage grows with the number of distinct
+ * ports connected, not with the number of edges.
+ */
+final class PortEndpoints {
+    private static final long EMPTY = -1L;
+    
+    private int[] endpoints = new int[ 16 ];
+    private int[] ports = new int[ 16 ];
+    private int size = 0;
+    
+    private long[] keys = newKeys( 32 );
+    private int[] indexes = new int[ 32 ];
+    
+    final int intern( final int endpoint, final int port ) {
+        long key = ( (long)endpoint << 32 ) | ( port & 0xFFFFFFFFL );
+        
+        int mask = this.keys.length - 1;
+        int slot = mix( key ) & mask;
+        while ( this.keys[ slot ] != EMPTY ) {
+            if ( this.keys[ slot ] == key ) {
+                return this.indexes[ slot ];
+            }
+            slot = ( slot + 1 ) & mask;
+        }
+        
+        int index = this.size++;
+        if ( index == this.endpoints.length ) {
+            this.endpoints = Arrays.copyOf( this.endpoints, index * 2 );
+            this.ports = Arrays.copyOf( this.ports, index * 2 );
+        }
+        this.endpoints[ index ] = endpoint;
+        this.ports[ index ] = port;
+        
+        this.keys[ slot ] = key;
+        this.indexes[ slot ] = index;
+        if ( this.size * 2 > this.keys.length ) {
+            this.rehash();
+        }
+        return index;
+    }
+    
+    final int endpoint( final int index ) {
+        return this.endpoints[ index ];
+    }
+    
+    final int port( final int index ) {
+        return this.ports[ index ];
+    }
+    
+    final int size() {
+        return this.size;
+    }
+    
+    final void clear() {
+        this.size = 0;
+        Arrays.fill( this.keys, EMPTY );
+    }
+    
+    private final void rehash() {
+        long[] oldKeys = this.keys;
+        int[] oldIndexes = this.indexes;
+        
+        this.keys = newKeys( oldKeys.length * 2 );
+        this.indexes = new int[ oldKeys.length * 2 ];
+        
+        int mask = this.keys.length - 1;
+        for ( int i = 0; i < oldKeys.length; ++i ) {
+            if ( oldKeys[ i ] != EMPTY ) {
+                int slot = mix( oldKeys[ i ] ) & mask;
+                while ( this.keys[ slot ] != EMPTY ) {
+                    slot = ( slot + 1 ) & mask;
+                }
+                this.keys[ slot ] = oldKeys[ i ];
+                this.indexes[ slot ] = oldIndexes[ i ];
+            }
+        }
+    }
+    
+    private static final long[] newKeys( final int capacity ) {
+        long[] keys = new long[ capacity ];
+        Arrays.fill( keys, EMPTY );
+        return keys;
+    }
+    
+    private static final int mix( final long key ) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int)( h ^ ( h >>> 32 ) );
+    }
+}
@@ -0,0 +1,48 @@
+package net.dougqh.graphml;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/*
+ * The writer's output buffer, which also tracks how many bytes of the
+ * document have been written so far - fragment caching needs offsets into
+ * the output without flushing for each one.
+ */
+final class PositionedOutputStream extends BufferedOutputStream {
+    private long position = 0;
+    
+    PositionedOutputStream( final OutputStream out, final int size ) {
+        super( out, size );
+    }
+    
+    final long position() {
+        return this.position;
+    }
+    
+    // bytes written around the buffer - e.g. by FileChannel.transferTo
+    final void skipped( final long numBytes ) {
+        this.position += numBytes;
+    }
+    
+    final void reset() {
+        this.position = 0;
+    }
+    
+    @Override
+    public final synchronized void write( final int b ) throws IOException {
+        super.write( b );
+        ++this.position;
+    }
+    
+    @Override
+    public final synchronized void write(
+        final byte[] bytes,
+        final int offset,
+        final int length )
+        throws IOException
+    {
+        super.write( bytes, offset, length );
+        this.position += length;
+    }
+}
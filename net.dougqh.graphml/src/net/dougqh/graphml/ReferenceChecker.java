@@ -0,0 +1,93 @@
+package net.dougqh.graphml;
+
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+
+/*
+ * Node ids handed out by the writer are "N" followed by a sequence number,
+ * so the nodes written so far fit in one bit each.  Ids from outside the
+ * writer are trusted unless external node checking has been enabled, in
+ * which case they are checked against a Bloom filter - a false positive
+ * lets a dangling edge through, but never rejects a declared node.
+ */
+final class ReferenceChecker {
+    private BitSet writtenNodes = new BitSet();
+    private BloomFilter externalNodes = null;
+    private Set< String > externalStubs = null;
+    
+    final void nodeWritten( final int nodeNumber ) {
+        this.writtenNodes.set( nodeNumber );
+    }
+    
+    final void ensureCapacity( final int numNodes ) {
+        if ( this.writtenNodes.isEmpty() && this.writtenNodes.size() < numNodes ) {
+            this.writtenNodes = new BitSet( numNodes );
+        }
+    }
+    
+    final void expectExternalNodes( final int expectedCount ) {
+        this.externalNodes = new BloomFilter( expectedCount );
+    }
+    
+    final void externalNode( final String id ) {
+        if ( this.externalNodes == null ) {
+            throw new IllegalStateException( "external node checking was not enabled" );
+        }
+        this.externalNodes.add( id );
+    }
+    
+    final void stubWritten( final String id ) {
+        if ( this.externalStubs == null ) {
+            this.externalStubs = new HashSet< String >();
+        }
+        this.externalStubs.add( id );
+    }
+    
+    final boolean isStub( final String id ) {
+        return this.externalStubs != null && this.externalStubs.contains( id );
+    }
+    
+    final boolean isWritten( final int nodeNumber ) {
+        return this.writtenNodes.get( nodeNumber );
+    }
+    
+    // for ids that did not come from the writer
+    final boolean isKnown( final String id ) {
+        if ( id == null ) {
+            return false;
+        } else if ( this.externalNodes == null ) {
+            return true;
+        } else if ( this.isStub( id ) ) {
+            return true;
+        } else {
+            return this.externalNodes.mightContain( id );
+        }
+    }
+    
+    final void clear() {
+        this.writtenNodes.clear();
+        this.externalNodes = null;
+        this.externalStubs = null;
+    }
+    
+    static final int nodeNumber( final String id ) {
+        int length = id.length();
+        if ( length < 2 || length > 10 || id.charAt( 0 ) != 'N' ) {
+            return -1;
+        }
+        if ( length > 2 && id.charAt( 1 ) == '0' ) {
+            return -1;
+        }
+        
+        int nodeNumber = 0;
+        for ( int i = 1; i < length; ++i ) {
+            char ch = id.charAt( i );
+            if ( ch < '0' || ch > '9' ) {
+                return -1;
+            }
+            nodeNumber = nodeNumber * 10 + ( ch - '0' );
+        }
+        return nodeNumber;
+    }
+}
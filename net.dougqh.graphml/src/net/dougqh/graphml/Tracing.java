@@ -0,0 +1,126 @@
+package net.dougqh.graphml;
+
+import java.util.Arrays;
+
+/*
+ * Tracing state is only allocated once a tracer is installed, so an
+ * untraced writer pays nothing more than a null check per call.
+ */
+final class Tracing {
+    private final GraphmlTracer tracer;
+    private final GraphmlStatistics statistics;
+    private long nodeThresholdNanos;
+    
+    private String[] nodeIds = new String[ 8 ];
+    private long[] nodeStartNanos = new long[ 8 ];
+    private int nodeDepth = 0;
+    
+    private long[] graphStartNodes = new long[ 8 ];
+    private int graphDepth = 0;
+    
+    private long startBytes = 0;
+    
+    Tracing(
+        final GraphmlTracer tracer,
+        final GraphmlStatistics statistics )
+    {
+        this.tracer = tracer;
+        this.statistics = statistics;
+        this.nodeThresholdNanos = tracer.nodeThresholdNanos();
+    }
+    
+    final void beginDocument() {
+        this.nodeThresholdNanos = this.tracer.nodeThresholdNanos();
+        this.tracer.begin( GraphmlPhase.DOCUMENT_START, null );
+    }
+    
+    final void endDocument() {
+        this.tracer.end( GraphmlPhase.DOCUMENT_START, 0 );
+    }
+    
+    final void startGraph( final String graphId ) {
+        if ( this.graphDepth == this.graphStartNodes.length ) {
+            this.graphStartNodes = Arrays.copyOf(
+                this.graphStartNodes,
+                this.graphDepth * 2 );
+        }
+        this.graphStartNodes[ this.graphDepth++ ] =
+            this.statistics.getNodesWritten();
+        
+        this.tracer.begin( GraphmlPhase.GRAPH, graphId );
+    }
+    
+    final void endGraph() {
+        if ( this.graphDepth == 0 ) {
+            return;
+        }
+        long startNodes = this.graphStartNodes[ --this.graphDepth ];
+        this.tracer.end(
+            GraphmlPhase.GRAPH,
+            this.statistics.getNodesWritten() - startNodes );
+    }
+    
+    final void startNode( final String nodeId ) {
+        if ( this.nodeThresholdNanos == Long.MAX_VALUE ) {
+            return;
+        }
+        if ( this.nodeDepth == this.nodeIds.length ) {
+            this.nodeIds = Arrays.copyOf( this.nodeIds, this.nodeDepth * 2 );
+            this.nodeStartNanos = Arrays.copyOf(
+                this.nodeStartNanos,
+                this.nodeDepth * 2 );
+        }
+        this.nodeIds[ this.nodeDepth ] = nodeId;
+        this.nodeStartNanos[ this.nodeDepth ] = System.nanoTime();
+        ++this.nodeDepth;
+    }
+    
+    final void endNode() {
+        if ( this.nodeDepth == 0 ) {
+            return;
+        }
+        --this.nodeDepth;
+        long nanos = System.nanoTime() - this.nodeStartNanos[ this.nodeDepth ];
+        String nodeId = this.nodeIds[ this.nodeDepth ];
+        this.nodeIds[ this.nodeDepth ] = null;
+        
+        if ( nanos >= this.nodeThresholdNanos ) {
+            this.tracer.slowNode( nodeId, nanos );
+        }
+    }
+    
+    final void beginEdgeBatch() {
+        this.tracer.begin( GraphmlPhase.EDGE_RESOLUTION, null );
+    }
+    
+    final void endEdgeBatch( final int numEdges ) {
+        this.tracer.end( GraphmlPhase.EDGE_RESOLUTION, numEdges );
+    }
+    
+    final void beginFlush() {
+        this.begin( GraphmlPhase.FLUSH );
+    }
+    
+    final void endFlush() {
+        this.end( GraphmlPhase.FLUSH );
+    }
+    
+    final void beginClose() {
+        this.begin( GraphmlPhase.CLOSE );
+    }
+    
+    final void endClose() {
+        this.end( GraphmlPhase.CLOSE );
+    }
+    
+    private final void begin( final GraphmlPhase phase ) {
+        this.startBytes = this.statistics.getBytesFlushed();
+        this.tracer.begin( phase, null );
+    }
+    
+    private final void end( final GraphmlPhase phase ) {
+        this.tracer.end(
+            phase,
+            this.statistics.getBytesFlushed() - this.startBytes );
+    }
+}
@@ -0,0 +1,10 @@
+package net.dougqh.graphml;
+
+public enum UnresolvedEdgePolicy {
+    // skip the edge, it is still counted in the report
+    DROP,
+    // abort the export at the first dangling edge
+    FAIL,
+    // write an empty node for every missing endpoint and keep the edge
+    STUB;
+}
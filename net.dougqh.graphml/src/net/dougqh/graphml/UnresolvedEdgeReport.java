@@ -0,0 +1,61 @@
+package net.dougqh.graphml;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public final class UnresolvedEdgeReport {
+    static final int DEFAULT_SAMPLE_SIZE = 32;
+    
+    private static final int MAX_DESCRIPTION_LENGTH = 80;
+    
+    private final int maxSampleSize;
+    private final List< String > sample;
+    private long count = 0;
+    
+    UnresolvedEdgeReport( final int maxSampleSize ) {
+        this.maxSampleSize = maxSampleSize;
+        this.sample = new ArrayList< String >( maxSampleSize );
+    }
+    
+    public final long getCount() {
+        return this.count;
+    }
+    
+    public final List< String > getSample() {
+        return Collections.unmodifiableList( this.sample );
+    }
+    
+    final void add( final String sourceId, final String targetId ) {
+        ++this.count;
+        if ( this.sample.size() < this.maxSampleSize ) {
+            this.sample.add( describe( sourceId ) + " -> " + describe( targetId ) );
+        }
+    }
+    
+    final void addHyperedge( final String missingId ) {
+        ++this.count;
+        if ( this.sample.size() < this.maxSampleSize ) {
+            this.sample.add( "hyperedge -> " + describe( missingId ) );
+        }
+    }
+    
+    final void clear() {
+        this.count = 0;
+        this.sample.clear();
+    }
+    
+    private static final String describe( final String id ) {
+        String description = String.valueOf( id );
+        if ( description.length() > MAX_DESCRIPTION_LENGTH ) {
+            return description.substring( 0, MAX_DESCRIPTION_LENGTH ) + "...";
+        } else {
+            return description;
+        }
+    }
+    
+    @Override
+    public final String toString() {
+        return this.count + " unresolved edge(s), e.g. " + this.sample;
+    }
+}
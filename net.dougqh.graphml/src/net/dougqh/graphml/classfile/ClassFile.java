@@ -0,0 +1,346 @@
+package net.dougqh.graphml.classfile;
+
+import java.io.IOException;
+import java.util.List;
+
+/*
+ * Just enough of a class file for diagrams - its name, supertypes and
+ * members - read straight from the bytes, so nothing is loaded or linked.
+ * The constant pool is only indexed up front; its strings are decoded
+ * when asked for, since most of them - code's references - are never
+ * needed.
+ */
+final class ClassFile {
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_PRIVATE = 0x0002;
+    static final int ACC_PROTECTED = 0x0004;
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_BRIDGE = 0x0040;
+    static final int ACC_INTERFACE = 0x0200;
+    static final int ACC_ABSTRACT = 0x0400;
+    static final int ACC_SYNTHETIC = 0x1000;
+    static final int ACC_ANNOTATION = 0x2000;
+    static final int ACC_ENUM = 0x4000;
+    
+    private static final int MAGIC = 0xCAFEBABE;
+    
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+    
+    private final byte[] bytes;
+    
+    // where each constant's info starts - just past its tag
+    private final int[] constants;
+    private final String[] strings;
+    
+    private final int access;
+    private final int thisClass;
+    private final int superClass;
+    private final int[] interfaces;
+    
+    // access, name and descriptor of each member - three ints apiece
+    private final int[] fields;
+    private final int[] methods;
+    
+    ClassFile( final byte[] bytes ) throws IOException {
+        this.bytes = bytes;
+        
+        try {
+            if ( this.u4( 0 ) != MAGIC ) {
+                throw new IOException( "not a class file" );
+            }
+            
+            int numConstants = this.u2( 8 );
+            this.constants = new int[ numConstants ];
+            this.strings = new String[ numConstants ];
+            
+            int pos = 10;
+            for ( int i = 1; i < numConstants; ++i ) {
+                int tag = bytes[ pos ];
+                this.constants[ i ] = pos + 1;
+                switch ( tag ) {
+                    case CONSTANT_UTF8:
+                    pos += 3 + this.u2( pos + 1 );
+                    break;
+                    
+                    case CONSTANT_CLASS:
+                    case CONSTANT_STRING:
+                    case CONSTANT_METHOD_TYPE:
+                    case CONSTANT_MODULE:
+                    case CONSTANT_PACKAGE:
+                    pos += 3;
+                    break;
+                    
+                    case CONSTANT_METHOD_HANDLE:
+                    pos += 4;
+                    break;
+                    
+                    case CONSTANT_INTEGER:
+                    case CONSTANT_FLOAT:
+                    case CONSTANT_FIELDREF:
+                    case CONSTANT_METHODREF:
+                    case CONSTANT_INTERFACE_METHODREF:
+                    case CONSTANT_NAME_AND_TYPE:
+                    case CONSTANT_DYNAMIC:
+                    case CONSTANT_INVOKE_DYNAMIC:
+                    pos += 5;
+                    break;
+                    
+                    // eight bytes - and two slots in the pool
+                    case CONSTANT_LONG:
+                    case CONSTANT_DOUBLE:
+                    pos += 9;
+                    ++i;
+                    break;
+                    
+                    default:
+                    throw new IOException( "unknown constant tag " + tag );
+                }
+            }
+            
+            this.access = this.u2( pos );
+            this.thisClass = this.u2( pos + 2 );
+            this.superClass = this.u2( pos + 4 );
+            int numInterfaces = this.u2( pos + 6 );
+            pos += 8;
+            
+            this.interfaces = new int[ numInterfaces ];
+            for ( int i = 0; i < numInterfaces; ++i ) {
+                this.interfaces[ i ] = this.u2( pos );
+                pos += 2;
+            }
+            
+            this.fields = new int[ this.u2( pos ) * 3 ];
+            pos = this.members( pos + 2, this.fields );
+            this.methods = new int[ this.u2( pos ) * 3 ];
+            this.members( pos + 2, this.methods );
+        } catch ( ArrayIndexOutOfBoundsException e ) {
+            throw new IOException( "truncated class file" );
+        }
+    }
+    
+    private final int members( final int start, final int[] members ) {
+        int pos = start;
+        for ( int i = 0; i < members.length; i += 3 ) {
+            members[ i ] = this.u2( pos );
+            members[ i + 1 ] = this.u2( pos + 2 );
+            members[ i + 2 ] = this.u2( pos + 4 );
+            
+            int numAttributes = this.u2( pos + 6 );
+            pos += 8;
+            for ( int j = 0; j < numAttributes; ++j ) {
+                pos += 6 + this.u4( pos + 2 );
+            }
+        }
+        return pos;
+    }
+    
+    final int access() {
+        return this.access;
+    }
+    
+    // binary names - java.util.Map$Entry
+    final String name() {
+        return this.className( this.thisClass );
+    }
+    
+    // null for java.lang.Object and module-info
+    final String superName() {
+        return ( this.superClass == 0 ) ? null : this.className( this.superClass );
+    }
+    
+    final int numInterfaces() {
+        return this.interfaces.length;
+    }
+    
+    final String interfaceName( final int index ) {
+        return this.className( this.interfaces[ index ] );
+    }
+    
+    final int numFields() {
+        return this.fields.length / 3;
+    }
+    
+    final int fieldAccess( final int index ) {
+        return this.fields[ index * 3 ];
+    }
+    
+    final String fieldName( final int index ) {
+        return this.utf8( this.fields[ index * 3 + 1 ] );
+    }
+    
+    final String fieldDescriptor( final int index ) {
+        return this.utf8( this.fields[ index * 3 + 2 ] );
+    }
+    
+    final int numMethods() {
+        return this.methods.length / 3;
+    }
+    
+    final int methodAccess( final int index ) {
+        return this.methods[ index * 3 ];
+    }
+    
+    final String methodName( final int index ) {
+        return this.utf8( this.methods[ index * 3 + 1 ] );
+    }
+    
+    final String methodDescriptor( final int index ) {
+        return this.utf8( this.methods[ index * 3 + 2 ] );
+    }
+    
+    /*
+     * Adds the internal names - java/util/Map$Entry - of the classes this
+     * one refers to: the classes in its constant pool, and those in the
+     * descriptors of its members and of the members and method types it
+     * uses.  Names can repeat.
+     */
+    final void addReferences( final List< String > names ) {
+        byte[] bytes = this.bytes;
+        for ( int i = 1; i < this.constants.length; ++i ) {
+            int pos = this.constants[ i ];
+            // the second slot of a long or double
+            if ( pos == 0 ) {
+                continue;
+            }
+            
+            switch ( bytes[ pos - 1 ] ) {
+                case CONSTANT_CLASS:
+                String name = this.utf8( this.u2( pos ) );
+                if ( name.charAt( 0 ) == '[' ) {
+                    addDescriptor( name, names );
+                } else {
+                    names.add( name );
+                }
+                break;
+                
+                case CONSTANT_NAME_AND_TYPE:
+                addDescriptor( this.utf8( this.u2( pos + 2 ) ), names );
+                break;
+                
+                case CONSTANT_METHOD_TYPE:
+                addDescriptor( this.utf8( this.u2( pos ) ), names );
+                break;
+            }
+        }
+        for ( int i = 2; i < this.fields.length; i += 3 ) {
+            addDescriptor( this.utf8( this.fields[ i ] ), names );
+        }
+        for ( int i = 2; i < this.methods.length; i += 3 ) {
+            addDescriptor( this.utf8( this.methods[ i ] ), names );
+        }
+    }
+    
+    // class names only ever follow an L, so everything else is skipped a char at a time
+    private static final void addDescriptor(
+        final String descriptor,
+        final List< String > names )
+    {
+        int length = descriptor.length();
+        for ( int pos = 0; pos < length; ++pos ) {
+            if ( descriptor.charAt( pos ) == 'L' ) {
+                int end = descriptor.indexOf( ';', pos );
+                names.add( descriptor.substring( pos + 1, end ) );
+                pos = end;
+            }
+        }
+    }
+    
+    /*
+     * Where the type starting at start in a descriptor ends - the
+     * descriptors of a method's parameters follow one another.
+     */
+    static final int typeEnd( final String descriptor, final int start ) {
+        int pos = start;
+        while ( descriptor.charAt( pos ) == '[' ) {
+            ++pos;
+        }
+        if ( descriptor.charAt( pos ) == 'L' ) {
+            pos = descriptor.indexOf( ';', pos );
+        }
+        return pos + 1;
+    }
+    
+    /*
+     * The class a type refers to - the element class of an array type - or
+     * null for primitives.
+     */
+    static final String className(
+        final String descriptor,
+        final int start,
+        final int end )
+    {
+        int pos = start;
+        while ( descriptor.charAt( pos ) == '[' ) {
+            ++pos;
+        }
+        if ( descriptor.charAt( pos ) != 'L' ) {
+            return null;
+        }
+        return descriptor.substring( pos + 1, end - 1 ).replace( '/', '.' );
+    }
+    
+    private final String className( final int index ) {
+        return this.utf8( this.u2( this.constants[ index ] ) ).replace( '/', '.' );
+    }
+    
+    /*
+     * Class files hold modified UTF-8 - nearly always plain ASCII, which
+     * is copied a byte to a char.
+     */
+    private final String utf8( final int index ) {
+        String string = this.strings[ index ];
+        if ( string != null ) {
+            return string;
+        }
+        
+        byte[] bytes = this.bytes;
+        int start = this.constants[ index ] + 2;
+        int end = start + this.u2( start - 2 );
+        
+        char[] chars = new char[ end - start ];
+        int length = 0;
+        for ( int pos = start; pos < end; ) {
+            int b = bytes[ pos ] & 0xFF;
+            if ( b < 0x80 ) {
+                chars[ length++ ] = (char)b;
+                pos += 1;
+            } else if ( b < 0xE0 ) {
+                chars[ length++ ] = (char)( ( b & 0x1F ) << 6 | bytes[ pos + 1 ] & 0x3F );
+                pos += 2;
+            } else {
+                chars[ length++ ] = (char)( ( b & 0x0F ) << 12 |
+                    ( bytes[ pos + 1 ] & 0x3F ) << 6 |
+                    bytes[ pos + 2 ] & 0x3F );
+                pos += 3;
+            }
+        }
+        
+        string = new String( chars, 0, length );
+        this.strings[ index ] = string;
+        return string;
+    }
+    
+    private final int u2( final int pos ) {
+        return ( this.bytes[ pos ] & 0xFF ) << 8 | this.bytes[ pos + 1 ] & 0xFF;
+    }
+    
+    private final int u4( final int pos ) {
+        return this.u2( pos ) << 16 | this.u2( pos + 2 );
+    }
+}
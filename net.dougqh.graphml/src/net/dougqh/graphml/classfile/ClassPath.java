@@ -0,0 +1,229 @@
+package net.dougqh.graphml.classfile;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/*
+ * The class files under directories and in jars - found up front, in a
+ * stable order, and read later by index, so that they can be read from
+ * several threads at once.  Jars stay open until the class path is
+ * closed.
+ *
+ * The class files of a package come one after another, with those of its
+ * root - the directory or jar they were found in - so that they can be
+ * grouped as they are read.
+ */
+final class ClassPath implements Closeable {
+    private static final String CLASS_SUFFIX = ".class";
+    
+    private final ArrayList< ZipFile > jars = new ArrayList< ZipFile >();
+    
+    // each class file's File - or its ZipEntry, with its jar alongside
+    private final ArrayList< Object > entries = new ArrayList< Object >();
+    private final ArrayList< ZipFile > entryJars = new ArrayList< ZipFile >();
+    private int[] entryRoots = new int[ 1024 ];
+    
+    private final ArrayList< File > roots = new ArrayList< File >();
+    
+    /*
+     * A directory is searched for class files, anything else is read as a
+     * jar.
+     */
+    final void add( final File file ) throws IOException {
+        this.roots.add( file );
+        if ( file.isDirectory() ) {
+            this.addDirectory( file );
+        } else {
+            this.addJar( file );
+        }
+    }
+    
+    final void addPath( final String classPath ) throws IOException {
+        for ( String path : classPath.split( File.pathSeparator ) ) {
+            if ( path.length() != 0 ) {
+                this.add( new File( path ) );
+            }
+        }
+    }
+    
+    private final void addDirectory( final File root ) throws IOException {
+        ArrayList< File > directories = new ArrayList< File >();
+        directories.add( root );
+        
+        while ( ! directories.isEmpty() ) {
+            File directory = directories.remove( directories.size() - 1 );
+            File[] files = directory.listFiles();
+            if ( files == null ) {
+                throw new IOException( "cannot list " + directory );
+            }
+            Arrays.sort( files );
+            
+            // subdirectories are searched in order, too - so pushed in reverse
+            for ( int i = files.length - 1; i >= 0; --i ) {
+                if ( files[ i ].isDirectory() ) {
+                    directories.add( files[ i ] );
+                }
+            }
+            for ( File file : files ) {
+                if ( isClass( file.getName() ) && file.isFile() ) {
+                    this.addEntry( file, null );
+                }
+            }
+        }
+    }
+    
+    private final void addJar( final File file ) throws IOException {
+        ZipFile jar = new ZipFile( file );
+        this.jars.add( jar );
+        
+        ArrayList< ZipEntry > classEntries = new ArrayList< ZipEntry >();
+        Enumeration< ? extends ZipEntry > zipEntries = jar.entries();
+        while ( zipEntries.hasMoreElements() ) {
+            ZipEntry entry = zipEntries.nextElement();
+            // versioned copies in multi-release jars would be the same
+            // classes again, so only the base versions are read
+            if ( ! entry.isDirectory() && isClass( entry.getName() ) &&
+                ! entry.getName().startsWith( "META-INF/" ) )
+            {
+                classEntries.add( entry );
+            }
+        }
+        
+        // a jar's entries can be in any order - and plain name order would
+        // put a/b/c/D between a/b/C and a/b/E
+        Collections.sort( classEntries, new Comparator< ZipEntry >() {
+            @Override
+            public final int compare( final ZipEntry lhs, final ZipEntry rhs ) {
+                String lhsName = lhs.getName();
+                String rhsName = rhs.getName();
+                int lhsSlash = lhsName.lastIndexOf( '/' );
+                int rhsSlash = rhsName.lastIndexOf( '/' );
+                
+                int cmp = lhsName.substring( 0, lhsSlash + 1 ).compareTo(
+                    rhsName.substring( 0, rhsSlash + 1 ) );
+                return ( cmp != 0 ) ? cmp : lhsName.compareTo( rhsName );
+            }
+        } );
+        for ( ZipEntry entry : classEntries ) {
+            this.addEntry( entry, jar );
+        }
+    }
+    
+    private final void addEntry( final Object entry, final ZipFile jar ) {
+        int index = this.entries.size();
+        if ( index == this.entryRoots.length ) {
+            this.entryRoots = Arrays.copyOf( this.entryRoots, index * 2 );
+        }
+        this.entryRoots[ index ] = this.roots.size() - 1;
+        
+        this.entries.add( entry );
+        this.entryJars.add( jar );
+    }
+    
+    private static final boolean isClass( final String name ) {
+        return name.endsWith( CLASS_SUFFIX ) &&
+            ! name.endsWith( "module-info.class" ) &&
+            ! name.endsWith( "package-info.class" );
+    }
+    
+    final int size() {
+        return this.entries.size();
+    }
+    
+    // the index of the directory or jar - in the order added - the class file is in
+    final int root( final int index ) {
+        return this.entryRoots[ index ];
+    }
+    
+    final File rootFile( final int root ) {
+        return this.roots.get( root );
+    }
+    
+    // safe to call from several threads at once
+    final ClassFile read( final int index ) throws IOException {
+        Object entry = this.entries.get( index );
+        InputStream in;
+        int size;
+        if ( entry instanceof File ) {
+            File file = (File)entry;
+            in = new FileInputStream( file );
+            size = (int)file.length();
+        } else {
+            ZipEntry zipEntry = (ZipEntry)entry;
+            in = this.entryJars.get( index ).getInputStream( zipEntry );
+            size = (int)zipEntry.getSize();
+        }
+        try {
+            return new ClassFile( readFully( in, size ) );
+        } catch ( IOException e ) {
+            throw new IOException( this.describe( index ) + ": " + e.getMessage(), e );
+        } finally {
+            in.close();
+        }
+    }
+    
+    final String describe( final int index ) {
+        Object entry = this.entries.get( index );
+        if ( entry instanceof File ) {
+            return entry.toString();
+        } else {
+            return this.entryJars.get( index ).getName() + "!/" + entry;
+        }
+    }
+    
+    // size is only a hint - zip entries do not always know theirs
+    private static final byte[] readFully( final InputStream in, final int size )
+        throws IOException
+    {
+        byte[] bytes = new byte[ ( size > 0 ) ? size : 4096 ];
+        int length = 0;
+        while ( true ) {
+            if ( length == bytes.length ) {
+                int next = in.read();
+                if ( next < 0 ) {
+                    return bytes;
+                }
+                bytes = Arrays.copyOf( bytes, bytes.length * 2 );
+                bytes[ length++ ] = (byte)next;
+            }
+            
+            int read = in.read( bytes, length, bytes.length - length );
+            if ( read < 0 ) {
+                return ( length == bytes.length ) ? bytes : Arrays.copyOf( bytes, length );
+            }
+            length += read;
+        }
+    }
+    
+    @Override
+    public final void close() throws IOException {
+        IOException failure = null;
+        for ( ZipFile jar : this.jars ) {
+            try {
+                jar.close();
+            } catch ( IOException e ) {
+                if ( failure == null ) {
+                    failure = e;
+                }
+            }
+        }
+        this.jars.clear();
+        this.entries.clear();
+        this.entryJars.clear();
+        this.roots.clear();
+        
+        if ( failure != null ) {
+            throw failure;
+        }
+    }
+}
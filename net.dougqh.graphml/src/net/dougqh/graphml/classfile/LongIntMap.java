@@ -0,0 +1,100 @@
+package net.dougqh.graphml.classfile;
+
+import java.util.Arrays;
+
+/*
+ * Counts keyed by a long - e.g. a pair of ints packed together - in an open
+ * addressing table, so that counting references does not box a key and a
+ * count for each one.
+ */
+final class LongIntMap {
+    private static final long EMPTY = Long.MIN_VALUE;
+    
+    private long[] keys = newKeys( 64 );
+    private int[] values = new int[ 64 ];
+    private int size = 0;
+    
+    final int get( final long key, final int defaultValue ) {
+        int slot = this.slot( key );
+        return ( this.keys[ slot ] == EMPTY ) ? defaultValue : this.values[ slot ];
+    }
+    
+    final void put( final long key, final int value ) {
+        int slot = this.slot( key );
+        if ( this.keys[ slot ] == EMPTY ) {
+            this.keys[ slot ] = key;
+            this.values[ slot ] = value;
+            if ( ++this.size * 2 > this.keys.length ) {
+                this.rehash();
+            }
+        } else {
+            this.values[ slot ] = value;
+        }
+    }
+    
+    final void add( final long key, final int delta ) {
+        int slot = this.slot( key );
+        if ( this.keys[ slot ] == EMPTY ) {
+            this.put( key, delta );
+        } else {
+            this.values[ slot ] += delta;
+        }
+    }
+    
+    final int size() {
+        return this.size;
+    }
+    
+    // the keys in ascending order
+    final long[] sortedKeys() {
+        long[] sortedKeys = new long[ this.size ];
+        int index = 0;
+        for ( long key : this.keys ) {
+            if ( key != EMPTY ) {
+                sortedKeys[ index++ ] = key;
+            }
+        }
+        Arrays.sort( sortedKeys );
+        return sortedKeys;
+    }
+    
+    private final int slot( final long key ) {
+        int mask = this.keys.length - 1;
+        int slot = mix( key ) & mask;
+        while ( this.keys[ slot ] != EMPTY && this.keys[ slot ] != key ) {
+            slot = ( slot + 1 ) & mask;
+        }
+        return slot;
+    }
+    
+    private final void rehash() {
+        long[] oldKeys = this.keys;
+        int[] oldValues = this.values;
+        
+        this.keys = newKeys( oldKeys.length * 2 );
+        this.values = new int[ oldKeys.length * 2 ];
+        
+        int mask = this.keys.length - 1;
+        for ( int i = 0; i < oldKeys.length; ++i ) {
+            if ( oldKeys[ i ] != EMPTY ) {
+                int slot = mix( oldKeys[ i ] ) & mask;
+                while ( this.keys[ slot ] != EMPTY ) {
+                    slot = ( slot + 1 ) & mask;
+                }
+                this.keys[ slot ] = oldKeys[ i ];
+                this.values[ slot ] = oldValues[ i ];
+            }
+        }
+    }
+    
+    private static final long[] newKeys( final int capacity ) {
+        long[] keys = new long[ capacity ];
+        Arrays.fill( keys, EMPTY );
+        return keys;
+    }
+    
+    private static final int mix( final long key ) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int)( h ^ ( h >>> 32 ) );
+    }
+}
@@ -0,0 +1,373 @@
+package net.dougqh.graphml.classfile;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.dougqh.graphml.yed.YedClassNode;
+import net.dougqh.graphml.yed.YedWriter;
+
+/*
+ * A UML class diagram of compiled classes - a class box for each class
+ * file under the directories and in the jars added, an arrow from each
+ * class to its superclass and interfaces, and a line from each class to
+ * the classes of its fields.  Only supertypes and field types that are
+ * among the classes added are connected.
+ *
+ * Class files are read straight from their bytes - nothing is loaded -
+ * in chunks on the executor, and each chunk's classes are written as
+ * soon as it and the chunks before it are done, so the output is the
+ * same however the work is split.  Where classes share a name, the first
+ * on the class path is used, as the JVM would.
+ */
+public final class YedClassDiagram implements Closeable {
+    private static final int CHUNK_SIZE = 256;
+    
+    private final ExecutorService executor;
+    private final boolean shutdown;
+    
+    private final ClassPath classPath = new ClassPath();
+    private boolean privateMembers = true;
+    
+    public YedClassDiagram() {
+        this(
+            Executors.newFixedThreadPool( Runtime.getRuntime().availableProcessors() ),
+            true );
+    }
+    
+    public YedClassDiagram( final ExecutorService executor ) {
+        this( executor, false );
+    }
+    
+    private YedClassDiagram(
+        final ExecutorService executor,
+        final boolean shutdown )
+    {
+        if ( executor == null ) throw new IllegalArgumentException( "executor" );
+        
+        this.executor = executor;
+        this.shutdown = shutdown;
+    }
+    
+    // a directory of class files or a jar
+    public final YedClassDiagram add( final File classPathEntry ) throws IOException {
+        if ( classPathEntry == null ) throw new IllegalArgumentException( "classPathEntry" );
+        
+        this.classPath.add( classPathEntry );
+        return this;
+    }
+    
+    // entries separated as in java.class.path
+    public final YedClassDiagram addClassPath( final String classPath ) throws IOException {
+        if ( classPath == null ) throw new IllegalArgumentException( "classPath" );
+        
+        this.classPath.addPath( classPath );
+        return this;
+    }
+    
+    public final YedClassDiagram hidePrivateMembers() {
+        this.privateMembers = false;
+        return this;
+    }
+    
+    // returns the number of classes written
+    public final int write( final YedWriter writer ) throws IOException {
+        final int numEntries = this.classPath.size();
+        
+        ArrayList< Future< ParsedClass[] > > futures =
+            new ArrayList< Future< ParsedClass[] > >();
+        for ( int start = 0; start < numEntries; start += CHUNK_SIZE ) {
+            final int from = start;
+            final int to = Math.min( start + CHUNK_SIZE, numEntries );
+            futures.add( this.executor.submit( new Callable< ParsedClass[] >() {
+                @Override
+                public final ParsedClass[] call() throws IOException {
+                    return YedClassDiagram.this.parse( from, to );
+                }
+            } ) );
+        }
+        
+        HashMap< String, YedClassNode > nodes = new HashMap< String, YedClassNode >( numEntries * 2 );
+        ArrayList< ParsedClass > classes = new ArrayList< ParsedClass >( numEntries );
+        try {
+            for ( Future< ParsedClass[] > future : futures ) {
+                for ( ParsedClass parsedClass : await( future ) ) {
+                    if ( parsedClass != null && ! nodes.containsKey( parsedClass.name ) ) {
+                        nodes.put( parsedClass.name, parsedClass.node );
+                        classes.add( parsedClass );
+                        writer.add( parsedClass.node );
+                    }
+                }
+            }
+        } finally {
+            for ( Future< ParsedClass[] > future : futures ) {
+                future.cancel( true );
+            }
+        }
+        
+        for ( ParsedClass parsedClass : classes ) {
+            YedClassNode superNode = ( parsedClass.superName == null ) ? null : nodes.get( parsedClass.superName );
+            if ( superNode != null ) {
+                writer.connectWithArrow( parsedClass.node, superNode );
+            }
+            for ( String interfaceName : parsedClass.interfaceNames ) {
+                YedClassNode interfaceNode = nodes.get( interfaceName );
+                if ( interfaceNode != null ) {
+                    writer.connectWithArrow( parsedClass.node, interfaceNode );
+                }
+            }
+            for ( String fieldType : parsedClass.fieldTypes ) {
+                YedClassNode fieldNode = nodes.get( fieldType );
+                if ( fieldNode != null ) {
+                    writer.connect( parsedClass.node, fieldNode );
+                }
+            }
+        }
+        return classes.size();
+    }
+    
+    private static final ParsedClass[] await( final Future< ParsedClass[] > future )
+        throws IOException
+    {
+        try {
+            return future.get();
+        } catch ( ExecutionException e ) {
+            Throwable cause = e.getCause();
+            if ( cause instanceof IOException ) {
+                throw (IOException)cause;
+            } else if ( cause instanceof RuntimeException ) {
+                throw (RuntimeException)cause;
+            } else if ( cause instanceof Error ) {
+                throw (Error)cause;
+            } else {
+                throw new IllegalStateException( cause );
+            }
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+    
+    // synthetic classes - e.g. switch maps - are left as nulls
+    final ParsedClass[] parse( final int from, final int to ) throws IOException {
+        ParsedClass[] parsedClasses = new ParsedClass[ to - from ];
+        for ( int i = from; i < to; ++i ) {
+            ClassFile classFile = this.classPath.read( i );
+            if ( ( classFile.access() & ClassFile.ACC_SYNTHETIC ) == 0 ) {
+                parsedClasses[ i - from ] = this.parse( classFile );
+            }
+        }
+        return parsedClasses;
+    }
+    
+    private final ParsedClass parse( final ClassFile classFile ) {
+        String name = classFile.name();
+        YedClassNode node = new YedClassNode( name, name );
+        node.setStereotype( stereotype( classFile.access() ) );
+        
+        ArrayList< String > fieldTypes = new ArrayList< String >();
+        for ( int i = 0; i < classFile.numFields(); ++i ) {
+            int access = classFile.fieldAccess( i );
+            if ( ( access & ClassFile.ACC_SYNTHETIC ) != 0 ) {
+                continue;
+            }
+            
+            // associations through hidden fields are still drawn
+            String descriptor = classFile.fieldDescriptor( i );
+            String fieldType = ClassFile.className( descriptor, 0, descriptor.length() );
+            if ( fieldType != null && ! fieldType.equals( name ) && ! fieldTypes.contains( fieldType ) ) {
+                fieldTypes.add( fieldType );
+            }
+            
+            if ( this.shows( access ) ) {
+                StringBuilder builder = member( access );
+                builder.append( classFile.fieldName( i ) ).append( " : " );
+                appendType( builder, descriptor, 0, descriptor.length() );
+                node.addAttribute( builder.toString() );
+            }
+        }
+        
+        for ( int i = 0; i < classFile.numMethods(); ++i ) {
+            int access = classFile.methodAccess( i );
+            String methodName = classFile.methodName( i );
+            if ( ! this.shows( access ) || ( access & ClassFile.ACC_BRIDGE ) != 0 ||
+                methodName.equals( "<clinit>" ) )
+            {
+                continue;
+            }
+            
+            StringBuilder builder = member( access );
+            boolean constructor = methodName.equals( "<init>" );
+            builder.append( constructor ? simpleName( name ) : methodName ).append( '(' );
+            
+            String descriptor = classFile.methodDescriptor( i );
+            int pos = 1;
+            while ( descriptor.charAt( pos ) != ')' ) {
+                int end = ClassFile.typeEnd( descriptor, pos );
+                if ( pos != 1 ) {
+                    builder.append( ", " );
+                }
+                appendType( builder, descriptor, pos, end );
+                pos = end;
+            }
+            builder.append( ')' );
+            if ( ! constructor ) {
+                builder.append( " : " );
+                appendType( builder, descriptor, pos + 1, descriptor.length() );
+            }
+            node.addMethod( builder.toString() );
+        }
+        
+        String[] interfaceNames = new String[ classFile.numInterfaces() ];
+        for ( int i = 0; i < interfaceNames.length; ++i ) {
+            interfaceNames[ i ] = classFile.interfaceName( i );
+        }
+        return new ParsedClass(
+            name,
+            node,
+            classFile.superName(),
+            interfaceNames,
+            fieldTypes.toArray( new String[ fieldTypes.size() ] ) );
+    }
+    
+    private final boolean shows( final int access ) {
+        if ( ( access & ClassFile.ACC_SYNTHETIC ) != 0 ) {
+            return false;
+        }
+        return this.privateMembers || ( access & ClassFile.ACC_PRIVATE ) == 0;
+    }
+    
+    private static final String stereotype( final int access ) {
+        if ( ( access & ClassFile.ACC_ANNOTATION ) != 0 ) {
+            return "annotation";
+        } else if ( ( access & ClassFile.ACC_INTERFACE ) != 0 ) {
+            return "interface";
+        } else if ( ( access & ClassFile.ACC_ENUM ) != 0 ) {
+            return "enum";
+        } else if ( ( access & ClassFile.ACC_ABSTRACT ) != 0 ) {
+            return "abstract";
+        } else {
+            return "";
+        }
+    }
+    
+    // UML's visibility marks - + public, # protected, ~ package, - private
+    private static final StringBuilder member( final int access ) {
+        StringBuilder builder = new StringBuilder( 32 );
+        if ( ( access & ClassFile.ACC_PUBLIC ) != 0 ) {
+            builder.append( "+ " );
+        } else if ( ( access & ClassFile.ACC_PROTECTED ) != 0 ) {
+            builder.append( "# " );
+        } else if ( ( access & ClassFile.ACC_PRIVATE ) != 0 ) {
+            builder.append( "- " );
+        } else {
+            builder.append( "~ " );
+        }
+        if ( ( access & ClassFile.ACC_STATIC ) != 0 ) {
+            builder.append( "static " );
+        }
+        return builder;
+    }
+    
+    private static final void appendType(
+        final StringBuilder builder,
+        final String descriptor,
+        final int start,
+        final int end )
+    {
+        int pos = start;
+        while ( descriptor.charAt( pos ) == '[' ) {
+            ++pos;
+        }
+        switch ( descriptor.charAt( pos ) ) {
+            case 'B':
+            builder.append( "byte" );
+            break;
+            
+            case 'C':
+            builder.append( "char" );
+            break;
+            
+            case 'D':
+            builder.append( "double" );
+            break;
+            
+            case 'F':
+            builder.append( "float" );
+            break;
+            
+            case 'I':
+            builder.append( "int" );
+            break;
+            
+            case 'J':
+            builder.append( "long" );
+            break;
+            
+            case 'S':
+            builder.append( "short" );
+            break;
+            
+            case 'Z':
+            builder.append( "boolean" );
+            break;
+            
+            case 'V':
+            builder.append( "void" );
+            break;
+            
+            default:
+            builder.append( simpleName( ClassFile.className( descriptor, start, end ) ) );
+            break;
+        }
+        for ( int i = start; i < pos; ++i ) {
+            builder.append( "[]" );
+        }
+    }
+    
+    // java.util.Map$Entry is Map.Entry
+    private static final String simpleName( final String className ) {
+        return className.substring( className.lastIndexOf( '.' ) + 1 ).replace( '$', '.' );
+    }
+    
+    @Override
+    public final void close() throws IOException {
+        try {
+            this.classPath.close();
+        } finally {
+            if ( this.shutdown ) {
+                this.executor.shutdown();
+            }
+        }
+    }
+    
+    private static final class ParsedClass {
+        final String name;
+        final YedClassNode node;
+        final String superName;
+        final String[] interfaceNames;
+        final String[] fieldTypes;
+        
+        ParsedClass(
+            final String name,
+            final YedClassNode node,
+            final String superName,
+            final String[] interfaceNames,
+            final String[] fieldTypes )
+        {
+            this.name = name;
+            this.node = node;
+            this.superName = superName;
+            this.interfaceNames = interfaceNames;
+            this.fieldTypes = fieldTypes;
+        }
+    }
+}
@@ -0,0 +1,384 @@
+package net.dougqh.graphml.classfile;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.dougqh.graphml.yed.YedBasicNode;
+import net.dougqh.graphml.yed.YedGroup;
+import net.dougqh.graphml.yed.YedWriter;
+
+/*
+ * The dependencies between the packages - and between the jars - of
+ * compiled classes.  Each directory or jar added is a group, holding a
+ * group for each of its packages, which holds a node for each class.  An
+ * arrow goes from a package to each package it refers to, and from a jar
+ * to each jar it refers to, if at least minReferences of its classes do.
+ * A package found in more than one jar is referred to where it is first
+ * found - as the JVM would load it.
+ *
+ * References are read from the classes' constant pools, in chunks on the
+ * executor, and only the packages each class refers to are kept, as ints.
+ * The writer takes the chunks in order - writing classes and groups as
+ * it goes - and adds up the references to each package in a primitive
+ * map, so memory grows with the number of packages and their edges
+ * rather than with the size of the code.  Only a bounded number of
+ * chunks are read ahead of the writer.
+ */
+public final class YedDependencyGraph implements Closeable {
+    private static final int CHUNK_SIZE = 256;
+    private static final int MAX_PENDING_CHUNKS = 64;
+    
+    private final ExecutorService executor;
+    private final boolean shutdown;
+    
+    private final ClassPath classPath = new ClassPath();
+    private boolean classes = true;
+    private int minReferences = 1;
+    
+    public YedDependencyGraph() {
+        this(
+            Executors.newFixedThreadPool( Runtime.getRuntime().availableProcessors() ),
+            true );
+    }
+    
+    public YedDependencyGraph( final ExecutorService executor ) {
+        this( executor, false );
+    }
+    
+    private YedDependencyGraph(
+        final ExecutorService executor,
+        final boolean shutdown )
+    {
+        if ( executor == null ) throw new IllegalArgumentException( "executor" );
+        
+        this.executor = executor;
+        this.shutdown = shutdown;
+    }
+    
+    // a directory of class files or a jar
+    public final YedDependencyGraph add( final File classPathEntry ) throws IOException {
+        if ( classPathEntry == null ) throw new IllegalArgumentException( "classPathEntry" );
+        
+        this.classPath.add( classPathEntry );
+        return this;
+    }
+    
+    // entries separated as in java.class.path
+    public final YedDependencyGraph addClassPath( final String classPath ) throws IOException {
+        if ( classPath == null ) throw new IllegalArgumentException( "classPath" );
+        
+        this.classPath.addPath( classPath );
+        return this;
+    }
+    
+    // packages are left empty - for codebases too big to show each class
+    public final YedDependencyGraph hideClasses() {
+        this.classes = false;
+        return this;
+    }
+    
+    public final YedDependencyGraph minReferences( final int minReferences ) {
+        if ( minReferences < 1 ) throw new IllegalArgumentException( "minReferences" );
+        
+        this.minReferences = minReferences;
+        return this;
+    }
+    
+    // returns the number of classes read
+    public final int write( final YedWriter writer ) throws IOException {
+        final int numEntries = this.classPath.size();
+        
+        Packages packages = new Packages();
+        // the root each package is first found in - or -1
+        int[] packageRoots = new int[ 256 ];
+        Arrays.fill( packageRoots, -1 );
+        
+        // a group for each package of each root, keyed by root and package
+        LongIntMap units = new LongIntMap();
+        ArrayList< YedGroup > unitGroups = new ArrayList< YedGroup >();
+        int[] unitRoots = new int[ 256 ];
+        YedGroup[] rootGroups = new YedGroup[ 16 ];
+        
+        // the number of classes of each unit referring to each package
+        LongIntMap references = new LongIntMap();
+        
+        ArrayDeque< Future< Chunk > > pending = new ArrayDeque< Future< Chunk > >();
+        int nextStart = 0;
+        int openRoot = -1;
+        int openUnit = -1;
+        try {
+            while ( nextStart < numEntries || ! pending.isEmpty() ) {
+                while ( nextStart < numEntries && pending.size() < MAX_PENDING_CHUNKS ) {
+                    final int from = nextStart;
+                    final int to = Math.min( nextStart + CHUNK_SIZE, numEntries );
+                    pending.add( this.executor.submit( new Callable< Chunk >() {
+                        @Override
+                        public final Chunk call() throws IOException {
+                            return YedDependencyGraph.this.read( from, to );
+                        }
+                    } ) );
+                    nextStart = to;
+                }
+                
+                Chunk chunk = await( pending.removeFirst() );
+                
+                int[] packageIds = new int[ chunk.packages.size() ];
+                for ( int i = 0; i < packageIds.length; ++i ) {
+                    packageIds[ i ] = packages.intern( chunk.packages.name( i ) );
+                }
+                if ( packages.size() > packageRoots.length ) {
+                    int oldLength = packageRoots.length;
+                    packageRoots = Arrays.copyOf( packageRoots, Math.max( packages.size(), oldLength * 2 ) );
+                    Arrays.fill( packageRoots, oldLength, packageRoots.length, -1 );
+                }
+                
+                int targetStart = 0;
+                for ( int i = 0; i < chunk.numClasses; ++i ) {
+                    int root = chunk.roots[ i ];
+                    int packageId = packageIds[ chunk.classPackages[ i ] ];
+                    
+                    if ( root != openRoot ) {
+                        if ( openUnit != -1 ) {
+                            writer.closeGroup();
+                            openUnit = -1;
+                        }
+                        if ( openRoot != -1 ) {
+                            writer.closeGroup();
+                        }
+                        if ( root >= rootGroups.length ) {
+                            rootGroups = Arrays.copyOf( rootGroups, Math.max( root + 1, rootGroups.length * 2 ) );
+                        }
+                        rootGroups[ root ] = new YedGroup( this.classPath.rootFile( root ).getName() );
+                        writer.openGroup( rootGroups[ root ] );
+                        openRoot = root;
+                    }
+                    
+                    long unitKey = (long)root << 32 | packageId;
+                    int unit = units.get( unitKey, -1 );
+                    if ( unit == -1 || unit != openUnit ) {
+                        if ( openUnit != -1 ) {
+                            writer.closeGroup();
+                        }
+                        unit = unitGroups.size();
+                        units.put( unitKey, unit );
+                        if ( unit == unitRoots.length ) {
+                            unitRoots = Arrays.copyOf( unitRoots, unit * 2 );
+                        }
+                        unitRoots[ unit ] = root;
+                        
+                        String packageName = packages.name( packageId );
+                        YedGroup group = new YedGroup( packageName.isEmpty() ? "(default package)" : packageName );
+                        unitGroups.add( group );
+                        writer.openGroup( group );
+                        openUnit = unit;
+                    }
+                    if ( packageRoots[ packageId ] == -1 ) {
+                        packageRoots[ packageId ] = root;
+                    }
+                    
+                    if ( this.classes ) {
+                        writer.add( new YedBasicNode( chunk.classNames[ i ] ) );
+                    }
+                    
+                    int targetEnd = chunk.targetEnds[ i ];
+                    for ( int j = targetStart; j < targetEnd; ++j ) {
+                        references.add( (long)unit << 32 | packageIds[ chunk.targets[ j ] ], 1 );
+                    }
+                    targetStart = targetEnd;
+                }
+            }
+        } finally {
+            for ( Future< Chunk > future : pending ) {
+                future.cancel( true );
+            }
+        }
+        if ( openUnit != -1 ) {
+            writer.closeGroup();
+        }
+        if ( openRoot != -1 ) {
+            writer.closeGroup();
+        }
+        
+        // references to packages outside the class path are dropped
+        LongIntMap unitEdges = new LongIntMap();
+        LongIntMap rootEdges = new LongIntMap();
+        for ( long key : references.sortedKeys() ) {
+            int unit = (int)( key >>> 32 );
+            int packageId = (int)key;
+            int targetRoot = ( packageId < packageRoots.length ) ? packageRoots[ packageId ] : -1;
+            if ( targetRoot == -1 ) {
+                continue;
+            }
+            
+            int targetUnit = units.get( (long)targetRoot << 32 | packageId, -1 );
+            if ( targetUnit == unit ) {
+                continue;
+            }
+            
+            int count = references.get( key, 0 );
+            unitEdges.add( (long)unit << 32 | targetUnit, count );
+            if ( unitRoots[ unit ] != targetRoot ) {
+                rootEdges.add( (long)unitRoots[ unit ] << 32 | targetRoot, count );
+            }
+        }
+        
+        for ( long key : unitEdges.sortedKeys() ) {
+            if ( unitEdges.get( key, 0 ) >= this.minReferences ) {
+                writer.connectWithArrow(
+                    unitGroups.get( (int)( key >>> 32 ) ),
+                    unitGroups.get( (int)key ) );
+            }
+        }
+        for ( long key : rootEdges.sortedKeys() ) {
+            if ( rootEdges.get( key, 0 ) >= this.minReferences ) {
+                writer.connectWithArrow(
+                    rootGroups[ (int)( key >>> 32 ) ],
+                    rootGroups[ (int)key ] );
+            }
+        }
+        return numEntries;
+    }
+    
+    private static final Chunk await( final Future< Chunk > future )
+        throws IOException
+    {
+        try {
+            return future.get();
+        } catch ( ExecutionException e ) {
+            Throwable cause = e.getCause();
+            if ( cause instanceof IOException ) {
+                throw (IOException)cause;
+            } else if ( cause instanceof RuntimeException ) {
+                throw (RuntimeException)cause;
+            } else if ( cause instanceof Error ) {
+                throw (Error)cause;
+            } else {
+                throw new IllegalStateException( cause );
+            }
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+    
+    final Chunk read( final int from, final int to ) throws IOException {
+        Chunk chunk = new Chunk( to - from );
+        ArrayList< String > names = new ArrayList< String >();
+        // the last class to refer to each package - so each is counted once a class
+        int[] referrers = new int[ 64 ];
+        
+        for ( int i = from; i < to; ++i ) {
+            ClassFile classFile = this.classPath.read( i );
+            String name = classFile.name();
+            int dot = name.lastIndexOf( '.' );
+            int packageId = chunk.packages.intern( ( dot == -1 ) ? "" : name.substring( 0, dot ) );
+            chunk.addClass(
+                this.classPath.root( i ),
+                packageId,
+                this.classes ? name.substring( dot + 1 ) : null );
+            
+            names.clear();
+            classFile.addReferences( names );
+            for ( String reference : names ) {
+                int slash = reference.lastIndexOf( '/' );
+                int target = chunk.packages.intern(
+                    ( slash == -1 ) ? "" : reference.substring( 0, slash ).replace( '/', '.' ) );
+                if ( target >= referrers.length ) {
+                    referrers = Arrays.copyOf( referrers, referrers.length * 2 );
+                }
+                if ( target != packageId && referrers[ target ] != i + 1 ) {
+                    referrers[ target ] = i + 1;
+                    chunk.addTarget( target );
+                }
+            }
+            chunk.endClass();
+        }
+        return chunk;
+    }
+    
+    @Override
+    public final void close() throws IOException {
+        try {
+            this.classPath.close();
+        } finally {
+            if ( this.shutdown ) {
+                this.executor.shutdown();
+            }
+        }
+    }
+    
+    private static final class Packages {
+        private final HashMap< String, Integer > ids = new HashMap< String, Integer >();
+        private final ArrayList< String > names = new ArrayList< String >();
+        
+        final int intern( final String name ) {
+            Integer id = this.ids.get( name );
+            if ( id != null ) {
+                return id;
+            }
+            this.ids.put( name, this.names.size() );
+            this.names.add( name );
+            return this.names.size() - 1;
+        }
+        
+        final String name( final int id ) {
+            return this.names.get( id );
+        }
+        
+        final int size() {
+            return this.names.size();
+        }
+    }
+    
+    /*
+     * The classes read by one task - with the packages each refers to, by
+     * their ids in the chunk's own table.
+     */
+    private static final class Chunk {
+        final Packages packages = new Packages();
+        
+        final int[] roots;
+        final int[] classPackages;
+        final String[] classNames;
+        final int[] targetEnds;
+        int numClasses = 0;
+        
+        int[] targets = new int[ 1024 ];
+        int numTargets = 0;
+        
+        Chunk( final int capacity ) {
+            this.roots = new int[ capacity ];
+            this.classPackages = new int[ capacity ];
+            this.classNames = new String[ capacity ];
+            this.targetEnds = new int[ capacity ];
+        }
+        
+        final void addClass( final int root, final int packageId, final String name ) {
+            this.roots[ this.numClasses ] = root;
+            this.classPackages[ this.numClasses ] = packageId;
+            this.classNames[ this.numClasses ] = name;
+        }
+        
+        final void addTarget( final int packageId ) {
+            if ( this.numTargets == this.targets.length ) {
+                this.targets = Arrays.copyOf( this.targets, this.numTargets * 2 );
+            }
+            this.targets[ this.numTargets++ ] = packageId;
+        }
+        
+        final void endClass() {
+            this.targetEnds[ this.numClasses++ ] = this.numTargets;
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package net.dougqh.graphml.yed;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.dougqh.graphml.GraphmlIoException;
+import net.dougqh.graphml.GraphmlWriter;
+
+/*
+ * A YedWriter front end that many threads can add nodes and edges to at
+ * once.  Each thread numbers its nodes from blocks claimed off a shared
+ * counter and buffers nodes and packed edges locally, so the only shared
+ * write is the putIfAbsent that registers a node.
+ * 
+ * Nothing is written until close(), which must happen after every
+ * producing thread has finished (e.g. after joining them or shutting down
+ * their executor).
+ */
+public final class ConcurrentYedWriter implements Closeable {
+    private static final int BLOCK_SIZE = 1024;
+    
+    private final OutputStream out;
+    private final boolean close;
+    
+    private final AtomicInteger nextBlock = new AtomicInteger();
+    private final ConcurrentHashMap< YedNode< ? >, Integer > registry =
+        new ConcurrentHashMap< YedNode< ? >, Integer >();
+    
+    private final Queue< LocalBuffer > buffers = new ConcurrentLinkedQueue< LocalBuffer >();
+    private final ThreadLocal< LocalBuffer > localBuffer = new ThreadLocal< LocalBuffer >() {
+        @Override
+        protected final LocalBuffer initialValue() {
+            LocalBuffer buffer = new LocalBuffer( ConcurrentYedWriter.this.nextBlock );
+            ConcurrentYedWriter.this.buffers.add( buffer );
+            return buffer;
+        }
+    };
+    
+    private volatile boolean closed = false;
+    
+    public ConcurrentYedWriter( final File file ) throws FileNotFoundException {
+        this( new FileOutputStream( file ), true );
+    }
+    
+    public ConcurrentYedWriter( final OutputStream out ) {
+        this( out, false );
+    }
+    
+    private ConcurrentYedWriter( final OutputStream out, final boolean close ) {
+        this.out = out;
+        this.close = close;
+    }
+    
+    public final ConcurrentYedWriter add( final YedNode< ? >... nodes ) {
+        LocalBuffer buffer = this.buffer();
+        for ( YedNode< ? > node : nodes ) {
+            this.register( buffer, node );
+            buffer.add( node );
+        }
+        return this;
+    }
+    
+    public final ConcurrentYedWriter connect(
+        final YedNode< ? > fromNode,
+        final YedNode< ? > toNode )
+    {
+        LocalBuffer buffer = this.buffer();
+        buffer.add( pack(
+            this.register( buffer, fromNode ),
+            this.register( buffer, toNode ),
+            false ) );
+        return this;
+    }
+    
+    public final ConcurrentYedWriter connectWithArrow(
+        final YedNode< ? > fromNode,
+        final YedNode< ? > toNode )
+    {
+        LocalBuffer buffer = this.buffer();
+        buffer.add( pack(
+            this.register( buffer, fromNode ),
+            this.register( buffer, toNode ),
+            true ) );
+        return this;
+    }
+    
+    public final ConcurrentYedWriter connectWithArrows(
+        final YedNode< ? > startNode,
+        final YedNode< ? >... nodes )
+    {
+        YedNode< ? > prevNode = startNode;
+        
+        for ( YedNode< ? > curNode : nodes ) {
+            this.connectWithArrow( prevNode, curNode );
+            
+            prevNode = curNode;
+        }
+        return this;
+    }
+    
+    private final LocalBuffer buffer() {
+        if ( this.closed ) {
+            throw new IllegalStateException( "closed" );
+        }
+        return this.localBuffer.get();
+    }
+    
+    private final int register( final LocalBuffer buffer, final YedNode< ? > node ) {
+        Integer number = this.registry.get( node );
+        if ( number != null ) {
+            return number;
+        }
+        
+        int newNumber = buffer.nextNumber();
+        Integer racedNumber = this.registry.putIfAbsent( node, newNumber );
+        if ( racedNumber == null ) {
+            return newNumber;
+        } else {
+            // another thread registered it first - newNumber is left unused
+            return racedNumber;
+        }
+    }
+    
+    private static final long pack(
+        final int source,
+        final int target,
+        final boolean directed )
+    {
+        return ( (long)source << 32 ) | ( ( target & 0x7FFFFFFFL ) << 1 ) | ( directed ? 1 : 0 );
+    }
+    
+    @Override
+    public final void close() throws IOException {
+        if ( this.closed ) {
+            return;
+        }
+        this.closed = true;
+        
+        YedWriter writer = new YedWriter( new GraphmlWriter( this.out, this.close ) );
+        try {
+            GraphmlWriter graphmlWriter = writer.graphmlWriter();
+            
+            for ( LocalBuffer buffer : this.buffers ) {
+                buffer.writeNodes( graphmlWriter );
+            }
+            
+            // the writer numbers nodes itself, so map block numbers to its ids
+            String[] ids = new String[ this.nextBlock.get() * BLOCK_SIZE ];
+            for ( Map.Entry< YedNode< ? >, Integer > entry : this.registry.entrySet() ) {
+                ids[ entry.getValue() ] = graphmlWriter.getId( entry.getKey() );
+            }
+            
+            for ( LocalBuffer buffer : this.buffers ) {
+                buffer.writeEdges( graphmlWriter, ids );
+            }
+        } finally {
+            writer.close();
+            
+            // a thread's buffer stays in its ThreadLocal map until the thread ends
+            for ( LocalBuffer buffer : this.buffers ) {
+                buffer.clear();
+            }
+            this.buffers.clear();
+            this.registry.clear();
+        }
+    }
+    
+    /*
+     * Static, so that a buffer left in a thread's ThreadLocal map does not
+     * hold on to the writer - and through it, its ThreadLocal key.
+     */
+    private static final class LocalBuffer {
+        private final AtomicInteger nextBlock;
+        
+        private int nextNumber = 0;
+        private int blockEnd = 0;
+        
+        private YedNode< ? >[] nodes = new YedNode< ? >[ 64 ];
+        private int numNodes = 0;
+        
+        private long[] edges = new long[ 64 ];
+        private int numEdges = 0;
+        
+        LocalBuffer( final AtomicInteger nextBlock ) {
+            this.nextBlock = nextBlock;
+        }
+        
+        final int nextNumber() {
+            if ( this.nextNumber == this.blockEnd ) {
+                this.nextNumber = this.claimBlock();
+                this.blockEnd = this.nextNumber + BLOCK_SIZE;
+            }
+            return this.nextNumber++;
+        }
+        
+        private final int claimBlock() {
+            int block = this.nextBlock.getAndIncrement();
+            if ( block >= Integer.MAX_VALUE / BLOCK_SIZE ) {
+                throw new IllegalStateException( "too many nodes" );
+            }
+            return block * BLOCK_SIZE;
+        }
+        
+        final void add( final YedNode< ? > node ) {
+            if ( this.numNodes == this.nodes.length ) {
+                this.nodes = Arrays.copyOf( this.nodes, this.numNodes * 2 );
+            }
+            this.nodes[ this.numNodes++ ] = node;
+        }
+        
+        final void add( final long edge ) {
+            if ( this.numEdges == this.edges.length ) {
+                this.edges = Arrays.copyOf( this.edges, this.numEdges * 2 );
+            }
+            this.edges[ this.numEdges++ ] = edge;
+        }
+        
+        final void writeNodes( final GraphmlWriter graphmlWriter )
+            throws GraphmlIoException
+        {
+            for ( int i = 0; i < this.numNodes; ++i ) {
+                this.nodes[ i ].write( graphmlWriter );
+            }
+        }
+        
+        final void writeEdges(
+            final GraphmlWriter graphmlWriter,
+            final String[] ids )
+            throws GraphmlIoException
+        {
+            for ( int i = 0; i < this.numEdges; ++i ) {
+                long edge = this.edges[ i ];
+                String sourceId = ids[ (int)( edge >>> 32 ) ];
+                String targetId = ids[ (int)( ( edge >>> 1 ) & 0x7FFFFFFFL ) ];
+                if ( ( edge & 1 ) != 0 ) {
+                    graphmlWriter.directedEdge( sourceId, targetId );
+                } else {
+                    graphmlWriter.undirectedEdge( sourceId, targetId );
+                }
+            }
+        }
+        
+        final void clear() {
+            this.nodes = null;
+            this.numNodes = 0;
+            this.edges = null;
+            this.numEdges = 0;
+        }
+    }
+}
@@ -0,0 +1,442 @@
+package net.dougqh.graphml.yed;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.dougqh.graphml.GraphmlIoException;
+import net.dougqh.graphml.GraphmlStatistics;
+import net.dougqh.graphml.GraphmlWriter;
+
+/*
+ * Splits one graph across several self-contained yEd files.  A new shard
+ * is started once the current one reaches its node budget or its estimated
+ * size - the bytes written so far plus an estimate for the edges that will
+ * be written into it.
+ *
+ * Nodes are written as they are added, and a shard is closed - in the
+ * background - as soon as the next one is started, so only one is open at
+ * a time.  Edges go into the open shard, where they are buffered by its
+ * writer and spilled to disk past the edge memory budget.  An endpoint in
+ * an earlier shard is written as a dotted stub node whose url is that
+ * shard's file and the node's id - connect nodes soon after adding them
+ * to keep edges in their nodes' shard.  Edges added before their nodes
+ * are held until the nodes are added.  Once every shard is closed, a
+ * manifest listing them is written next to them.
+ *
+ * Added nodes are only weakly referenced once their shard is closed.
+ */
+public final class ShardedYedWriter implements Closeable {
+    public static final String MANIFEST_EXTENSION = ".shards";
+    
+    private static final int ESTIMATED_EDGE_BYTES = 160;
+    
+    private final File directory;
+    private final String baseName;
+    private final long maxBytes;
+    private final int maxNodes;
+    private long edgeMemoryBudget = 0;
+    
+    private final List< File > shardFiles = new ArrayList< File >();
+    private final List< GraphmlStatistics > shardStatistics = new ArrayList< GraphmlStatistics >();
+    private YedWriter shard = null;
+    private int shardNodes = 0;
+    private long shardEdges = 0;
+    private boolean rollOver = true;
+    
+    // stubs in the open shard for nodes in earlier ones
+    private final Map< YedNode< ? >, YedBasicNode > stubs = new HashMap< YedNode< ? >, YedBasicNode >();
+    private final Map< YedNode< ? >, Integer > shardOf = new WeakHashMap< YedNode< ? >, Integer >();
+    // edges held until the node they are keyed by is added
+    private final Map< YedNode< ? >, List< PendingEdge > > pendingEdges =
+        new HashMap< YedNode< ? >, List< PendingEdge > >();
+    
+    private final int closeThreads = Runtime.getRuntime().availableProcessors();
+    private ExecutorService closer = null;
+    private final List< Future< Void > > closing = new ArrayList< Future< Void > >();
+    private int numClosed = 0;
+    
+    private boolean closed = false;
+    
+    public ShardedYedWriter(
+        final File file,
+        final long maxBytes,
+        final int maxNodes )
+    {
+        if ( maxBytes <= 0 ) throw new IllegalArgumentException( "maxBytes" );
+        if ( maxNodes <= 0 ) throw new IllegalArgumentException( "maxNodes" );
+        
+        File absoluteFile = file.getAbsoluteFile();
+        String name = absoluteFile.getName();
+        if ( name.endsWith( GraphmlWriter.EXTENSION ) ) {
+            name = name.substring( 0, name.length() - GraphmlWriter.EXTENSION.length() );
+        }
+        
+        this.directory = absoluteFile.getParentFile();
+        this.baseName = name;
+        this.maxBytes = maxBytes;
+        this.maxNodes = maxNodes;
+    }
+    
+    // see GraphmlWriter.edgeMemoryBudget - applies to each shard started after the call
+    public final ShardedYedWriter edgeMemoryBudget( final long bytes ) {
+        if ( bytes <= 0 ) throw new IllegalArgumentException( "bytes" );
+        
+        this.edgeMemoryBudget = bytes;
+        return this;
+    }
+    
+    public final File getManifestFile() {
+        return new File( this.directory, this.baseName + MANIFEST_EXTENSION );
+    }
+    
+    public final List< File > getShardFiles() {
+        return new ArrayList< File >( this.shardFiles );
+    }
+    
+    public final ShardedYedWriter add( final YedNode< ? >... nodes )
+        throws IOException
+    {
+        if ( this.closed ) throw new IllegalStateException( "closed" );
+        
+        ArrayList< YedNode< ? > > placed = new ArrayList< YedNode< ? > >();
+        for ( YedNode< ? > node : nodes ) {
+            if ( this.shardOf.containsKey( node ) ) {
+                continue;
+            }
+            
+            if ( this.rollOver ) {
+                this.startShard();
+            }
+            this.shard.add( node );
+            this.place( node, placed );
+            if ( node instanceof YedGroup ) {
+                this.placeChildren( (YedGroup)node, placed );
+            }
+            
+            // edges held for the nodes just placed go into this shard
+            for ( YedNode< ? > placedNode : placed ) {
+                List< PendingEdge > edges = this.pendingEdges.remove( placedNode );
+                if ( edges != null ) {
+                    for ( PendingEdge edge : edges ) {
+                        this.addEdge( edge.source, edge.target, edge.directed );
+                    }
+                }
+            }
+            placed.clear();
+            
+            long estimatedBytes =
+                this.shard.graphmlWriter().statistics().getBytesFlushed() +
+                this.shardEdges * ESTIMATED_EDGE_BYTES;
+            this.rollOver =
+                this.shardNodes >= this.maxNodes ||
+                estimatedBytes >= this.maxBytes;
+        }
+        return this;
+    }
+    
+    public final ShardedYedWriter connect(
+        final YedNode< ? > fromNode,
+        final YedNode< ? > toNode )
+        throws GraphmlIoException
+    {
+        this.addEdge( fromNode, toNode, false );
+        return this;
+    }
+    
+    public final ShardedYedWriter connectWithArrow(
+        final YedNode< ? > fromNode,
+        final YedNode< ? > toNode )
+        throws GraphmlIoException
+    {
+        this.addEdge( fromNode, toNode, true );
+        return this;
+    }
+    
+    public final ShardedYedWriter connectWithArrows(
+        final YedNode< ? > startNode,
+        final YedNode< ? >... nodes )
+        throws GraphmlIoException
+    {
+        YedNode< ? > prevNode = startNode;
+        
+        for ( YedNode< ? > curNode : nodes ) {
+            this.connectWithArrow( prevNode, curNode );
+            
+            prevNode = curNode;
+        }
+        return this;
+    }
+    
+    private final void addEdge(
+        final YedNode< ? > fromNode,
+        final YedNode< ? > toNode,
+        final boolean directed )
+        throws GraphmlIoException
+    {
+        if ( this.closed ) throw new IllegalStateException( "closed" );
+        
+        if ( ! this.shardOf.containsKey( fromNode ) ) {
+            this.hold( fromNode, new PendingEdge( fromNode, toNode, directed ) );
+        } else if ( ! this.shardOf.containsKey( toNode ) ) {
+            this.hold( toNode, new PendingEdge( fromNode, toNode, directed ) );
+        } else {
+            this.writeEdge( fromNode, toNode, directed );
+        }
+    }
+    
+    private final void hold( final YedNode< ? > node, final PendingEdge edge ) {
+        List< PendingEdge > edges = this.pendingEdges.get( node );
+        if ( edges == null ) {
+            edges = new ArrayList< PendingEdge >( 2 );
+            this.pendingEdges.put( node, edges );
+        }
+        edges.add( edge );
+    }
+    
+    // nodes that were never added are left to the shard's unresolved edge policy
+    private final void writeEdge(
+        final YedNode< ? > fromNode,
+        final YedNode< ? > toNode,
+        final boolean directed )
+        throws GraphmlIoException
+    {
+        YedNode< ? > source = this.endpoint( fromNode );
+        YedNode< ? > target = this.endpoint( toNode );
+        if ( directed ) {
+            this.shard.connectWithArrow( source, target );
+        } else {
+            this.shard.connect( source, target );
+        }
+        ++this.shardEdges;
+    }
+    
+    private final YedNode< ? > endpoint( final YedNode< ? > node )
+        throws GraphmlIoException
+    {
+        Integer shard = this.shardOf.get( node );
+        if ( shard == null || shard == this.shardFiles.size() - 1 ) {
+            return node;
+        }
+        
+        YedBasicNode stub = this.stubs.get( node );
+        if ( stub == null ) {
+            stub = new YedBasicNode( node.label );
+            stub.setLineStyle( YedLineStyle.DOTTED );
+            try {
+                stub.setUrl( new URL(
+                    this.shardFiles.get( shard ).toURI().toURL(),
+                    "#" + node.getId() ) );
+            } catch ( MalformedURLException e ) {
+                throw new IllegalStateException( e );
+            }
+            this.shard.add( stub );
+            this.stubs.put( node, stub );
+        }
+        return stub;
+    }
+    
+    private final void place( final YedNode< ? > node, final List< YedNode< ? > > placed ) {
+        this.shardOf.put( node, this.shardFiles.size() - 1 );
+        ++this.shardNodes;
+        placed.add( node );
+    }
+    
+    private final void placeChildren(
+        final YedGroup group,
+        final List< YedNode< ? > > placed )
+    {
+        ArrayList< Iterator< YedNode< ? > > > children =
+            new ArrayList< Iterator< YedNode< ? > > >();
+        children.add( group.nodes.iterator() );
+        
+        while ( ! children.isEmpty() ) {
+            Iterator< YedNode< ? > > iter = children.get( children.size() - 1 );
+            if ( ! iter.hasNext() ) {
+                children.remove( children.size() - 1 );
+            } else {
+                YedNode< ? > node = iter.next();
+                if ( ! this.shardOf.containsKey( node ) ) {
+                    this.place( node, placed );
+                    if ( node instanceof YedGroup ) {
+                        children.add( ( (YedGroup)node ).nodes.iterator() );
+                    }
+                }
+            }
+        }
+    }
+    
+    private final void startShard() throws IOException {
+        this.finishShard();
+        
+        File file = new File(
+            this.directory,
+            this.baseName + "-" + this.shardFiles.size() + GraphmlWriter.EXTENSION );
+        
+        YedWriter shard = new YedWriter( file );
+        if ( this.edgeMemoryBudget > 0 ) {
+            shard.graphmlWriter().edgeMemoryBudget( this.edgeMemoryBudget );
+        }
+        this.shard = shard;
+        this.shardFiles.add( file );
+        this.shardStatistics.add( shard.graphmlWriter().statistics() );
+        this.shardNodes = 0;
+        this.shardEdges = 0;
+        this.rollOver = false;
+    }
+    
+    /*
+     * Hands the open shard to a background thread to close - at most one
+     * per thread is waiting at once, so finished shards do not pile up.
+     */
+    private final void finishShard() throws IOException {
+        if ( this.shard == null ) {
+            return;
+        }
+        
+        final YedWriter shard = this.shard;
+        this.shard = null;
+        this.stubs.clear();
+        
+        if ( this.closer == null ) {
+            this.closer = Executors.newFixedThreadPool( this.closeThreads );
+        }
+        this.closing.add( this.closer.submit( new Callable< Void >() {
+            @Override
+            public final Void call() throws IOException {
+                shard.close();
+                return null;
+            }
+        } ) );
+        while ( this.closing.size() - this.numClosed > this.closeThreads * 2 ) {
+            this.awaitShard();
+        }
+    }
+    
+    private final void awaitShard() throws IOException {
+        Future< Void > future = this.closing.get( this.numClosed++ );
+        try {
+            future.get();
+        } catch ( ExecutionException e ) {
+            if ( e.getCause() instanceof IOException ) {
+                throw (IOException)e.getCause();
+            } else {
+                throw new IOException( e.getCause() );
+            }
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+    
+    @Override
+    public final void close() throws IOException {
+        if ( this.closed ) {
+            return;
+        }
+        this.closed = true;
+        
+        try {
+            if ( this.shard == null ) {
+                this.startShard();
+            }
+            for ( List< PendingEdge > edges : this.pendingEdges.values() ) {
+                for ( PendingEdge edge : edges ) {
+                    this.writeEdge( edge.source, edge.target, edge.directed );
+                }
+            }
+            this.pendingEdges.clear();
+            this.finishShard();
+            while ( this.numClosed < this.closing.size() ) {
+                this.awaitShard();
+            }
+        } catch ( IOException e ) {
+            this.closeShards();
+            throw e;
+        } catch ( RuntimeException e ) {
+            this.closeShards();
+            throw e;
+        } finally {
+            if ( this.closer != null ) {
+                this.closer.shutdown();
+            }
+        }
+        this.writeManifest();
+    }
+    
+    // after a failure - the first one is the one reported
+    private final void closeShards() {
+        if ( this.shard != null ) {
+            try {
+                this.shard.close();
+            } catch ( IOException e ) {
+                // ignored
+            } catch ( RuntimeException e ) {
+                // ignored
+            }
+            this.shard = null;
+        }
+        while ( this.numClosed < this.closing.size() ) {
+            try {
+                this.awaitShard();
+            } catch ( IOException e ) {
+                // ignored
+            }
+        }
+    }
+    
+    private final void writeManifest() throws IOException {
+        PrintWriter out = new PrintWriter( new OutputStreamWriter(
+            new FileOutputStream( this.getManifestFile() ),
+            "UTF-8" ) );
+        try {
+            out.println( "# shard\tnodes\tedges" );
+            for ( int i = 0; i < this.shardFiles.size(); ++i ) {
+                GraphmlStatistics statistics = this.shardStatistics.get( i );
+                out.print( this.shardFiles.get( i ).getName() );
+                out.print( '\t' );
+                out.print( statistics.getNodesWritten() );
+                out.print( '\t' );
+                out.println( statistics.getEdgesWritten() );
+            }
+        } finally {
+            out.close();
+        }
+        if ( out.checkError() ) {
+            throw new IOException( "failed to write " + this.getManifestFile() );
+        }
+    }
+    
+    private static final class PendingEdge {
+        final YedNode< ? > source;
+        final YedNode< ? > target;
+        final boolean directed;
+        
+        PendingEdge(
+            final YedNode< ? > source,
+            final YedNode< ? > target,
+            final boolean directed )
+        {
+            this.source = source;
+            this.target = target;
+            this.directed = directed;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package net.dougqh.graphml.yed;
+
+import java.util.Arrays;
+
+/*
+ * The indexes of the nodes in each tile of a grid - a map from tile to a
+ * chain of entries, kept in arrays rather than a list per tile.  Once
+ * built, it can be read from many threads at once.
+ */
+final class TileIndex {
+    private static final long EMPTY = Long.MIN_VALUE;
+    
+    private long[] tiles = newTiles( 1024 );
+    private int[] heads = new int[ 1024 ];
+    private int numTiles = 0;
+    
+    private int[] nodes = new int[ 1024 ];
+    private int[] nexts = new int[ 1024 ];
+    private int numEntries = 0;
+    
+    static final long tile( final int x, final int y ) {
+        return ( (long)x << 32 ) | ( y & 0xFFFFFFFFL );
+    }
+    
+    final void add( final long tile, final int node ) {
+        if ( this.numEntries == this.nodes.length ) {
+            this.nodes = Arrays.copyOf( this.nodes, this.numEntries * 2 );
+            this.nexts = Arrays.copyOf( this.nexts, this.numEntries * 2 );
+        }
+        
+        int slot = this.slot( tile );
+        int entry = this.numEntries++;
+        this.nodes[ entry ] = node;
+        if ( this.tiles[ slot ] == EMPTY ) {
+            this.tiles[ slot ] = tile;
+            this.nexts[ entry ] = -1;
+            this.heads[ slot ] = entry;
+            if ( ++this.numTiles * 2 > this.tiles.length ) {
+                this.rehash();
+            }
+        } else {
+            this.nexts[ entry ] = this.heads[ slot ];
+            this.heads[ slot ] = entry;
+        }
+    }
+    
+    // the tile's first entry - or -1 if it has none
+    final int first( final long tile ) {
+        int slot = this.slot( tile );
+        return ( this.tiles[ slot ] == EMPTY ) ? -1 : this.heads[ slot ];
+    }
+    
+    final int next( final int entry ) {
+        return this.nexts[ entry ];
+    }
+    
+    final int node( final int entry ) {
+        return this.nodes[ entry ];
+    }
+    
+    // where tile is - or the empty slot it would go in
+    private final int slot( final long tile ) {
+        int mask = this.tiles.length - 1;
+        int slot = mix( tile ) & mask;
+        while ( this.tiles[ slot ] != EMPTY && this.tiles[ slot ] != tile ) {
+            slot = ( slot + 1 ) & mask;
+        }
+        return slot;
+    }
+    
+    private final void rehash() {
+        long[] oldTiles = this.tiles;
+        int[] oldHeads = this.heads;
+        this.tiles = newTiles( oldTiles.length * 2 );
+        this.heads = new int[ oldTiles.length * 2 ];
+        
+        for ( int i = 0; i < oldTiles.length; ++i ) {
+            if ( oldTiles[ i ] != EMPTY ) {
+                int slot = this.slot( oldTiles[ i ] );
+                this.tiles[ slot ] = oldTiles[ i ];
+                this.heads[ slot ] = oldHeads[ i ];
+            }
+        }
+    }
+    
+    private static final long[] newTiles( final int length ) {
+        long[] tiles = new long[ length ];
+        Arrays.fill( tiles, EMPTY );
+        return tiles;
+    }
+    
+    static final int mix( final long tile ) {
+        long h = tile * 0x9E3779B97F4A7C15L;
+        return (int)( h ^ ( h >>> 32 ) );
+    }
+}
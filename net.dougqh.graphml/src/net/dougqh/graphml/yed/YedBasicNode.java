@@ -2,7 +2,9 @@ package net.dougqh.graphml.yed;
 
 import java.awt.Color;
 import java.awt.Dimension;
+import java.util.List;
 
+import net.dougqh.graphml.GraphmlFragmentKeys;
 import net.dougqh.graphml.GraphmlIoException;
 import net.dougqh.graphml.GraphmlWriter;
 
@@ -12,10 +14,7 @@ public final class YedBasicNode
     extends YedNode< YedBasicNode >
  
 {
-    private Color color = null;    
-    private YedShape shape = null;
-    private YedLineStyle lineStyle = null;
-    private Dimension dimension = null;
+    private YedStyle style = YedStyle.DEFAULT;
     
     public YedBasicNode() {}
     
@@ -31,36 +30,38 @@ public final class YedBasicNode
     	this.setLabel( label );
     }
         
+    public final YedBasicNode setStyle( final YedStyle style ) {
+        if ( style == null ) throw new IllegalArgumentException( "style" );
+        
+        this.style = style;
+        return this;
+    }
+    
+    public final YedStyle getStyle() {
+        return this.style;
+    }
+    
     public final YedBasicNode setColor(
         final int red,
         final int green,
         final int blue )
     {
-        if ( red < 0 || red > 255 ) throw new IllegalArgumentException( "red" );
-        if ( green < 0 || green > 255 ) throw new IllegalArgumentException( "red" );
-        if ( blue < 0 || blue > 255 ) throw new IllegalArgumentException( "red" );
-        
-        return this.setColor( red, green, blue );
+        this.style = this.style.withColor( red, green, blue );
+        return this;
     }
     
     public final YedBasicNode setColor( final Color color ) {
-        if ( color == null ) throw new IllegalArgumentException( "color" );
-        
-        this.color = color;
+        this.style = this.style.withColor( color );
         return this;
     }
     
     public final YedBasicNode setShape( final YedShape shape ) {
-        if ( shape == null ) throw new IllegalArgumentException( "shape" );
-        
-        this.shape = shape;
+        this.style = this.style.withShape( shape );
         return this;
     }
     
     public final YedBasicNode setLineStyle( final YedLineStyle lineStyle ) {
-        if ( lineStyle == null ) throw new IllegalArgumentException( "lineStyle" );
-        
-        this.lineStyle = lineStyle;
+        this.style = this.style.withLineStyle( lineStyle );
         return this;
     }
     
@@ -75,14 +76,12 @@ public final class YedBasicNode
         final int width,
         final int height )
     {
-        if ( width < 0 ) throw new IllegalArgumentException( "width" );
-        if ( height < 0 ) throw new IllegalArgumentException( "height" );
-        
-        return this.setDimension( new Dimension( width, height ) );
+        this.style = this.style.withDimension( width, height );
+        return this;
     }
     
     public final YedBasicNode setDimension( final Dimension dimension ) {
-        this.dimension = dimension;
+        this.style = this.style.withDimension( dimension );
         return this;
     }
     
@@ -94,36 +93,79 @@ public final class YedBasicNode
     		return;
     	}
     	
+        if ( graphmlWriter.isForYed() && graphmlWriter.isFragmentCaching() ) {
+            String cachedId = graphmlWriter.writeCachedNode( this, this.fragmentKey( graphmlWriter ) );
+            if ( cachedId != null ) {
+                this.setId( cachedId );
+                this.addToRouter( graphmlWriter, cachedId );
+                return;
+            }
+        }
+        
         String id = graphmlWriter.startNode( this );
-        if ( this.description != null ) {
-            graphmlWriter.yed().description( this.description );
+        // without yEd support, only the structure is written - this lets
+        // the same nodes go to plain GraphML sinks of a GraphmlTee
+        if ( graphmlWriter.isForYed() ) {
+            if ( this.description != null ) {
+                graphmlWriter.yed().description( this.description );
+            }
+            if ( this.url != null ) {
+                graphmlWriter.yed().url( this.url );
+            }
+            
+            graphmlWriter.yed().startShapeNode();
+            if ( this.label != null ) {
+                graphmlWriter.yed().nodeLabel( this.label );
+            }
+            this.style.write( graphmlWriter.yed() );
+            if ( graphmlWriter.yed().layout() != null ) {
+                graphmlWriter.yed().layout().writeGeometry( this, graphmlWriter.yed() );
+            }
+            graphmlWriter.yed().endShapeNode();
         }
-        if ( this.url != null ) {
-            graphmlWriter.yed().url( this.url );
+        if ( this.ports != null ) {
+            graphmlWriter.ports( this.ports );
         }
+        graphmlWriter.endNode();
         
-        graphmlWriter.yed().startShapeNode();
-        if ( this.label != null ) {
-            graphmlWriter.yed().nodeLabel( this.label );
-        }
-        if ( this.shape != null ) {
-            graphmlWriter.yed().shape( this.shape );
+        this.setId( id );
+        this.addToRouter( graphmlWriter, id );
+    }
+    
+    // cached nodes, too - they are still in the way of edges
+    private final void addToRouter( final GraphmlWriter graphmlWriter, final String id ) {
+        if ( ! graphmlWriter.isForYed() ) {
+            return;
         }
-        if ( this.color != null ) {
-            graphmlWriter.yed().fill( this.color );
+        
+        YedGraphmlExtension yed = graphmlWriter.yed();
+        if ( yed.layout() != null && yed.router() != null ) {
+            yed.layout().addToRouter( this, id, yed.router(), graphmlWriter.isCompact() );
         }
-        if ( this.lineStyle != null ) {
-            graphmlWriter.yed().borderStyle( this.lineStyle );
+    }
+    
+    /*
+     * Everything that shows up in the node's element other than its id -
+     * the associated object is left out, since it is never written.
+     */
+    private final long fragmentKey( final GraphmlWriter graphmlWriter ) {
+        long key = GraphmlFragmentKeys.hash( GraphmlFragmentKeys.SEED, this.label );
+        key = GraphmlFragmentKeys.hash( key, this.description );
+        key = GraphmlFragmentKeys.hash( key, ( this.url == null ) ? null : this.url.toString() );
+        key = this.style.fragmentKey( key );
+        if ( graphmlWriter.yed().layout() != null ) {
+            key = graphmlWriter.yed().layout().fragmentKey( this, key );
         }
-        if ( this.dimension != null ) {
-            graphmlWriter.yed().geometry(
-                this.dimension.getWidth(),
-                this.dimension.getHeight() );
+        if ( this.ports == null ) {
+            key = GraphmlFragmentKeys.hash( key, -1 );
+        } else {
+            List< String > portNames = this.ports.names();
+            key = GraphmlFragmentKeys.hash( key, portNames.size() );
+            for ( String portName : portNames ) {
+                key = GraphmlFragmentKeys.hash( key, portName );
+            }
         }
-        graphmlWriter.yed().endShapeNode();
-        graphmlWriter.endNode();
-        
-        this.setId( id );
+        return GraphmlFragmentKeys.finish( key );
     }
     
     @Override
@@ -146,6 +188,8 @@ public final class YedBasicNode
     		return true;
     	} else if ( ! ( obj instanceof YedBasicNode ) ) {
     		return false;
+    	} else if ( this.associatedObject == null ) {
+    		return false;
     	} else {
     		YedBasicNode that = (YedBasicNode)obj;
     		return equals(
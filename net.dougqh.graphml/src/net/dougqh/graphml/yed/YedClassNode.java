@@ -0,0 +1,125 @@
+package net.dougqh.graphml.yed;
+
+import java.util.ArrayList;
+
+import net.dougqh.graphml.GraphmlIoException;
+import net.dougqh.graphml.GraphmlWriter;
+
+
+
+/*
+ * A UML class box - the label is the class's name, with its attributes
+ * and methods listed below it.  yEd is left to size the box, so it is not
+ * placed by a YedLayout.
+ */
+public final class YedClassNode
+    extends YedNode< YedClassNode >
+{
+    private String stereotype = "";
+    private ArrayList< String > attributes = new ArrayList< String >();
+    private ArrayList< String > methods = new ArrayList< String >();
+    
+    public YedClassNode() {}
+    
+    public YedClassNode( final String label ) {
+        this.setLabel( label );
+    }
+    
+    public YedClassNode(
+        final Object associatedObject,
+        final String label )
+    {
+        this.associate( associatedObject );
+        this.setLabel( label );
+    }
+    
+    public final YedClassNode setStereotype( final String stereotype ) {
+        if ( stereotype == null ) throw new IllegalArgumentException( "stereotype" );
+        
+        this.stereotype = stereotype;
+        return this;
+    }
+    
+    public final YedClassNode addAttribute( final String attribute ) {
+        if ( attribute == null ) throw new IllegalArgumentException( "attribute" );
+        
+        this.attributes.add( attribute );
+        return this;
+    }
+    
+    public final YedClassNode addMethod( final String method ) {
+        if ( method == null ) throw new IllegalArgumentException( "method" );
+        
+        this.methods.add( method );
+        return this;
+    }
+    
+    @Override
+    protected final void write( final GraphmlWriter graphmlWriter )
+        throws GraphmlIoException
+    {
+        if ( graphmlWriter.getId( this ) != null ) {
+            return;
+        }
+        
+        String id = graphmlWriter.startNode( this );
+        if ( graphmlWriter.isForYed() ) {
+            YedGraphmlExtension yed = graphmlWriter.yed();
+            if ( this.description != null ) {
+                yed.description( this.description );
+            }
+            if ( this.url != null ) {
+                yed.url( this.url );
+            }
+            
+            yed.startUmlClassNode();
+            if ( this.label != null ) {
+                yed.nodeLabel( this.label );
+            }
+            yed.startUml( this.stereotype );
+            yed.attributes( this.attributes );
+            yed.methods( this.methods );
+            yed.endUml();
+            yed.endUmlClassNode();
+        }
+        if ( this.ports != null ) {
+            graphmlWriter.ports( this.ports );
+        }
+        graphmlWriter.endNode();
+        
+        this.setId( id );
+    }
+    
+    @Override
+    public final YedClassNode clone() {
+        YedClassNode clone = super.clone();
+        clone.attributes = new ArrayList< String >( this.attributes );
+        clone.methods = new ArrayList< String >( this.methods );
+        return clone;
+    }
+    
+    @Override
+    public final int hashCode() {
+        if ( this.associatedObject == null ) {
+            return super.hashCode();
+        } else {
+            return this.associatedObject.hashCode();
+        }
+    }
+    
+    @Override
+    public final boolean equals( final Object obj ) {
+        if ( obj == this ) {
+            return true;
+        } else if ( ! ( obj instanceof YedClassNode ) ) {
+            return false;
+        } else if ( this.associatedObject == null ) {
+            return false;
+        } else {
+            YedClassNode that = (YedClassNode)obj;
+            return equals(
+                this.associatedObject,
+                that.associatedObject );
+        }
+    }
+}
@@ -0,0 +1,727 @@
+package net.dougqh.graphml.yed;
+
+import java.io.Closeable;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.dougqh.graphml.GraphmlWriter;
+import net.dougqh.graphml.GraphmlWriter.Edge;
+
+/*
+ * Bends edges around the nodes in their way - so yEd, which would take
+ * far longer to route them itself, does not draw them through nodes.
+ * Node geometry comes from the writer's YedLayout, so only edges between
+ * nodes in the layout are routed.
+ *
+ * An edge that is blocked going straight is tried as an L - one bend -
+ * and then as a Z through a channel beside the nodes blocking it.  Those
+ * are cheap, but rarely clear in a dense layout, so an edge still blocked
+ * is routed through the free cells of a fine grid, bending where it has
+ * to; if that gives up, the edge is left straight.  Nodes are found
+ * through a coarser grid of tiles, so each edge only looks at the nodes
+ * near it.  The writer hands over edges a batch at a time, and each batch
+ * is routed in parallel.
+ *
+ * A router serves one export at a time.
+ */
+public final class YedEdgeRouter implements Closeable {
+    // how far edges keep from the nodes they go around
+    private static final double MARGIN = 4.0;
+    private static final double TILE_SIZE = 128.0;
+    
+    // the cells routes go through - fine enough to pass between nodes
+    private static final double GRID_SIZE = 10.0;
+    // how far - in cells - a route may stray beyond its two nodes
+    private static final int WINDOW_PADDING = 8;
+    private static final int MAX_WINDOW_CELLS = 1 << 22;
+    private static final int MAX_EXPANSIONS = 1 << 14;
+    // a bend costs as much as this many cells of length
+    private static final int BEND_COST = 3;
+    
+    // only the first few nodes blocking an edge are used for channels
+    private static final int MAX_OBSTACLES = 8;
+    private static final int CHUNK_SIZE = 256;
+    
+    private final ExecutorService executor;
+    private final boolean shutdown;
+    
+    private double[] xs = new double[ 1024 ];
+    private double[] ys = new double[ 1024 ];
+    private double[] widths = new double[ 1024 ];
+    private double[] heights = new double[ 1024 ];
+    private boolean[] known = new boolean[ 1024 ];
+    private int numNodes = 0;
+    
+    private TileIndex index = null;
+    // a maze is a few MB, so each is reused by chunk after chunk - there
+    // are never more than the threads routing at once
+    private final Queue< Maze > mazes = new ConcurrentLinkedQueue< Maze >();
+    
+    public YedEdgeRouter() {
+        this(
+            Executors.newFixedThreadPool( Runtime.getRuntime().availableProcessors() ),
+            true );
+    }
+    
+    public YedEdgeRouter( final ExecutorService executor ) {
+        this( executor, false );
+    }
+    
+    private YedEdgeRouter(
+        final ExecutorService executor,
+        final boolean shutdown )
+    {
+        if ( executor == null ) throw new IllegalArgumentException( "executor" );
+        
+        this.executor = executor;
+        this.shutdown = shutdown;
+    }
+    
+    final void node(
+        final int nodeNumber,
+        final double x,
+        final double y,
+        final double width,
+        final double height )
+    {
+        if ( nodeNumber >= this.known.length ) {
+            int length = Math.max( nodeNumber + 1, this.known.length * 2 );
+            this.xs = Arrays.copyOf( this.xs, length );
+            this.ys = Arrays.copyOf( this.ys, length );
+            this.widths = Arrays.copyOf( this.widths, length );
+            this.heights = Arrays.copyOf( this.heights, length );
+            this.known = Arrays.copyOf( this.known, length );
+        }
+        this.xs[ nodeNumber ] = x;
+        this.ys[ nodeNumber ] = y;
+        this.widths[ nodeNumber ] = width;
+        this.heights[ nodeNumber ] = height;
+        this.known[ nodeNumber ] = true;
+        this.numNodes = Math.max( this.numNodes, nodeNumber + 1 );
+        
+        // rebuilt for the next batch - nodes can come between batches
+        this.index = null;
+    }
+    
+    /*
+     * The route of each edge - the offsets of its ends from the centers of
+     * its nodes, sx, sy, tx, ty, then the x, y of each bend - or null for
+     * an edge that is drawn straight.
+     */
+    final double[][] route(
+        final List< ? extends Edge > edges,
+        final boolean compact )
+        throws InterruptedIOException
+    {
+        if ( this.index == null ) {
+            this.index = this.buildIndex();
+        }
+        
+        final int numEdges = edges.size();
+        final int[] sources = new int[ numEdges ];
+        final int[] targets = new int[ numEdges ];
+        for ( int i = 0; i < numEdges; ++i ) {
+            Edge edge = edges.get( i );
+            sources[ i ] = this.nodeNumber( compact, edge.sourceId() );
+            targets[ i ] = this.nodeNumber( compact, edge.targetId() );
+        }
+        
+        final double[][] routes = new double[ numEdges ][];
+        ArrayList< Future< Void > > futures = new ArrayList< Future< Void > >();
+        for ( int start = CHUNK_SIZE; start < numEdges; start += CHUNK_SIZE ) {
+            final int from = start;
+            final int to = Math.min( start + CHUNK_SIZE, numEdges );
+            futures.add( this.executor.submit( new Callable< Void >() {
+                @Override
+                public final Void call() {
+                    YedEdgeRouter.this.route( sources, targets, routes, from, to );
+                    return null;
+                }
+            } ) );
+        }
+        // the first chunk is routed here rather than left waiting
+        this.route( sources, targets, routes, 0, Math.min( CHUNK_SIZE, numEdges ) );
+        
+        for ( Future< Void > future : futures ) {
+            try {
+                future.get();
+            } catch ( ExecutionException e ) {
+                Throwable cause = e.getCause();
+                if ( cause instanceof RuntimeException ) {
+                    throw (RuntimeException)cause;
+                } else if ( cause instanceof Error ) {
+                    throw (Error)cause;
+                } else {
+                    throw new IllegalStateException( cause );
+                }
+            } catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+        return routes;
+    }
+    
+    private final int nodeNumber( final boolean compact, final String id ) {
+        int nodeNumber = ( id == null ) ? -1 : GraphmlWriter.nodeNumber( compact, id );
+        if ( nodeNumber < 0 || nodeNumber >= this.numNodes || ! this.known[ nodeNumber ] ) {
+            return -1;
+        }
+        return nodeNumber;
+    }
+    
+    private final void route(
+        final int[] sources,
+        final int[] targets,
+        final double[][] routes,
+        final int from,
+        final int to )
+    {
+        int[] obstacles = new int[ MAX_OBSTACLES ];
+        Maze maze = this.mazes.poll();
+        if ( maze == null ) {
+            maze = new Maze();
+        }
+        try {
+            for ( int i = from; i < to; ++i ) {
+                routes[ i ] = this.route( sources[ i ], targets[ i ], obstacles, maze );
+            }
+        } finally {
+            this.mazes.offer( maze );
+        }
+    }
+    
+    private final double[] route(
+        final int source,
+        final int target,
+        final int[] obstacles,
+        final Maze maze )
+    {
+        if ( source < 0 || target < 0 || source == target ) {
+            return null;
+        }
+        
+        double sourceX = this.xs[ source ] + this.widths[ source ] / 2;
+        double sourceY = this.ys[ source ] + this.heights[ source ] / 2;
+        double targetX = this.xs[ target ] + this.widths[ target ] / 2;
+        double targetY = this.ys[ target ] + this.heights[ target ] / 2;
+        
+        int numObstacles = this.obstacles(
+            sourceX, sourceY, targetX, targetY,
+            source, target, obstacles, MAX_OBSTACLES );
+        if ( numObstacles == 0 ) {
+            return null;
+        }
+        
+        // an L - across then down, or down then across
+        if ( this.isClear( sourceX, sourceY, targetX, sourceY, source, target ) &&
+            this.isClear( targetX, sourceY, targetX, targetY, source, target ) )
+        {
+            return new double[] { 0, 0, 0, 0, targetX, sourceY };
+        }
+        if ( this.isClear( sourceX, sourceY, sourceX, targetY, source, target ) &&
+            this.isClear( sourceX, targetY, targetX, targetY, source, target ) )
+        {
+            return new double[] { 0, 0, 0, 0, sourceX, targetY };
+        }
+        
+        // a Z through a channel just beside one of the blocking nodes
+        double[] best = null;
+        double bestLength = Double.MAX_VALUE;
+        for ( int i = 0; i < numObstacles; ++i ) {
+            int obstacle = obstacles[ i ];
+            double left = this.xs[ obstacle ] - MARGIN * 2;
+            double right = this.xs[ obstacle ] + this.widths[ obstacle ] + MARGIN * 2;
+            double top = this.ys[ obstacle ] - MARGIN * 2;
+            double bottom = this.ys[ obstacle ] + this.heights[ obstacle ] + MARGIN * 2;
+            
+            for ( int side = 0; side < 2; ++side ) {
+                double channelX = ( side == 0 ) ? left : right;
+                double length =
+                    Math.abs( channelX - sourceX ) +
+                    Math.abs( targetX - channelX ) +
+                    Math.abs( targetY - sourceY );
+                if ( length < bestLength &&
+                    this.isClear( sourceX, sourceY, channelX, sourceY, source, target ) &&
+                    this.isClear( channelX, sourceY, channelX, targetY, source, target ) &&
+                    this.isClear( channelX, targetY, targetX, targetY, source, target ) )
+                {
+                    best = new double[] { 0, 0, 0, 0, channelX, sourceY, channelX, targetY };
+                    bestLength = length;
+                }
+                
+                double channelY = ( side == 0 ) ? top : bottom;
+                length =
+                    Math.abs( channelY - sourceY ) +
+                    Math.abs( targetY - channelY ) +
+                    Math.abs( targetX - sourceX );
+                if ( length < bestLength &&
+                    this.isClear( sourceX, sourceY, sourceX, channelY, source, target ) &&
+                    this.isClear( sourceX, channelY, targetX, channelY, source, target ) &&
+                    this.isClear( targetX, channelY, targetX, targetY, source, target ) )
+                {
+                    best = new double[] { 0, 0, 0, 0, sourceX, channelY, targetX, channelY };
+                    bestLength = length;
+                }
+            }
+        }
+        if ( best != null ) {
+            return best;
+        }
+        return maze.route( source, target, sourceX, sourceY, targetX, targetY );
+    }
+    
+    private final boolean isClear(
+        final double x1,
+        final double y1,
+        final double x2,
+        final double y2,
+        final int source,
+        final int target )
+    {
+        return this.obstacles( x1, y1, x2, y2, source, target, null, 1 ) == 0;
+    }
+    
+    /*
+     * Finds up to max nodes - other than source and target - that the
+     * segment passes within MARGIN of, walking the tiles along it.
+     */
+    private final int obstacles(
+        final double x1,
+        final double y1,
+        final double x2,
+        final double y2,
+        final int source,
+        final int target,
+        final int[] found,
+        final int max )
+    {
+        int tileX = tile( x1 );
+        int tileY = tile( y1 );
+        int endTileX = tile( x2 );
+        int endTileY = tile( y2 );
+        
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        int stepX = ( dx > 0 ) ? 1 : -1;
+        int stepY = ( dy > 0 ) ? 1 : -1;
+        double nextX = ( dx == 0 ) ? Double.MAX_VALUE :
+            ( ( tileX + ( dx > 0 ? 1 : 0 ) ) * TILE_SIZE - x1 ) / dx;
+        double nextY = ( dy == 0 ) ? Double.MAX_VALUE :
+            ( ( tileY + ( dy > 0 ? 1 : 0 ) ) * TILE_SIZE - y1 ) / dy;
+        double deltaX = ( dx == 0 ) ? Double.MAX_VALUE : TILE_SIZE / Math.abs( dx );
+        double deltaY = ( dy == 0 ) ? Double.MAX_VALUE : TILE_SIZE / Math.abs( dy );
+        
+        int numFound = 0;
+        int numSteps = Math.abs( endTileX - tileX ) + Math.abs( endTileY - tileY );
+        for ( int step = 0; ; ++step ) {
+            long tile = TileIndex.tile( tileX, tileY );
+            for ( int entry = this.index.first( tile );
+                entry >= 0;
+                entry = this.index.next( entry ) )
+            {
+                int node = this.index.node( entry );
+                if ( node != source && node != target &&
+                    ! contains( found, numFound, node ) &&
+                    this.intersects( node, x1, y1, dx, dy ) )
+                {
+                    if ( found != null ) {
+                        found[ numFound ] = node;
+                    }
+                    if ( ++numFound == max ) {
+                        return numFound;
+                    }
+                }
+            }
+            
+            if ( step == numSteps ) {
+                return numFound;
+            }
+            if ( nextX < nextY ) {
+                nextX += deltaX;
+                tileX += stepX;
+            } else {
+                nextY += deltaY;
+                tileY += stepY;
+            }
+        }
+    }
+    
+    private static final boolean contains(
+        final int[] found,
+        final int numFound,
+        final int node )
+    {
+        for ( int i = 0; i < numFound; ++i ) {
+            if ( found[ i ] == node ) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    // Liang-Barsky - clips the segment to the node's box, grown by MARGIN
+    private final boolean intersects(
+        final int node,
+        final double x,
+        final double y,
+        final double dx,
+        final double dy )
+    {
+        double left = this.xs[ node ] - MARGIN;
+        double top = this.ys[ node ] - MARGIN;
+        double right = this.xs[ node ] + this.widths[ node ] + MARGIN;
+        double bottom = this.ys[ node ] + this.heights[ node ] + MARGIN;
+        
+        double enter = 0;
+        double exit = 1;
+        if ( dx == 0 ) {
+            if ( x < left || x > right ) {
+                return false;
+            }
+        } else {
+            double t1 = ( left - x ) / dx;
+            double t2 = ( right - x ) / dx;
+            enter = Math.max( enter, Math.min( t1, t2 ) );
+            exit = Math.min( exit, Math.max( t1, t2 ) );
+        }
+        if ( dy == 0 ) {
+            if ( y < top || y > bottom ) {
+                return false;
+            }
+        } else {
+            double t1 = ( top - y ) / dy;
+            double t2 = ( bottom - y ) / dy;
+            enter = Math.max( enter, Math.min( t1, t2 ) );
+            exit = Math.min( exit, Math.max( t1, t2 ) );
+        }
+        return enter <= exit;
+    }
+    
+    /*
+     * A* through the grid's free cells, with a cost for each bend.  Kept to
+     * a window around the two nodes and to a budget of cells, so an edge
+     * with no way through gives up quickly.  Each thread routes with its
+     * own maze - cells are tracked in tables stamped per search rather
+     * than cleared.
+     */
+    private final class Maze {
+        private static final int NUM_SLOTS = 1 << 17;
+        private static final int SLOT_MASK = NUM_SLOTS - 1;
+        
+        private static final byte OPEN = 0;
+        private static final byte CLOSED = 1;
+        private static final byte BLOCKED = 2;
+        
+        private static final byte NO_DIRECTION = 4;
+        
+        private final int[] keys = new int[ NUM_SLOTS ];
+        private final int[] stamps = new int[ NUM_SLOTS ];
+        private final int[] costs = new int[ NUM_SLOTS ];
+        private final int[] parents = new int[ NUM_SLOTS ];
+        private final byte[] directions = new byte[ NUM_SLOTS ];
+        private final byte[] states = new byte[ NUM_SLOTS ];
+        private int stamp = 0;
+        private int numSlots = 0;
+        
+        private long[] heap = new long[ 1024 ];
+        private int heapSize = 0;
+        
+        private int minI;
+        private int minJ;
+        private int windowHeight;
+        
+        final double[] route(
+            final int source,
+            final int target,
+            final double sourceX,
+            final double sourceY,
+            final double targetX,
+            final double targetY )
+        {
+            int startI = cell( sourceX );
+            int startJ = cell( sourceY );
+            int goalI = cell( targetX );
+            int goalJ = cell( targetY );
+            
+            this.minI = Math.min( startI, goalI ) - WINDOW_PADDING;
+            this.minJ = Math.min( startJ, goalJ ) - WINDOW_PADDING;
+            int windowWidth = Math.max( startI, goalI ) + WINDOW_PADDING - this.minI + 1;
+            this.windowHeight = Math.max( startJ, goalJ ) + WINDOW_PADDING - this.minJ + 1;
+            if ( (long)windowWidth * this.windowHeight > MAX_WINDOW_CELLS ) {
+                return null;
+            }
+            
+            if ( ++this.stamp == 0 ) {
+                Arrays.fill( this.stamps, 0 );
+                this.stamp = 1;
+            }
+            this.numSlots = 0;
+            this.heapSize = 0;
+            
+            int start = this.slot( startI, startJ );
+            this.states[ start ] = OPEN;
+            this.costs[ start ] = 0;
+            this.directions[ start ] = NO_DIRECTION;
+            this.push( start, distance( startI, startJ, goalI, goalJ ), 0 );
+            
+            int numExpansions = 0;
+            while ( this.heapSize != 0 ) {
+                int slot = this.pop();
+                if ( this.states[ slot ] == CLOSED ) {
+                    continue;
+                }
+                this.states[ slot ] = CLOSED;
+                
+                int i = this.i( slot );
+                int j = this.j( slot );
+                if ( i == goalI && j == goalJ ) {
+                    return this.path( slot, sourceX, sourceY, targetX, targetY );
+                }
+                if ( ++numExpansions > MAX_EXPANSIONS ) {
+                    return null;
+                }
+                
+                for ( byte direction = 0; direction < 4; ++direction ) {
+                    int nextI = i + ( direction == 0 ? 1 : direction == 1 ? -1 : 0 );
+                    int nextJ = j + ( direction == 2 ? 1 : direction == 3 ? -1 : 0 );
+                    if ( nextI < this.minI || nextI >= this.minI + windowWidth ||
+                        nextJ < this.minJ || nextJ >= this.minJ + this.windowHeight )
+                    {
+                        continue;
+                    }
+                    
+                    int cost = this.costs[ slot ] + 1;
+                    if ( this.directions[ slot ] != direction &&
+                        this.directions[ slot ] != NO_DIRECTION )
+                    {
+                        cost += BEND_COST;
+                    }
+                    
+                    int next = this.find( nextI, nextJ );
+                    if ( next < 0 ) {
+                        if ( this.numSlots * 2 > NUM_SLOTS ) {
+                            return null;
+                        }
+                        next = this.slot( nextI, nextJ );
+                        if ( ! YedEdgeRouter.this.isFree( nextI, nextJ, source, target ) ) {
+                            this.states[ next ] = BLOCKED;
+                            continue;
+                        }
+                        this.states[ next ] = OPEN;
+                    } else if ( this.states[ next ] != OPEN || cost >= this.costs[ next ] ) {
+                        continue;
+                    }
+                    
+                    this.costs[ next ] = cost;
+                    this.parents[ next ] = slot;
+                    this.directions[ next ] = direction;
+                    this.push( next, cost + distance( nextI, nextJ, goalI, goalJ ), cost );
+                }
+            }
+            return null;
+        }
+        
+        // the ends, then a bend at each cell where the direction changes
+        private final double[] path(
+            final int goal,
+            final double sourceX,
+            final double sourceY,
+            final double targetX,
+            final double targetY )
+        {
+            ArrayList< Integer > bends = new ArrayList< Integer >();
+            int slot = goal;
+            while ( this.directions[ slot ] != NO_DIRECTION ) {
+                int parent = this.parents[ slot ];
+                if ( this.directions[ parent ] != NO_DIRECTION &&
+                    this.directions[ parent ] != this.directions[ slot ] )
+                {
+                    bends.add( parent );
+                }
+                slot = parent;
+            }
+            
+            double[] route = new double[ 4 + bends.size() * 2 ];
+            route[ 0 ] = center( this.i( slot ) ) - sourceX;
+            route[ 1 ] = center( this.j( slot ) ) - sourceY;
+            route[ 2 ] = center( this.i( goal ) ) - targetX;
+            route[ 3 ] = center( this.j( goal ) ) - targetY;
+            for ( int k = 0; k < bends.size(); ++k ) {
+                int bend = bends.get( bends.size() - 1 - k );
+                route[ 4 + k * 2 ] = center( this.i( bend ) );
+                route[ 5 + k * 2 ] = center( this.j( bend ) );
+            }
+            return route;
+        }
+        
+        private final int key( final int i, final int j ) {
+            return ( i - this.minI ) * this.windowHeight + ( j - this.minJ );
+        }
+        
+        private final int i( final int slot ) {
+            return this.keys[ slot ] / this.windowHeight + this.minI;
+        }
+        
+        private final int j( final int slot ) {
+            return this.keys[ slot ] % this.windowHeight + this.minJ;
+        }
+        
+        // the cell's slot - or -1 if this search has not come to it yet
+        private final int find( final int i, final int j ) {
+            int key = this.key( i, j );
+            for ( int slot = TileIndex.mix( key ) & SLOT_MASK;
+                this.stamps[ slot ] == this.stamp;
+                slot = ( slot + 1 ) & SLOT_MASK )
+            {
+                if ( this.keys[ slot ] == key ) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+        
+        private final int slot( final int i, final int j ) {
+            int key = this.key( i, j );
+            int slot = TileIndex.mix( key ) & SLOT_MASK;
+            while ( this.stamps[ slot ] == this.stamp ) {
+                slot = ( slot + 1 ) & SLOT_MASK;
+            }
+            this.stamps[ slot ] = this.stamp;
+            this.keys[ slot ] = key;
+            ++this.numSlots;
+            return slot;
+        }
+        
+        /*
+         * Ordered by estimate, then by longest cost so far - which heads
+         * for the goal rather than widening across equally good cells.
+         */
+        private final void push( final int slot, final int estimate, final int cost ) {
+            if ( this.heapSize == this.heap.length ) {
+                this.heap = Arrays.copyOf( this.heap, this.heapSize * 2 );
+            }
+            long entry =
+                ( (long)estimate << 32 ) |
+                ( (long)( 0x7FFF - Math.min( cost, 0x7FFF ) ) << 17 ) |
+                slot;
+            
+            int pos = this.heapSize++;
+            while ( pos > 0 ) {
+                int parent = ( pos - 1 ) >>> 1;
+                if ( this.heap[ parent ] <= entry ) {
+                    break;
+                }
+                this.heap[ pos ] = this.heap[ parent ];
+                pos = parent;
+            }
+            this.heap[ pos ] = entry;
+        }
+        
+        private final int pop() {
+            long top = this.heap[ 0 ];
+            long last = this.heap[ --this.heapSize ];
+            
+            int pos = 0;
+            int half = this.heapSize >>> 1;
+            while ( pos < half ) {
+                int child = pos * 2 + 1;
+                if ( child + 1 < this.heapSize && this.heap[ child + 1 ] < this.heap[ child ] ) {
+                    ++child;
+                }
+                if ( last <= this.heap[ child ] ) {
+                    break;
+                }
+                this.heap[ pos ] = this.heap[ child ];
+                pos = child;
+            }
+            if ( this.heapSize != 0 ) {
+                this.heap[ pos ] = last;
+            }
+            return (int)( top & SLOT_MASK );
+        }
+    }
+    
+    // whether the middle of the cell is clear of nodes - but source and target
+    private final boolean isFree(
+        final int i,
+        final int j,
+        final int source,
+        final int target )
+    {
+        double x = center( i );
+        double y = center( j );
+        long tile = TileIndex.tile( tile( x ), tile( y ) );
+        for ( int entry = this.index.first( tile );
+            entry >= 0;
+            entry = this.index.next( entry ) )
+        {
+            int node = this.index.node( entry );
+            if ( node != source && node != target &&
+                x >= this.xs[ node ] - MARGIN &&
+                x <= this.xs[ node ] + this.widths[ node ] + MARGIN &&
+                y >= this.ys[ node ] - MARGIN &&
+                y <= this.ys[ node ] + this.heights[ node ] + MARGIN )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static final int distance(
+        final int i,
+        final int j,
+        final int goalI,
+        final int goalJ )
+    {
+        // off both of the goal's lines, there is at least one more bend
+        int distance = Math.abs( goalI - i ) + Math.abs( goalJ - j );
+        return ( i != goalI && j != goalJ ) ? distance + BEND_COST : distance;
+    }
+    
+    private static final int cell( final double position ) {
+        return (int)Math.floor( position / GRID_SIZE );
+    }
+    
+    private static final double center( final int cell ) {
+        return ( cell + 0.5 ) * GRID_SIZE;
+    }
+    
+    private final TileIndex buildIndex() {
+        TileIndex index = new TileIndex();
+        for ( int node = 0; node < this.numNodes; ++node ) {
+            if ( this.known[ node ] ) {
+                int toX = tile( this.xs[ node ] + this.widths[ node ] + MARGIN );
+                int toY = tile( this.ys[ node ] + this.heights[ node ] + MARGIN );
+                for ( int i = tile( this.xs[ node ] - MARGIN ); i <= toX; ++i ) {
+                    for ( int j = tile( this.ys[ node ] - MARGIN ); j <= toY; ++j ) {
+                        index.add( TileIndex.tile( i, j ), node );
+                    }
+                }
+            }
+        }
+        return index;
+    }
+    
+    private static final int tile( final double position ) {
+        return (int)Math.floor( position / TILE_SIZE );
+    }
+    
+    @Override
+    public final void close() {
+        this.mazes.clear();
+        if ( this.shutdown ) {
+            this.executor.shutdown();
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package net.dougqh.graphml.yed;
 
 import java.awt.Color;
+import java.io.IOException;
 import java.net.URL;
+import java.util.List;
 
 import net.dougqh.graphml.GraphmlExtension;
 import net.dougqh.graphml.GraphmlIoException;
@@ -17,6 +19,13 @@ public final class YedGraphmlExtension
     private static final String URI = "http://www.yworks.com/xml/graphml";
     
     private Geometry geometry = null;
+    private YedLayout layout = null;
+    private YedEdgeRouter router = null;
+    
+    // the routes of the batch of edges being written
+    private List< ? extends Edge > routedEdges = null;
+    private double[][] routes = null;
+    private int nextRoute = 0;
     
     public YedGraphmlExtension( final GraphmlWriter graphmlWriter ) {
         super( graphmlWriter );
@@ -98,9 +107,13 @@ public final class YedGraphmlExtension
     public final void startUmlClassNode() throws GraphmlIoException {
         this.startData( "d3" );        
         this.startYed( "UMLClassNode" );
+        
+        this.geometry = new EstimatedGeometry();
     }
     
     public final void endUmlClassNode() throws GraphmlIoException {
+        this.geometry( this.geometry );
+        
         this.endYed();
         this.endData();
     }
@@ -113,16 +126,44 @@ public final class YedGraphmlExtension
         this.geometry = new FixedGeometry( width, height );
     }
     
+    public final void geometry(
+        final double x,
+        final double y,
+        final double width,
+        final double height )
+        throws GraphmlIoException
+    {
+        this.geometry = new FixedGeometry( width, height );
+        this.geometry.x = x;
+        this.geometry.y = y;
+    }
+    
+    final void layout( final YedLayout layout ) {
+        this.layout = layout;
+    }
+    
+    final YedLayout layout() {
+        return this.layout;
+    }
+    
+    final void router( final YedEdgeRouter router ) {
+        this.router = router;
+    }
+    
+    final YedEdgeRouter router() {
+        return this.router;
+    }
+    
     private final void geometry( final Geometry geometry )
         throws GraphmlIoException
     {
         if ( ! ( this.geometry instanceof NullGeometry ) ) {
-            this.startYed( "Geometry" ).
+            this.startYedLeaf( "Geometry" ).
                 attrib( "height", geometry.getHeight() ).
                 attrib( "width", geometry.getWidth() ).
-                attrib( "x", 0.0 ).
-                attrib( "y", 0.0 ).
-                endYed();
+                optional( "x", geometry.x, 0.0 ).
+                optional( "y", geometry.y, 0.0 ).
+                endYedLeaf();
         }
     }
     
@@ -146,10 +187,10 @@ public final class YedGraphmlExtension
     }
     
     public final void fill( final String hexString ) throws GraphmlIoException {
-        this.startYed( "Fill" ).
+        this.startYedLeaf( "Fill" ).
             attrib( "color", hexString ).
-            attrib( "transparent", false ).
-            endYed();
+            optional( "transparent", false, false ).
+            endYedLeaf();
     }
     
     public final void borderStyle( final int lineWidth ) throws GraphmlIoException {
@@ -165,11 +206,11 @@ public final class YedGraphmlExtension
         final int lineWidth )
         throws GraphmlIoException
     {
-        this.startYed( "BorderStyle" ).
+        this.startYedLeaf( "BorderStyle" ).
             attrib( "color", "#000000" ).
             attrib( "type", lineStyle.getId() ).
             attrib( "width", lineWidth ).
-            endYed();
+            endYedLeaf();
     }
     
     public final void nodeLabel( final String text ) throws GraphmlIoException {
@@ -181,40 +222,47 @@ public final class YedGraphmlExtension
     {
         if ( visible ) {
             this.geometry.addLine();
+            this.geometry.adjustCharacterWidth( text.length() );
         }
         
+        // yEd sizes the label itself with the "content" policy, so the
+        // width is only a placeholder and can be left out in compact mode
         this.startYed( "NodeLabel" ).
-            attrib( "alignment", "center" ).
-            attrib( "autoSizePolicy", "content" ).
-            attrib( "borderDistance", 0.0 ).
-            attrib( "fontFamily", "Dialog" ).
-            attrib( "fontSize", 12 ).
-            attrib( "fontStyle", "plain" ).
-            attrib( "hasBackgroundColor", false ).
-            attrib( "hasLineColor", false ).
+            optional( "alignment", "center", "center" ).
+            optional( "autoSizePolicy", "content", "content" ).
+            optional( "borderDistance", 0.0, 0.0 ).
+            optional( "fontFamily", "Dialog", "Dialog" ).
+            optional( "fontSize", 12, 12 ).
+            optional( "fontStyle", "plain", "plain" ).
+            optional( "hasBackgroundColor", false, false ).
+            optional( "hasLineColor", false, false ).
             attrib( "modelName", "internal" ).
             attrib( "modelPosition", "c" ).
-            attrib( "textColor", "#000000" ).
-            attrib( "visible", visible ).
-            attrib( "width", 30.0 ).
-            attrib( "x", 0.0 ).
-            attrib( "y", 0.0 ).
+            optional( "textColor", "#000000", "#000000" ).
+            optional( "visible", visible, true ).
+            optional( "width", 30.0, 30.0 ).
+            optional( "x", 0.0, 0.0 ).
+            optional( "y", 0.0, 0.0 ).
             characters( text ).
             endYed();
     }
     
     public final void shape( final YedShape shape ) throws GraphmlIoException {
-        this.startYed( "Shape" ).
+        this.startYedLeaf( "Shape" ).
             attrib( "type", shape.getId() ).
-            endYed();
+            endYedLeaf();
     }
     
     public final void startUml() throws GraphmlIoException {
+        this.startUml( "" );
+    }
+    
+    public final void startUml( final String stereotype ) throws GraphmlIoException {
         this.startYed( "UML" ).
             attrib( "clipContent", true ).
             attrib( "constraint", "" ).
             attrib( "omitDetails", false ).
-            attrib( "stereotype", "" ).
+            attrib( "stereotype", stereotype ).
             attrib( "use3DEffect", true );
     }
     
@@ -230,19 +278,112 @@ public final class YedGraphmlExtension
         this.startYed( "MethodLabel" ).characters( method ).endYed();
     }
     
+    /*
+     * yEd reads a class's members from a single label each - one member
+     * per line.
+     */
+    public final void attributes( final List< String > attributes )
+        throws GraphmlIoException
+    {
+        this.startYed( "AttributeLabel" ).characters( this.lines( attributes ) ).endYed();
+    }
+    
+    public final void methods( final List< String > methods )
+        throws GraphmlIoException
+    {
+        this.startYed( "MethodLabel" ).characters( this.lines( methods ) ).endYed();
+    }
+    
+    private final String lines( final List< String > lines ) {
+        StringBuilder builder = new StringBuilder();
+        for ( String line : lines ) {
+            this.geometry.addLine();
+            this.geometry.adjustCharacterWidth( line.length() );
+            
+            if ( builder.length() != 0 ) {
+                builder.append( '\n' );
+            }
+            builder.append( line );
+        }
+        return builder.toString();
+    }
+    
     public final void endUml() throws GraphmlIoException {
         this.endYed();
     }
     
     @Override
     protected final void edge( final Edge edge ) throws GraphmlIoException {
-        if ( Boolean.TRUE.equals( edge.directed() ) ) {
+        double[] route = ( this.routes == null ) ? null : this.route( edge );
+        if ( route != null ) {
+            this.startPolyLineEdge();
+            this.path( route );
+            if ( Boolean.TRUE.equals( edge.directed() ) ) {
+                this.arrows( YedArrowType.NONE, YedArrowType.STANDARD );
+            }
+            this.endPolyLineEdge();
+        } else if ( Boolean.TRUE.equals( edge.directed() ) ) {
             this.startPolyLineEdge();
             this.arrows( YedArrowType.NONE, YedArrowType.STANDARD );
             this.endPolyLineEdge();
         }
     }
     
+    @Override
+    protected final boolean batchesEdges() {
+        return ( this.router != null );
+    }
+    
+    @Override
+    protected final void prepareEdges( final List< ? extends Edge > edges )
+        throws IOException
+    {
+        this.routedEdges = edges;
+        this.routes = this.router.route( edges, this.graphmlWriter.isCompact() );
+        this.nextRoute = 0;
+    }
+    
+    /*
+     * The route for edge - edges dropped as unresolved are never
+     * written, so their routes are skipped over.
+     */
+    private final double[] route( final Edge edge ) {
+        while ( this.nextRoute < this.routes.length ) {
+            Edge routedEdge = this.routedEdges.get( this.nextRoute );
+            double[] route = this.routes[ this.nextRoute++ ];
+            if ( same( routedEdge.sourceId(), edge.sourceId() ) &&
+                same( routedEdge.targetId(), edge.targetId() ) )
+            {
+                return route;
+            }
+        }
+        return null;
+    }
+    
+    // edge( String, String ) accepts a null id, and the edge is still routed
+    private static final boolean same( final String lhs, final String rhs ) {
+        return ( lhs == null ) ? ( rhs == null ) : lhs.equals( rhs );
+    }
+    
+    /*
+     * route is as YedEdgeRouter gives it - the ends' offsets from the
+     * centers of the nodes, then the bends, which are absolute.
+     */
+    final void path( final double[] route ) throws GraphmlIoException {
+        this.startYed( "Path" ).
+            optional( "sx", route[ 0 ], 0.0 ).
+            optional( "sy", route[ 1 ], 0.0 ).
+            optional( "tx", route[ 2 ], 0.0 ).
+            optional( "ty", route[ 3 ], 0.0 );
+        for ( int i = 4; i < route.length; i += 2 ) {
+            this.startYedLeaf( "Point" ).
+                attrib( "x", route[ i ] ).
+                attrib( "y", route[ i + 1 ] ).
+                endYedLeaf();
+        }
+        this.endYed();
+    }
+    
     final void startPolyLineEdge() throws GraphmlIoException {
         this.startData( "d6" );
         this.startYed( "PolyLineEdge" );
@@ -258,10 +399,10 @@ public final class YedGraphmlExtension
         final YedArrowType targetType )
         throws GraphmlIoException
     {
-        this.startYed( "Arrows" ).
-            attrib( "source", sourceType.getId() ).
+        this.startYedLeaf( "Arrows" ).
+            optional( "source", sourceType.getId(), YedArrowType.NONE.getId() ).
             attrib( "target", targetType.getId() ).
-            endYed();
+            endYedLeaf();
     }
     
     private final YedGraphmlExtension startYed( final String element ) throws GraphmlIoException {
@@ -272,9 +413,36 @@ public final class YedGraphmlExtension
         return this.end();
     }
     
+    private final YedGraphmlExtension startYedLeaf( final String element ) throws GraphmlIoException {
+        return this.startLeaf( PREFIX, element, URI );
+    }
+    
+    private final YedGraphmlExtension endYedLeaf() throws GraphmlIoException {
+        return this.endLeaf();
+    }
+    
+    /*
+     * Writes the attribute unless the writer is in compact mode and value
+     * is what yEd assumes when the attribute is missing.
+     */
+    private final YedGraphmlExtension optional(
+        final String name,
+        final Object value,
+        final Object defaultValue )
+        throws GraphmlIoException
+    {
+        if ( this.graphmlWriter.isCompact() && value.equals( defaultValue ) ) {
+            return this;
+        } else {
+            return this.attrib( name, value );
+        }
+    }
+    
     private abstract class Geometry {
         protected int numLines = 0;
         protected int maxNumChars = 0;
+        protected double x = 0;
+        protected double y = 0;
         
         abstract double getWidth();
         abstract double getHeight();
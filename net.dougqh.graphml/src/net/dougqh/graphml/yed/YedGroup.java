@@ -2,6 +2,7 @@ package net.dougqh.graphml.yed;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 
 import net.dougqh.graphml.GraphmlIoException;
 import net.dougqh.graphml.GraphmlWriter;
@@ -9,7 +10,7 @@ import net.dougqh.graphml.GraphmlWriter;
 
 
 public final class YedGroup extends YedNode< YedGroup > {
-    private final ArrayList< YedNode< ? > > nodes = new ArrayList< YedNode< ? > >();
+    final ArrayList< YedNode< ? > > nodes = new ArrayList< YedNode< ? > >();
     
     public YedGroup() {}
     
@@ -27,6 +28,11 @@ public final class YedGroup extends YedNode< YedGroup > {
     	return this;
     }
         
+    /*
+     * Written with an explicit stack rather than by recursing through
+     * write, so arbitrarily deep group hierarchies do not overflow the
+     * thread's stack.
+     */
     @Override
     protected final void write( final GraphmlWriter graphmlWriter )
         throws GraphmlIoException
@@ -35,28 +41,66 @@ public final class YedGroup extends YedNode< YedGroup > {
     		return;
     	}
     	
+    	ArrayList< YedGroup > groups = new ArrayList< YedGroup >();
+    	ArrayList< Iterator< YedNode< ? > > > children =
+    		new ArrayList< Iterator< YedNode< ? > > >();
+    	
+    	this.writeStart( graphmlWriter );
+    	groups.add( this );
+    	children.add( this.nodes.iterator() );
+    	
+    	while ( ! groups.isEmpty() ) {
+    		int top = groups.size() - 1;
+    		Iterator< YedNode< ? > > iter = children.get( top );
+    		if ( ! iter.hasNext() ) {
+    			groups.remove( top ).writeEnd( graphmlWriter );
+    			children.remove( top );
+    		} else {
+    			YedNode< ? > node = iter.next();
+    			if ( node instanceof YedGroup ) {
+    				YedGroup group = (YedGroup)node;
+    				if ( graphmlWriter.getId( group ) == null ) {
+    					group.writeStart( graphmlWriter );
+    					groups.add( group );
+    					children.add( group.nodes.iterator() );
+    				}
+    			} else {
+    				node.write( graphmlWriter );
+    			}
+    		}
+    	}
+    }
+    
+    final void writeStart( final GraphmlWriter graphmlWriter )
+        throws GraphmlIoException
+    {
         String id = graphmlWriter.startNode( this );
-        if ( this.description != null ) {
-            graphmlWriter.yed().description( this.description );
+        if ( graphmlWriter.isForYed() ) {
+            if ( this.description != null ) {
+                graphmlWriter.yed().description( this.description );
+            }
+            if ( this.url != null ) {
+                graphmlWriter.yed().url( this.url );
+            }
+            graphmlWriter.yed().startShapeNode();
+            if ( this.label != null ) {
+                graphmlWriter.yed().nodeLabel( this.label );
+            }
+            graphmlWriter.yed().endShapeNode();
         }
-        if ( this.url != null ) {
-            graphmlWriter.yed().url( this.url );
+        if ( this.ports != null ) {
+            graphmlWriter.ports( this.ports );
         }
-        graphmlWriter.yed().startShapeNode();
-        if ( this.label != null ) {
-            graphmlWriter.yed().nodeLabel( this.label );
-        }
-        graphmlWriter.yed().endShapeNode();
         
         graphmlWriter.startGraph();
-        for ( YedNode< ? > node : this.nodes ) {
-            node.write( graphmlWriter );
-        }
+        this.setId( id );
+    }
+    
+    final void writeEnd( final GraphmlWriter graphmlWriter )
+        throws GraphmlIoException
+    {
         graphmlWriter.endGraph();
-        
         graphmlWriter.endNode();
-        
-        this.setId( id );
     }
     
     @Override
@@ -81,6 +125,8 @@ public final class YedGroup extends YedNode< YedGroup > {
     		return true;
     	} else if ( ! ( obj instanceof YedGroup ) ) {
     		return false;
+    	} else if ( this.associatedObject == null ) {
+    		return false;
     	} else {
     		YedGroup that = (YedGroup)obj;
     		return equals(
@@ -0,0 +1,691 @@
+package net.dougqh.graphml.yed;
+
+import java.awt.Dimension;
+import java.awt.geom.Point2D;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import net.dougqh.graphml.GraphmlFragmentKeys;
+import net.dougqh.graphml.GraphmlIoException;
+import net.dougqh.graphml.GraphmlWriter;
+
+/*
+ * Node positions kept from one export to the next, keyed by each node's
+ * associated object - by String.valueOf of it, so that has to be the
+ * same from run to run.
+ *
+ * Each run adds its nodes and connects them.  Nodes that already had a
+ * position stay there - they are pinned - and only new nodes are placed,
+ * each as near as there is room to the middle of its placed neighbors.
+ * So a re-export does not move what users have already seen, and placing
+ * costs in proportion to the new nodes rather than to the whole graph.
+ * Nodes not added again are dropped when the layout is written.
+ */
+public final class YedLayout {
+    private static final int MAGIC = 0x594C5931;
+    
+    // what yEd uses for a node without a size
+    private static final double DEFAULT_SIZE = 30.0;
+    private static final double SPACING = 20.0;
+    
+    // occupied space is tracked in cells of this size
+    private static final double CELL = 10.0;
+    // beyond this many cells from its neighbors, a node goes with the unconnected ones
+    private static final int MAX_RADIUS = 24;
+    // pinned nodes are only marked in the cells of the tiles - 16 x 16 cells - searched
+    private static final int TILE_SHIFT = 4;
+    
+    private final HashMap< String, Node > nodesByKey = new HashMap< String, Node >();
+    private final ArrayList< Node > nodes = new ArrayList< Node >();
+    private final ArrayList< Node > newNodes = new ArrayList< Node >();
+    private int numPlaced = 0;
+    
+    public YedLayout() {}
+    
+    // the layout written to file - or an empty layout if there is none yet
+    public static final YedLayout read( final File file ) throws IOException {
+        YedLayout layout = new YedLayout();
+        if ( ! file.isFile() ) {
+            return layout;
+        }
+        
+        DataInputStream in = new DataInputStream( new BufferedInputStream(
+            new FileInputStream( file ) ) );
+        try {
+            if ( in.readInt() != MAGIC ) {
+                throw new IOException( "not a layout file: " + file );
+            }
+            int size = in.readInt();
+            for ( int i = 0; i < size; ++i ) {
+                Node node = new Node( in.readUTF() );
+                node.x = in.readDouble();
+                node.y = in.readDouble();
+                node.width = in.readDouble();
+                node.height = in.readDouble();
+                node.placed = true;
+                layout.nodesByKey.put( node.key, node );
+            }
+        } finally {
+            in.close();
+        }
+        return layout;
+    }
+    
+    /*
+     * Adds a node to this run's graph, sized as it will be written - its
+     * style's dimension, if it has one.  Groups are left for yEd to size.
+     */
+    public final YedLayout add( final YedNode< ? > node ) {
+        if ( node == null ) throw new IllegalArgumentException( "node" );
+        
+        Dimension dimension = null;
+        if ( node instanceof YedBasicNode ) {
+            dimension = ( (YedBasicNode)node ).getStyle().getDimension();
+        }
+        if ( dimension == null ) {
+            return this.add( associatedObject( node ), DEFAULT_SIZE, DEFAULT_SIZE );
+        } else {
+            return this.add( associatedObject( node ), dimension.width, dimension.height );
+        }
+    }
+    
+    public final YedLayout add(
+        final Object associatedObject,
+        final double width,
+        final double height )
+    {
+        if ( associatedObject == null ) throw new IllegalArgumentException( "associatedObject" );
+        if ( width < 0 ) throw new IllegalArgumentException( "width" );
+        if ( height < 0 ) throw new IllegalArgumentException( "height" );
+        
+        String key = String.valueOf( associatedObject );
+        Node node = this.nodesByKey.get( key );
+        if ( node == null ) {
+            node = new Node( key );
+            this.nodesByKey.put( key, node );
+        }
+        if ( ! node.added ) {
+            node.added = true;
+            this.nodes.add( node );
+            if ( ! node.placed ) {
+                this.newNodes.add( node );
+            }
+        }
+        node.width = width;
+        node.height = height;
+        return this;
+    }
+    
+    public final YedLayout connect(
+        final YedNode< ? > fromNode,
+        final YedNode< ? > toNode )
+    {
+        return this.connect( associatedObject( fromNode ), associatedObject( toNode ) );
+    }
+    
+    /*
+     * Both nodes have to have been added - edges between nodes that are
+     * both already placed are not kept, since only new nodes need them.
+     */
+    public final YedLayout connect(
+        final Object fromAssociatedObject,
+        final Object toAssociatedObject )
+    {
+        Node from = this.addedNode( fromAssociatedObject );
+        Node to = this.addedNode( toAssociatedObject );
+        if ( from == to || ( from.placed && to.placed ) ) {
+            return this;
+        }
+        
+        from.addNeighbor( to );
+        to.addNeighbor( from );
+        return this;
+    }
+    
+    // pins the node at x, y - in this run and the ones after
+    public final YedLayout pin(
+        final Object associatedObject,
+        final double x,
+        final double y )
+    {
+        Node node = this.addedNode( associatedObject );
+        node.x = x;
+        node.y = y;
+        if ( ! node.placed ) {
+            node.placed = true;
+            this.newNodes.remove( node );
+        }
+        return this;
+    }
+    
+    /*
+     * Unpins the node, so it is placed again like a new node - connect it
+     * after releasing it, so its neighbors are known.
+     */
+    public final YedLayout release( final Object associatedObject ) {
+        Node node = this.addedNode( associatedObject );
+        if ( node.placed ) {
+            node.placed = false;
+            this.newNodes.add( node );
+        }
+        return this;
+    }
+    
+    public final int size() {
+        return this.nodes.size();
+    }
+    
+    // how many nodes the last call to place had to place
+    public final int getNumPlaced() {
+        return this.numPlaced;
+    }
+    
+    // the top left corner of the node - or null if it has not been added
+    public final Point2D getPosition( final Object associatedObject ) {
+        Node node = this.nodesByKey.get( String.valueOf( associatedObject ) );
+        if ( node == null || ! node.added ) {
+            return null;
+        }
+        
+        this.place();
+        return new Point2D.Double( node.x, node.y );
+    }
+    
+    /*
+     * Places the new nodes - done by getPosition, the writer and write as
+     * needed, so calling it directly is only needed to time it.
+     */
+    public final void place() {
+        if ( this.newNodes.isEmpty() ) {
+            return;
+        }
+        
+        new Placement().place( this.newNodes );
+        
+        this.numPlaced = this.newNodes.size();
+        // placed neighbors hold edges back to the new nodes, too
+        for ( Node node : this.newNodes ) {
+            if ( node.neighbors != null ) {
+                for ( Node neighbor : node.neighbors ) {
+                    neighbor.neighbors = null;
+                    neighbor.searchRadius = 0;
+                }
+                node.neighbors = null;
+            }
+            node.queued = false;
+            node.searchRadius = 0;
+        }
+        this.newNodes.clear();
+    }
+    
+    public final void write( final File file ) throws IOException {
+        this.place();
+        
+        DataOutputStream out = new DataOutputStream( new BufferedOutputStream(
+            new FileOutputStream( file ) ) );
+        try {
+            out.writeInt( MAGIC );
+            out.writeInt( this.nodes.size() );
+            for ( Node node : this.nodes ) {
+                out.writeUTF( node.key );
+                out.writeDouble( node.x );
+                out.writeDouble( node.y );
+                out.writeDouble( node.width );
+                out.writeDouble( node.height );
+            }
+        } finally {
+            out.close();
+        }
+    }
+    
+    final void writeGeometry( final YedNode< ? > node, final YedGraphmlExtension yed )
+        throws GraphmlIoException
+    {
+        Node layoutNode = this.find( node );
+        if ( layoutNode != null ) {
+            yed.geometry( layoutNode.x, layoutNode.y, layoutNode.width, layoutNode.height );
+        }
+    }
+    
+    final void addToRouter(
+        final YedNode< ? > node,
+        final String id,
+        final YedEdgeRouter router,
+        final boolean compact )
+    {
+        Node layoutNode = this.find( node );
+        int nodeNumber = GraphmlWriter.nodeNumber( compact, id );
+        if ( layoutNode != null && nodeNumber >= 0 ) {
+            router.node( nodeNumber, layoutNode.x, layoutNode.y, layoutNode.width, layoutNode.height );
+        }
+    }
+    
+    // the position is part of the node's element, so it is part of its key
+    final long fragmentKey( final YedNode< ? > node, final long hash ) {
+        Node layoutNode = this.find( node );
+        if ( layoutNode == null ) {
+            return hash;
+        }
+        
+        long h = hash;
+        h = hashDouble( h, layoutNode.x );
+        h = hashDouble( h, layoutNode.y );
+        h = hashDouble( h, layoutNode.width );
+        h = hashDouble( h, layoutNode.height );
+        return h;
+    }
+    
+    private static final long hashDouble( final long hash, final double value ) {
+        long bits = Double.doubleToLongBits( value );
+        long h = GraphmlFragmentKeys.hash( hash, (int)bits );
+        return GraphmlFragmentKeys.hash( h, (int)( bits >>> 32 ) );
+    }
+    
+    private final Node find( final YedNode< ? > node ) {
+        if ( node.associatedObject == null ) {
+            return null;
+        }
+        
+        Node layoutNode = this.nodesByKey.get( String.valueOf( node.associatedObject ) );
+        if ( layoutNode == null || ! layoutNode.added ) {
+            return null;
+        }
+        this.place();
+        return layoutNode;
+    }
+    
+    private final Node addedNode( final Object associatedObject ) {
+        Node node = this.nodesByKey.get( String.valueOf( associatedObject ) );
+        if ( node == null || ! node.added ) {
+            throw new IllegalStateException( "not added: " + associatedObject );
+        }
+        return node;
+    }
+    
+    private static final Object associatedObject( final YedNode< ? > node ) {
+        if ( node.associatedObject == null ) {
+            throw new IllegalArgumentException( "node has no associated object" );
+        }
+        return node.associatedObject;
+    }
+    
+    private static final class Node {
+        final String key;
+        double x;
+        double y;
+        double width;
+        double height;
+        boolean placed = false;
+        boolean added = false;
+        boolean queued = false;
+        ArrayList< Node > neighbors = null;
+        // rings around this node already full when its last neighbor was placed
+        int searchRadius = 0;
+        
+        Node( final String key ) {
+            this.key = key;
+        }
+        
+        final void addNeighbor( final Node node ) {
+            if ( this.neighbors == null ) {
+                this.neighbors = new ArrayList< Node >( 4 );
+            }
+            this.neighbors.add( node );
+        }
+    }
+    
+    /*
+     * One round of placing new nodes - breadth first from the placed ones,
+     * so each new node has at least one placed neighbor to go next to.
+     * Nodes with none are laid out in rows below everything else, and
+     * their new neighbors are placed around them in turn.
+     */
+    private final class Placement {
+        private final CellSet occupied = new CellSet();
+        private final TileIndex pinnedByTile = new TileIndex();
+        private final CellSet markedTiles = new CellSet();
+        private final ArrayDeque< Node > queue = new ArrayDeque< Node >();
+        
+        private double rowStartX = 0;
+        private double rowWidth = 0;
+        private double cursorX = 0;
+        private double cursorY = 0;
+        private double rowHeight = 0;
+        
+        final void place( final ArrayList< Node > newNodes ) {
+            double minX = Double.MAX_VALUE;
+            double maxX = -Double.MAX_VALUE;
+            double maxY = -Double.MAX_VALUE;
+            ArrayList< Node > nodes = YedLayout.this.nodes;
+            for ( int i = 0; i < nodes.size(); ++i ) {
+                Node node = nodes.get( i );
+                if ( node.placed ) {
+                    this.addToTiles( node, i );
+                    minX = Math.min( minX, node.x );
+                    maxX = Math.max( maxX, node.x + node.width );
+                    maxY = Math.max( maxY, node.y + node.height );
+                }
+            }
+            
+            // rows about as wide as the new nodes would be in a square
+            double area = 0;
+            for ( Node node : newNodes ) {
+                area += ( node.width + SPACING ) * ( node.height + SPACING );
+            }
+            if ( minX == Double.MAX_VALUE ) {
+                this.rowStartX = 0;
+                this.cursorY = 0;
+                this.rowWidth = Math.sqrt( area );
+            } else {
+                this.rowStartX = minX;
+                this.cursorY = maxY + SPACING * 2;
+                this.rowWidth = Math.max( maxX - minX, Math.sqrt( area ) );
+            }
+            this.cursorX = this.rowStartX;
+            
+            for ( Node node : newNodes ) {
+                if ( this.hasPlacedNeighbor( node ) ) {
+                    this.enqueue( node );
+                }
+            }
+            this.drain();
+            
+            for ( Node node : newNodes ) {
+                if ( ! node.placed ) {
+                    this.placeInRow( node );
+                    this.enqueueNeighbors( node );
+                    this.drain();
+                }
+            }
+        }
+        
+        private final void drain() {
+            while ( ! this.queue.isEmpty() ) {
+                Node node = this.queue.poll();
+                if ( ! this.placeNearNeighbors( node ) ) {
+                    this.placeInRow( node );
+                }
+                this.enqueueNeighbors( node );
+            }
+        }
+        
+        private final void enqueue( final Node node ) {
+            if ( ! node.queued ) {
+                node.queued = true;
+                this.queue.add( node );
+            }
+        }
+        
+        private final void enqueueNeighbors( final Node node ) {
+            if ( node.neighbors != null ) {
+                for ( Node neighbor : node.neighbors ) {
+                    if ( ! neighbor.placed ) {
+                        this.enqueue( neighbor );
+                    }
+                }
+            }
+        }
+        
+        private final boolean hasPlacedNeighbor( final Node node ) {
+            if ( node.neighbors != null ) {
+                for ( Node neighbor : node.neighbors ) {
+                    if ( neighbor.placed ) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+        
+        private final boolean placeNearNeighbors( final Node node ) {
+            double sumX = 0;
+            double sumY = 0;
+            int count = 0;
+            Node lastPlaced = null;
+            for ( Node neighbor : node.neighbors ) {
+                if ( neighbor.placed ) {
+                    sumX += neighbor.x + neighbor.width / 2;
+                    sumY += neighbor.y + neighbor.height / 2;
+                    ++count;
+                    lastPlaced = neighbor;
+                }
+            }
+            
+            // the many leaves of a hub all search around the hub, so each
+            // starts where the one before found room rather than
+            // searching the full rings again
+            int minRadius = ( count == 1 ) ? lastPlaced.searchRadius : 0;
+            int radius = this.placeNear(
+                node,
+                sumX / count - node.width / 2,
+                sumY / count - node.height / 2,
+                minRadius,
+                MAX_RADIUS );
+            if ( count == 1 ) {
+                // no room at all - the neighbor's other leaves need not look either
+                lastPlaced.searchRadius = ( radius < 0 ) ? MAX_RADIUS + 1 : radius;
+            }
+            return ( radius >= 0 );
+        }
+        
+        private final void placeInRow( final Node node ) {
+            if ( this.cursorX > this.rowStartX &&
+                this.cursorX + node.width > this.rowStartX + this.rowWidth )
+            {
+                this.cursorX = this.rowStartX;
+                this.cursorY += this.rowHeight + SPACING;
+                this.rowHeight = 0;
+            }
+            
+            // the rows are below everything else, so this rarely searches
+            this.placeNear( node, this.cursorX, this.cursorY, 0, Integer.MAX_VALUE );
+            this.cursorX = node.x + node.width + SPACING;
+            this.rowHeight = Math.max( this.rowHeight, node.y + node.height - this.cursorY );
+        }
+        
+        /*
+         * Searches outward from x, y - ring by ring of cells - for room for
+         * node, taking the nearest spot in the first ring that has one -
+         * returns that ring, or -1 if there was no room up to maxRadius.
+         */
+        private final int placeNear(
+            final Node node,
+            final double x,
+            final double y,
+            final int minRadius,
+            final int maxRadius )
+        {
+            int width = cells( node.width + SPACING );
+            int height = cells( node.height + SPACING );
+            int centerX = (int)Math.floor( ( x - SPACING / 2 ) / CELL );
+            int centerY = (int)Math.floor( ( y - SPACING / 2 ) / CELL );
+            
+            for ( int radius = minRadius; radius <= maxRadius; ++radius ) {
+                this.markTiles(
+                    centerX - radius, centerY - radius,
+                    centerX + radius + width - 1, centerY + radius + height - 1 );
+                
+                int bestX = 0;
+                int bestY = 0;
+                long bestDistance = Long.MAX_VALUE;
+                for ( int dx = -radius; dx <= radius; ++dx ) {
+                    boolean edge = ( dx == -radius || dx == radius );
+                    int step = edge ? 1 : Math.max( 2 * radius, 1 );
+                    for ( int dy = -radius; dy <= radius; dy += step ) {
+                        long distance = (long)dx * dx + (long)dy * dy;
+                        if ( distance < bestDistance &&
+                            this.isFree( centerX + dx, centerY + dy, width, height ) )
+                        {
+                            bestX = centerX + dx;
+                            bestY = centerY + dy;
+                            bestDistance = distance;
+                        }
+                    }
+                }
+                if ( bestDistance != Long.MAX_VALUE ) {
+                    node.x = bestX * CELL + SPACING / 2;
+                    node.y = bestY * CELL + SPACING / 2;
+                    node.placed = true;
+                    this.occupy( node );
+                    return radius;
+                }
+            }
+            return -1;
+        }
+        
+        private final boolean isFree(
+            final int cellX,
+            final int cellY,
+            final int width,
+            final int height )
+        {
+            for ( int i = 0; i < width; ++i ) {
+                for ( int j = 0; j < height; ++j ) {
+                    if ( this.occupied.contains( cell( cellX + i, cellY + j ) ) ) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        
+        // the node and half the spacing around it
+        private final void occupy( final Node node ) {
+            int toX = toCell( node.x + node.width );
+            int toY = toCell( node.y + node.height );
+            for ( int i = fromCell( node.x ); i < toX; ++i ) {
+                for ( int j = fromCell( node.y ); j < toY; ++j ) {
+                    this.occupied.add( cell( i, j ) );
+                }
+            }
+        }
+        
+        /*
+         * Marking every pinned node's cells would cost in proportion to the
+         * whole graph - so they are only bucketed by tile, and marked once a
+         * search gets to their tile.
+         */
+        private final void addToTiles( final Node node, final int index ) {
+            int toX = ( toCell( node.x + node.width ) - 1 ) >> TILE_SHIFT;
+            int toY = ( toCell( node.y + node.height ) - 1 ) >> TILE_SHIFT;
+            for ( int i = fromCell( node.x ) >> TILE_SHIFT; i <= toX; ++i ) {
+                for ( int j = fromCell( node.y ) >> TILE_SHIFT; j <= toY; ++j ) {
+                    this.pinnedByTile.add( cell( i, j ), index );
+                }
+            }
+        }
+        
+        // the tiles with cells from fromX, fromY to toX, toY - inclusive
+        private final void markTiles(
+            final int fromX,
+            final int fromY,
+            final int toX,
+            final int toY )
+        {
+            for ( int i = fromX >> TILE_SHIFT; i <= toX >> TILE_SHIFT; ++i ) {
+                for ( int j = fromY >> TILE_SHIFT; j <= toY >> TILE_SHIFT; ++j ) {
+                    long tile = cell( i, j );
+                    if ( ! this.markedTiles.contains( tile ) ) {
+                        this.markedTiles.add( tile );
+                        
+                        for ( int entry = this.pinnedByTile.first( tile );
+                            entry >= 0;
+                            entry = this.pinnedByTile.next( entry ) )
+                        {
+                            this.occupy( YedLayout.this.nodes.get( this.pinnedByTile.node( entry ) ) );
+                        }
+                    }
+                }
+            }
+        }
+    }
+    
+    // the first cell taken up by a node at position - with half the spacing
+    private static final int fromCell( final double position ) {
+        return (int)Math.floor( ( position - SPACING / 2 ) / CELL );
+    }
+    
+    // the cell after the last one taken up by a node ending at position
+    private static final int toCell( final double position ) {
+        return (int)Math.ceil( ( position + SPACING / 2 ) / CELL );
+    }
+    
+    private static final int cells( final double length ) {
+        return Math.max( (int)Math.ceil( length / CELL ), 1 );
+    }
+    
+    private static final long cell( final int x, final int y ) {
+        return ( (long)x << 32 ) | ( y & 0xFFFFFFFFL );
+    }
+    
+    private static final int mix( final long cell ) {
+        long h = cell * 0x9E3779B97F4A7C15L;
+        return (int)( h ^ ( h >>> 32 ) );
+    }
+    
+    // the occupied cells - a set of longs, without boxing each one
+    private static final class CellSet {
+        private static final long EMPTY = Long.MIN_VALUE;
+        
+        private long[] cells = newCells( 1024 );
+        private int size = 0;
+        
+        final boolean contains( final long cell ) {
+            int mask = this.cells.length - 1;
+            for ( int slot = mix( cell ) & mask; this.cells[ slot ] != EMPTY; slot = ( slot + 1 ) & mask ) {
+                if ( this.cells[ slot ] == cell ) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        final void add( final long cell ) {
+            int mask = this.cells.length - 1;
+            int slot = mix( cell ) & mask;
+            while ( this.cells[ slot ] != EMPTY ) {
+                if ( this.cells[ slot ] == cell ) {
+                    return;
+                }
+                slot = ( slot + 1 ) & mask;
+            }
+            this.cells[ slot ] = cell;
+            if ( ++this.size * 2 > this.cells.length ) {
+                this.rehash();
+            }
+        }
+        
+        private final void rehash() {
+            long[] oldCells = this.cells;
+            this.cells = newCells( oldCells.length * 2 );
+            
+            int mask = this.cells.length - 1;
+            for ( long cell : oldCells ) {
+                if ( cell != EMPTY ) {
+                    int slot = mix( cell ) & mask;
+                    while ( this.cells[ slot ] != EMPTY ) {
+                        slot = ( slot + 1 ) & mask;
+                    }
+                    this.cells[ slot ] = cell;
+                }
+            }
+        }
+        
+        private static final long[] newCells( final int length ) {
+            long[] cells = new long[ length ];
+            Arrays.fill( cells, EMPTY );
+            return cells;
+        }
+        
+    }
+}
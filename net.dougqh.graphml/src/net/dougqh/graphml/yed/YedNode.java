@@ -4,7 +4,9 @@ import java.io.File;
 import java.net.MalformedURLException;
 import java.net.URL;
 
+import net.dougqh.graphml.GraphmlCommand;
 import net.dougqh.graphml.GraphmlIoException;
+import net.dougqh.graphml.GraphmlPorts;
 import net.dougqh.graphml.GraphmlWriter;
 
 
@@ -15,6 +17,7 @@ public abstract class YedNode< ThisType extends YedNode< ThisType > >
     protected String label = null;
     protected String description = null;
     protected URL url = null;
+    protected GraphmlPorts ports = null;
     
     protected Object associatedObject = null;
     
@@ -44,6 +47,12 @@ public abstract class YedNode< ThisType extends YedNode< ThisType > >
         return (ThisType)this;
     }
     
+    @SuppressWarnings( "unchecked" )
+    public final ThisType setPorts( final GraphmlPorts ports ) {
+        this.ports = ports;
+        return (ThisType)this;
+    }
+    
     public final ThisType setFile( final File file ) {
         try {
             return this.setUrl( file.toURI().toURL() );
@@ -61,7 +70,18 @@ public abstract class YedNode< ThisType extends YedNode< ThisType > >
     }
     
     protected abstract void write( final GraphmlWriter graphmlWriter )
-        throws GraphmlIoException;    
+        throws GraphmlIoException;
+    
+    public final GraphmlCommand toCommand() {
+        return new GraphmlCommand() {
+            @Override
+            public final void write( final GraphmlWriter graphmlWriter )
+                throws GraphmlIoException
+            {
+                YedNode.this.write( graphmlWriter );
+            }
+        };
+    }    
     
     @Override
     @SuppressWarnings( "unchecked" )
@@ -0,0 +1,248 @@
+package net.dougqh.graphml.yed;
+
+import java.awt.Color;
+import java.io.IOException;
+
+
+
+/*
+ * Changes for one node of an existing yEd file - see YedPatcher.  Only what
+ * is set is changed, everything else in the node's element is kept as is.
+ */
+public final class YedNodePatch {
+    private String label = null;
+    private String description = null;
+    private String fillColor = null;
+    private YedShape shape = null;
+    
+    public YedNodePatch() {}
+    
+    public final YedNodePatch setLabel( final String label ) {
+        if ( label == null ) throw new IllegalArgumentException( "label" );
+        
+        this.label = label;
+        return this;
+    }
+    
+    public final YedNodePatch setDescription( final String description ) {
+        if ( description == null ) throw new IllegalArgumentException( "description" );
+        
+        this.description = description;
+        return this;
+    }
+    
+    public final YedNodePatch setColor(
+        final int red,
+        final int green,
+        final int blue )
+    {
+        if ( red < 0 || red > 255 ) throw new IllegalArgumentException( "red" );
+        if ( green < 0 || green > 255 ) throw new IllegalArgumentException( "green" );
+        if ( blue < 0 || blue > 255 ) throw new IllegalArgumentException( "blue" );
+        
+        return this.setColor( new Color( red, green, blue ) );
+    }
+    
+    public final YedNodePatch setColor( final Color color ) {
+        if ( color == null ) throw new IllegalArgumentException( "color" );
+        
+        this.fillColor = YedStyle.hexString( color );
+        return this;
+    }
+    
+    public final YedNodePatch setShape( final YedShape shape ) {
+        if ( shape == null ) throw new IllegalArgumentException( "shape" );
+        
+        this.shape = shape;
+        return this;
+    }
+    
+    /*
+     * element runs from the node's start tag up to either its end tag or -
+     * for a group - the start of its nested graph.  The key ids are those
+     * the file declares for node descriptions and node graphics - null if
+     * it declares none.
+     */
+    final String apply(
+        final String nodeId,
+        final String element,
+        final String descriptionKey,
+        final String graphicsKey )
+        throws IOException
+    {
+        StringBuilder builder = new StringBuilder( element.length() + 64 );
+        builder.append( element );
+        
+        if ( this.description != null ) {
+            if ( descriptionKey == null ) {
+                throw new IOException( "no key is declared for node descriptions" );
+            }
+            
+            String text = escape( this.description );
+            String data = "<data key=\"" + descriptionKey + "\"";
+            if ( ! setContent( builder, data, "</data>", text ) ) {
+                int graphics = ( graphicsKey == null ) ?
+                    -1 : builder.indexOf( "<data key=\"" + graphicsKey + "\"" );
+                if ( graphics < 0 ) {
+                    throw new IOException( "node " + nodeId + " has no yEd graphics" );
+                }
+                builder.insert( graphics, data + ">" + text + "</data>" );
+            }
+        }
+        if ( this.label != null ) {
+            String text = escape( this.label );
+            if ( ! setContent( builder, "<y:NodeLabel", "</y:NodeLabel>", text ) ) {
+                insertInShapeNode( builder, nodeId,
+                    "<y:NodeLabel modelName=\"internal\" modelPosition=\"c\">" +
+                    text + "</y:NodeLabel>" );
+            }
+        }
+        if ( this.fillColor != null ) {
+            if ( ! setAttribute( builder, "y:Fill", "color", this.fillColor ) ) {
+                insertInShapeNode( builder, nodeId,
+                    "<y:Fill color=\"" + this.fillColor + "\"/>" );
+            }
+        }
+        if ( this.shape != null ) {
+            if ( ! setAttribute( builder, "y:Shape", "type", this.shape.getId() ) ) {
+                insertInShapeNode( builder, nodeId,
+                    "<y:Shape type=\"" + this.shape.getId() + "\"/>" );
+            }
+        }
+        return builder.toString();
+    }
+    
+    private static final boolean setContent(
+        final StringBuilder builder,
+        final String startTag,
+        final String endTag,
+        final String text )
+    {
+        int start = builder.indexOf( startTag );
+        if ( start < 0 ) {
+            return false;
+        }
+        
+        int startEnd = builder.indexOf( ">", start );
+        if ( builder.charAt( startEnd - 1 ) == '/' ) {
+            // empty element - e.g. <data key="d2"/>
+            builder.replace( startEnd - 1, startEnd + 1, ">" + text + endTag );
+        } else {
+            builder.replace( startEnd + 1, textEnd( builder, startEnd + 1 ), text );
+        }
+        return true;
+    }
+    
+    /*
+     * The text runs up to the first child or end tag - yEd saves a label's
+     * LabelModel and ModelParameter after its text, and those are kept.
+     */
+    private static final int textEnd( final StringBuilder builder, final int textStart ) {
+        int end = builder.indexOf( "<", textStart );
+        // <![CDATA[ is part of the text
+        while ( builder.charAt( end + 1 ) == '!' && builder.charAt( end + 2 ) == '[' ) {
+            end = builder.indexOf( "<", builder.indexOf( "]]>", end ) + 3 );
+        }
+        return end;
+    }
+    
+    private static final boolean setAttribute(
+        final StringBuilder builder,
+        final String element,
+        final String attribute,
+        final String value )
+    {
+        int start = indexOfTag( builder, element );
+        if ( start < 0 ) {
+            return false;
+        }
+        
+        int startEnd = builder.indexOf( ">", start );
+        int attributeStart = builder.indexOf( " " + attribute + "=\"", start );
+        if ( attributeStart < 0 || attributeStart > startEnd ) {
+            builder.insert( start + 1 + element.length(),
+                " " + attribute + "=\"" + value + "\"" );
+        } else {
+            int valueStart = attributeStart + attribute.length() + 3;
+            builder.replace( valueStart, builder.indexOf( "\"", valueStart ), value );
+        }
+        return true;
+    }
+    
+    private static final void insertInShapeNode(
+        final StringBuilder builder,
+        final String nodeId,
+        final String xml )
+        throws IOException
+    {
+        int end = builder.indexOf( "</y:ShapeNode>" );
+        if ( end < 0 ) {
+            throw new IOException( "node " + nodeId + " has no yEd ShapeNode" );
+        }
+        builder.insert( end, xml );
+    }
+    
+    // finds <element followed by the end of its name - <y:Shape, not <y:ShapeNode
+    private static final int indexOfTag(
+        final StringBuilder builder,
+        final String element )
+    {
+        String tag = "<" + element;
+        for ( int start = builder.indexOf( tag );
+            start >= 0;
+            start = builder.indexOf( tag, start + 1 ) )
+        {
+            char next = builder.charAt( start + tag.length() );
+            if ( next == ' ' || next == '/' || next == '>' ) {
+                return start;
+            }
+        }
+        return -1;
+    }
+    
+    private static final String escape( final String text ) {
+        StringBuilder builder = null;
+        int length = text.length();
+        for ( int i = 0; i < length; ++i ) {
+            char ch = text.charAt( i );
+            String entity;
+            switch ( ch ) {
+                case '&':
+                entity = "&amp;";
+                break;
+                
+                case '<':
+                entity = "&lt;";
+                break;
+                
+                case '>':
+                entity = "&gt;";
+                break;
+                
+                default:
+                entity = null;
+            }
+            
+            if ( entity != null && builder == null ) {
+                builder = new StringBuilder( length + 16 );
+                builder.append( text, 0, i );
+            }
+            if ( builder != null ) {
+                if ( entity == null ) {
+                    builder.append( ch );
+                } else {
+                    builder.append( entity );
+                }
+            }
+        }
+        return ( builder == null ) ? text : builder.toString();
+    }
+    
+    @Override
+    public final String toString() {
+        return "label=" + this.label +
+            " description=" + this.description +
+            " fill=" + this.fillColor +
+            " shape=" + this.shape;
+    }
+}
@@ -0,0 +1,541 @@
+package net.dougqh.graphml.yed;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.dougqh.graphml.GraphmlFragmentIndex;
+
+
+
+/*
+ * Recolors, relabels, etc. a few nodes of an existing yEd file without
+ * regenerating it - everything other than the targeted node elements is
+ * copied through byte for byte.
+ *
+ * If the file has a fragment index - see GraphmlFragmentCache - and it
+ * covers every targeted node, the nodes are read directly from their
+ * offsets and the bytes in between are copied with transferTo.  Otherwise,
+ * the file is scanned once for the targeted ids.  Either way, the index is
+ * carried over to the patched file with the patched nodes left out.
+ */
+public final class YedPatcher {
+    private static final Charset UTF_8 = Charset.forName( "utf-8" );
+    
+    // targets are sorted packed with their offsets - see writeIndexed
+    private static final int MAX_INDEXED_TARGETS = 0xFFFFF;
+    
+    private final File file;
+    private final Map< String, YedNodePatch > patches = new HashMap< String, YedNodePatch >();
+    
+    // replaced regions of the source, in file order
+    private long[] regionStarts = new long[ 16 ];
+    private long[] regionLengths = new long[ 16 ];
+    private long[] replacementLengths = new long[ 16 ];
+    private int numRegions = 0;
+    
+    // the key ids the file declares - they differ once yEd has saved it
+    private String descriptionKey = null;
+    private String graphicsKey = null;
+    
+    public YedPatcher( final File file ) {
+        if ( file == null ) throw new IllegalArgumentException( "file" );
+        
+        this.file = file;
+    }
+    
+    /*
+     * Returns the patch for the node with the given id - calling this
+     * again for the same id returns the same patch.
+     */
+    public final YedNodePatch node( final String nodeId ) {
+        if ( nodeId == null ) throw new IllegalArgumentException( "nodeId" );
+        
+        YedNodePatch patch = this.patches.get( nodeId );
+        if ( patch == null ) {
+            patch = new YedNodePatch();
+            this.patches.put( nodeId, patch );
+        }
+        return patch;
+    }
+    
+    public final YedPatcher patch( final Map< String, YedNodePatch > patches ) {
+        if ( patches == null ) throw new IllegalArgumentException( "patches" );
+        
+        this.patches.putAll( patches );
+        return this;
+    }
+    
+    /*
+     * Patches the file itself - the patched copy is written next to it and
+     * then replaces it.  Returns the number of nodes patched.
+     */
+    public final int patch() throws IOException {
+        File temp = new File( this.file.getPath() + ".patching" );
+        File index = GraphmlFragmentIndex.indexFile( temp );
+        int numPatched;
+        boolean replaced = false;
+        try {
+            numPatched = this.writeTo( temp );
+            replace( this.file, temp );
+            replaced = true;
+        } finally {
+            if ( ! replaced ) {
+                temp.delete();
+                index.delete();
+            }
+        }
+        
+        if ( ! index.isFile() ) {
+            GraphmlFragmentIndex.indexFile( this.file ).delete();
+        } else {
+            try {
+                replace( GraphmlFragmentIndex.indexFile( this.file ), index );
+            } catch ( IOException e ) {
+                // the old index no longer matches the file
+                index.delete();
+                GraphmlFragmentIndex.indexFile( this.file ).delete();
+                throw e;
+            }
+        }
+        return numPatched;
+    }
+    
+    /*
+     * Writes a patched copy of the file to output.  Returns the number of
+     * nodes patched - ids not found in the file are ignored.
+     */
+    public final int writeTo( final File output ) throws IOException {
+        if ( output.getAbsoluteFile().equals( this.file.getAbsoluteFile() ) ) {
+            throw new IllegalArgumentException( "output must differ from the patched file" );
+        }
+        
+        this.numRegions = 0;
+        this.descriptionKey = null;
+        this.graphicsKey = null;
+        GraphmlFragmentIndex index = GraphmlFragmentIndex.read( this.file );
+        
+        FileInputStream in = new FileInputStream( this.file );
+        try {
+            FileOutputStream out = new FileOutputStream( output );
+            try {
+                if ( index == null || ! this.writeIndexed( index, in.getChannel(), out.getChannel() ) ) {
+                    this.numRegions = 0;
+                    in.getChannel().position( 0 );
+                    out.getChannel().truncate( 0 );
+                    new Scanner( in, out ).scan();
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+        
+        if ( index != null ) {
+            index.writePatched(
+                output,
+                output.length(),
+                this.regionStarts,
+                this.regionLengths,
+                this.replacementLengths,
+                this.numRegions );
+        } else {
+            GraphmlFragmentIndex.indexFile( output ).delete();
+        }
+        return this.numRegions;
+    }
+    
+    /*
+     * Returns false - having written nothing - unless every targeted node
+     * is in the index and is where the index says it is.
+     */
+    private final boolean writeIndexed(
+        final GraphmlFragmentIndex index,
+        final FileChannel in,
+        final FileChannel out )
+        throws IOException
+    {
+        int numTargets = this.patches.size();
+        if ( numTargets > MAX_INDEXED_TARGETS ) {
+            return false;
+        }
+        long[] targets = new long[ numTargets ];
+        String[] ids = new String[ numTargets ];
+        int i = 0;
+        for ( String nodeId : this.patches.keySet() ) {
+            int entry = index.find( nodeId );
+            if ( entry < 0 ) {
+                return false;
+            }
+            ids[ i ] = nodeId;
+            targets[ i ] = ( index.start( entry ) << 20 ) | i;
+            ++i;
+        }
+        Arrays.sort( targets );
+        
+        String[] elements = new String[ numTargets ];
+        for ( i = 0; i < numTargets; ++i ) {
+            int target = (int)( targets[ i ] & 0xFFFFF );
+            int entry = index.find( ids[ target ] );
+            
+            ByteBuffer buffer = ByteBuffer.allocate( index.length( entry ) );
+            long position = index.start( entry );
+            while ( buffer.hasRemaining() ) {
+                if ( in.read( buffer, position + buffer.position() ) < 0 ) {
+                    return false;
+                }
+            }
+            elements[ i ] = new String( buffer.array(), UTF_8 );
+            if ( ! elements[ i ].startsWith( "<node id=\"" + ids[ target ] + "\"" ) ) {
+                return false;
+            }
+        }
+        
+        this.readKeys( in );
+        
+        long copied = 0;
+        for ( i = 0; i < numTargets; ++i ) {
+            int target = (int)( targets[ i ] & 0xFFFFF );
+            int entry = index.find( ids[ target ] );
+            
+            transfer( in, copied, index.start( entry ) - copied, out );
+            byte[] patched = this.patches.get( ids[ target ] ).apply(
+                ids[ target ],
+                elements[ i ],
+                this.descriptionKey,
+                this.graphicsKey ).getBytes( UTF_8 );
+            ByteBuffer buffer = ByteBuffer.wrap( patched );
+            while ( buffer.hasRemaining() ) {
+                out.write( buffer );
+            }
+            this.replaced( index.start( entry ), index.length( entry ), patched.length );
+            copied = index.start( entry ) + index.length( entry );
+        }
+        transfer( in, copied, in.size() - copied, out );
+        return true;
+    }
+    
+    // reads the key declarations - all before the first graph
+    private final void readKeys( final FileChannel in ) throws IOException {
+        StringBuilder header = new StringBuilder( 4096 );
+        ByteBuffer buffer = ByteBuffer.allocate( 4096 );
+        long position = 0;
+        int graph = indexOfGraph( header );
+        while ( graph < 0 ) {
+            buffer.clear();
+            int count = in.read( buffer, position );
+            if ( count < 0 ) {
+                graph = header.length();
+                break;
+            }
+            position += count;
+            header.append( new String( buffer.array(), 0, count, UTF_8 ) );
+            graph = indexOfGraph( header );
+        }
+        
+        for ( int start = header.indexOf( "<key " );
+            start >= 0 && start < graph;
+            start = header.indexOf( "<key ", start + 1 ) )
+        {
+            this.declareKey( header.substring( start, header.indexOf( ">", start ) + 1 ) );
+        }
+    }
+    
+    // <graph - not <graphml
+    private static final int indexOfGraph( final StringBuilder header ) {
+        for ( int start = header.indexOf( "<graph" );
+            start >= 0 && start + 6 < header.length();
+            start = header.indexOf( "<graph", start + 1 ) )
+        {
+            char next = header.charAt( start + 6 );
+            if ( next == ' ' || next == '>' || next == '\t' || next == '\r' || next == '\n' ) {
+                return start;
+            }
+        }
+        return -1;
+    }
+    
+    private final void declareKey( final String tag ) {
+        if ( ! "node".equals( attribute( tag, "for" ) ) ) {
+            return;
+        }
+        
+        if ( "description".equals( attribute( tag, "attr.name" ) ) ) {
+            this.descriptionKey = attribute( tag, "id" );
+        } else if ( "nodegraphics".equals( attribute( tag, "yfiles.type" ) ) ) {
+            this.graphicsKey = attribute( tag, "id" );
+        }
+    }
+    
+    private static final void transfer(
+        final FileChannel in,
+        final long position,
+        final long length,
+        final FileChannel out )
+        throws IOException
+    {
+        long transferred = 0;
+        while ( transferred < length ) {
+            long count = in.transferTo( position + transferred, length - transferred, out );
+            if ( count <= 0 ) {
+                throw new IOException( "file changed while patching" );
+            }
+            transferred += count;
+        }
+    }
+    
+    private final void replaced(
+        final long start,
+        final long length,
+        final long replacementLength )
+    {
+        if ( this.numRegions == this.regionStarts.length ) {
+            int capacity = this.numRegions * 2;
+            this.regionStarts = Arrays.copyOf( this.regionStarts, capacity );
+            this.regionLengths = Arrays.copyOf( this.regionLengths, capacity );
+            this.replacementLengths = Arrays.copyOf( this.replacementLengths, capacity );
+        }
+        this.regionStarts[ this.numRegions ] = start;
+        this.regionLengths[ this.numRegions ] = length;
+        this.replacementLengths[ this.numRegions ] = replacementLength;
+        ++this.numRegions;
+    }
+    
+    /*
+     * Renaming over the file replaces it in one step where the platform
+     * allows - elsewhere (Windows), the file is moved aside first and put
+     * back if the rename still fails, so it is never lost.  Files.move
+     * would do this atomically, but needs Java 7.
+     */
+    private static final void replace( final File file, final File replacement )
+        throws IOException
+    {
+        if ( replacement.renameTo( file ) ) {
+            return;
+        }
+        if ( ! file.exists() ) {
+            throw new IOException( "cannot rename " + replacement + " to " + file );
+        }
+        
+        File aside = new File( file.getPath() + ".replaced" );
+        aside.delete();
+        if ( ! file.renameTo( aside ) ) {
+            throw new IOException( "cannot replace " + file );
+        }
+        if ( ! replacement.renameTo( file ) ) {
+            aside.renameTo( file );
+            throw new IOException( "cannot rename " + replacement + " to " + file );
+        }
+        aside.delete();
+    }
+    
+    /*
+     * A single pass over the file that looks only at tag names - a <node>
+     * start tag is held back until its id is known, and a targeted node is
+     * held until its end tag, or the start of its nested graph for a group.
+     * All other bytes go straight to the output.
+     */
+    private final class Scanner {
+        private final InputStream in;
+        private final OutputStream out;
+        
+        private final byte[] buffer = new byte[ 64 * 1024 ];
+        private int pos = 0;
+        private int limit = 0;
+        private long offset = 0;
+        
+        private final byte[] outBuffer = new byte[ 64 * 1024 ];
+        private int outLength = 0;
+        
+        private final ByteArrayOutputStream held = new ByteArrayOutputStream( 1024 );
+        private boolean holding = false;
+        private int last;
+        
+        Scanner( final InputStream in, final OutputStream out ) {
+            this.in = in;
+            this.out = out;
+        }
+        
+        final void scan() throws IOException {
+            for ( int b = this.read(); b >= 0; b = this.read() ) {
+                if ( b != '<' ) {
+                    continue;
+                }
+                
+                long start = this.offset + this.pos - 1;
+                this.hold();
+                String name = this.readName();
+                if ( name.equals( "key" ) ) {
+                    this.readTagEnd();
+                    YedPatcher.this.declareKey( this.held.toString( "utf-8" ) );
+                    this.release();
+                    continue;
+                } else if ( ! name.equals( "node" ) ) {
+                    this.release();
+                    continue;
+                }
+                
+                boolean empty = this.readTagEnd();
+                String nodeId = attribute( this.held.toString( "utf-8" ), "id" );
+                YedNodePatch patch = ( nodeId == null ) ? null : YedPatcher.this.patches.get( nodeId );
+                if ( patch == null ) {
+                    this.release();
+                    continue;
+                }
+                
+                byte[] graphStart = empty ? null : this.holdElement();
+                byte[] element = this.held.toByteArray();
+                byte[] patched = patch.apply(
+                    nodeId,
+                    new String( element, UTF_8 ),
+                    YedPatcher.this.descriptionKey,
+                    YedPatcher.this.graphicsKey ).getBytes( UTF_8 );
+                
+                this.held.reset();
+                this.holding = false;
+                this.write( patched );
+                YedPatcher.this.replaced( start, element.length, patched.length );
+                if ( graphStart != null ) {
+                    this.write( graphStart );
+                }
+            }
+            this.flush();
+        }
+        
+        /*
+         * Holds the rest of a targeted node.  Returns the bytes of the
+         * nested graph's start tag read so far, if the node is a group.
+         */
+        private final byte[] holdElement() throws IOException {
+            while ( true ) {
+                int b = this.read();
+                if ( b < 0 ) {
+                    throw new IOException( "unterminated node element" );
+                }
+                if ( b != '<' ) {
+                    continue;
+                }
+                
+                int tagStart = this.held.size() - 1;
+                String name = this.readName();
+                if ( name.equals( "/node" ) ) {
+                    this.readTagEnd();
+                    return null;
+                } else if ( name.equals( "graph" ) ) {
+                    byte[] held = this.held.toByteArray();
+                    this.held.reset();
+                    this.held.write( held, 0, tagStart );
+                    return Arrays.copyOfRange( held, tagStart, held.length );
+                }
+            }
+        }
+        
+        private final String readName() throws IOException {
+            StringBuilder name = new StringBuilder( 8 );
+            for ( int b = this.read(); b >= 0; b = this.read() ) {
+                if ( b == ' ' || b == '\t' || b == '\r' || b == '\n' || b == '>' ||
+                    ( b == '/' && name.length() != 0 ) )
+                {
+                    break;
+                }
+                name.append( (char)b );
+            }
+            return name.toString();
+        }
+        
+        // returns true if the tag is an empty element tag - <node ... />
+        private final boolean readTagEnd() throws IOException {
+            int quote = 0;
+            int previous = 0;
+            for ( int b = this.last; b >= 0; b = this.read() ) {
+                if ( quote != 0 ) {
+                    if ( b == quote ) {
+                        quote = 0;
+                    }
+                } else if ( b == '"' || b == '\'' ) {
+                    quote = b;
+                } else if ( b == '>' ) {
+                    return previous == '/';
+                }
+                previous = b;
+            }
+            throw new IOException( "unterminated tag" );
+        }
+        
+        private final int read() throws IOException {
+            if ( this.pos == this.limit ) {
+                this.offset += this.limit;
+                this.pos = 0;
+                this.limit = 0;
+                int count = this.in.read( this.buffer );
+                if ( count <= 0 ) {
+                    this.last = -1;
+                    return -1;
+                }
+                this.limit = count;
+            }
+            
+            int b = this.buffer[ this.pos++ ] & 0xFF;
+            if ( this.holding ) {
+                this.held.write( b );
+            } else {
+                if ( this.outLength == this.outBuffer.length ) {
+                    this.flush();
+                }
+                this.outBuffer[ this.outLength++ ] = (byte)b;
+            }
+            this.last = b;
+            return b;
+        }
+        
+        // moves the byte just read - a '<' - from the output to held
+        private final void hold() {
+            --this.outLength;
+            this.held.write( '<' );
+            this.holding = true;
+        }
+        
+        private final void release() throws IOException {
+            this.holding = false;
+            this.write( this.held.toByteArray() );
+            this.held.reset();
+        }
+        
+        private final void write( final byte[] bytes ) throws IOException {
+            if ( this.outLength + bytes.length > this.outBuffer.length ) {
+                this.flush();
+            }
+            if ( bytes.length > this.outBuffer.length ) {
+                this.out.write( bytes );
+            } else {
+                System.arraycopy( bytes, 0, this.outBuffer, this.outLength, bytes.length );
+                this.outLength += bytes.length;
+            }
+        }
+        
+        private final void flush() throws IOException {
+            this.out.write( this.outBuffer, 0, this.outLength );
+            this.outLength = 0;
+        }
+    }
+    
+    private static final String attribute( final String tag, final String name ) {
+        int start = tag.indexOf( " " + name + "=\"" );
+        if ( start < 0 ) {
+            return null;
+        }
+        start += name.length() + 3;
+        return tag.substring( start, tag.indexOf( '"', start ) );
+    }
+}
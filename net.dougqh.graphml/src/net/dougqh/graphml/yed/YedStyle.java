@@ -0,0 +1,222 @@
+package net.dougqh.graphml.yed;
+
+import java.awt.Color;
+import java.awt.Dimension;
+
+import net.dougqh.graphml.GraphmlFragmentKeys;
+import net.dougqh.graphml.GraphmlIoException;
+
+
+
+/*
+ * Immutable and shared - the with methods look in a cache of recently made
+ * styles before making a new one, so nodes sharing a look share one
+ * YedStyle rather than each holding their own Color and Dimension, and the
+ * fill color is formatted once per style rather than once per node.
+ *
+ * The cache is a fixed array where a style replaces any other style in its
+ * slot, so it stays small however many styles are made - equal styles are
+ * usually, but not always, the same instance.
+ */
+public final class YedStyle {
+    private static final int UNSET = -1;
+    
+    private static final int CACHE_SIZE = 1024;
+    
+    // read and written without locking - a lost update only costs a new style
+    private static final YedStyle[] CACHE = new YedStyle[ CACHE_SIZE ];
+    
+    public static final YedStyle DEFAULT = style( null, null, null, UNSET, UNSET );
+    
+    private final Color color;
+    private final YedShape shape;
+    private final YedLineStyle lineStyle;
+    private final int width;
+    private final int height;
+    
+    // formatted when first written - racing threads format the same string
+    private String fillColor = null;
+    
+    private YedStyle(
+        final Color color,
+        final YedShape shape,
+        final YedLineStyle lineStyle,
+        final int width,
+        final int height )
+    {
+        this.color = color;
+        this.shape = shape;
+        this.lineStyle = lineStyle;
+        this.width = width;
+        this.height = height;
+    }
+    
+    public final YedStyle withColor(
+        final int red,
+        final int green,
+        final int blue )
+    {
+        if ( red < 0 || red > 255 ) throw new IllegalArgumentException( "red" );
+        if ( green < 0 || green > 255 ) throw new IllegalArgumentException( "green" );
+        if ( blue < 0 || blue > 255 ) throw new IllegalArgumentException( "blue" );
+        
+        return this.withColor( new Color( red, green, blue ) );
+    }
+    
+    public final YedStyle withColor( final Color color ) {
+        if ( color == null ) throw new IllegalArgumentException( "color" );
+        
+        return style( color, this.shape, this.lineStyle, this.width, this.height );
+    }
+    
+    public final YedStyle withShape( final YedShape shape ) {
+        if ( shape == null ) throw new IllegalArgumentException( "shape" );
+        
+        return style( this.color, shape, this.lineStyle, this.width, this.height );
+    }
+    
+    public final YedStyle withLineStyle( final YedLineStyle lineStyle ) {
+        if ( lineStyle == null ) throw new IllegalArgumentException( "lineStyle" );
+        
+        return style( this.color, this.shape, lineStyle, this.width, this.height );
+    }
+    
+    public final YedStyle withDimension(
+        final int width,
+        final int height )
+    {
+        if ( width < 0 ) throw new IllegalArgumentException( "width" );
+        if ( height < 0 ) throw new IllegalArgumentException( "height" );
+        
+        return style( this.color, this.shape, this.lineStyle, width, height );
+    }
+    
+    public final YedStyle withDimension( final Dimension dimension ) {
+        if ( dimension == null ) {
+            return style( this.color, this.shape, this.lineStyle, UNSET, UNSET );
+        } else {
+            return this.withDimension( dimension.width, dimension.height );
+        }
+    }
+    
+    public final Color getColor() {
+        return this.color;
+    }
+    
+    public final YedShape getShape() {
+        return this.shape;
+    }
+    
+    public final YedLineStyle getLineStyle() {
+        return this.lineStyle;
+    }
+    
+    public final Dimension getDimension() {
+        if ( this.width == UNSET ) {
+            return null;
+        } else {
+            return new Dimension( this.width, this.height );
+        }
+    }
+    
+    final void write( final YedGraphmlExtension yed ) throws GraphmlIoException {
+        if ( this.shape != null ) {
+            yed.shape( this.shape );
+        }
+        if ( this.color != null ) {
+            String fillColor = this.fillColor;
+            if ( fillColor == null ) {
+                fillColor = hexString( this.color );
+                this.fillColor = fillColor;
+            }
+            yed.fill( fillColor );
+        }
+        if ( this.lineStyle != null ) {
+            yed.borderStyle( this.lineStyle );
+        }
+        if ( this.width != UNSET ) {
+            yed.geometry( this.width, this.height );
+        }
+    }
+    
+    final long fragmentKey( final long hash ) {
+        long h = GraphmlFragmentKeys.hash( hash, ( this.color == null ) ? -1 : this.color.getRGB() );
+        h = GraphmlFragmentKeys.hash( h, ( this.shape == null ) ? null : this.shape.name() );
+        h = GraphmlFragmentKeys.hash( h, ( this.lineStyle == null ) ? null : this.lineStyle.name() );
+        h = GraphmlFragmentKeys.hash( h, this.width );
+        return GraphmlFragmentKeys.hash( h, this.height );
+    }
+    
+    private static final YedStyle style(
+        final Color color,
+        final YedShape shape,
+        final YedLineStyle lineStyle,
+        final int width,
+        final int height )
+    {
+        int hash = hash( color, shape, lineStyle, width, height );
+        int slot = ( hash ^ ( hash >>> 16 ) ) & ( CACHE_SIZE - 1 );
+        
+        YedStyle cached = CACHE[ slot ];
+        if ( cached != null && cached.is( color, shape, lineStyle, width, height ) ) {
+            return cached;
+        }
+        
+        YedStyle style = new YedStyle( color, shape, lineStyle, width, height );
+        CACHE[ slot ] = style;
+        return style;
+    }
+    
+    private final boolean is(
+        final Color color,
+        final YedShape shape,
+        final YedLineStyle lineStyle,
+        final int width,
+        final int height )
+    {
+        return ( this.color == null ? color == null : this.color.equals( color ) ) &&
+            this.shape == shape &&
+            this.lineStyle == lineStyle &&
+            this.width == width &&
+            this.height == height;
+    }
+    
+    private static final int hash(
+        final Color color,
+        final YedShape shape,
+        final YedLineStyle lineStyle,
+        final int width,
+        final int height )
+    {
+        int hash = ( color == null ) ? 0 : color.hashCode();
+        hash = 31 * hash + ( ( shape == null ) ? 0 : shape.hashCode() );
+        hash = 31 * hash + ( ( lineStyle == null ) ? 0 : lineStyle.hashCode() );
+        hash = 31 * hash + width;
+        return 31 * hash + height;
+    }
+    
+    static final String hexString( final Color color ) {
+        return String.format(
+            "#%02x%02x%02x",
+            color.getRed(),
+            color.getGreen(),
+            color.getBlue() );
+    }
+    
+    @Override
+    public final int hashCode() {
+        return hash( this.color, this.shape, this.lineStyle, this.width, this.height );
+    }
+    
+    @Override
+    public final boolean equals( final Object obj ) {
+        if ( obj == this ) {
+            return true;
+        } else if ( ! ( obj instanceof YedStyle ) ) {
+            return false;
+        } else {
+            YedStyle that = (YedStyle)obj;
+            return this.is( that.color, that.shape, that.lineStyle, that.width, that.height );
+        }
+    }
+}
@@ -4,7 +4,10 @@ import java.io.Closeable;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
 
+import net.dougqh.graphml.GraphmlFragmentCache;
 import net.dougqh.graphml.GraphmlIoException;
 import net.dougqh.graphml.GraphmlWriter;
 
@@ -12,16 +15,72 @@ import net.dougqh.graphml.GraphmlWriter;
 
 public final class YedWriter implements Closeable {
     private final GraphmlWriter graphmlWriter;
+    private final ArrayList< YedGroup > openGroups = new ArrayList< YedGroup >();
     
     public YedWriter( final File file )
         throws FileNotFoundException, GraphmlIoException
     {
-        this.graphmlWriter = new GraphmlWriter( file ).forYed();
+        this( new GraphmlWriter( file ) );
+    }
+    
+    public YedWriter( final OutputStream out )
+        throws GraphmlIoException
+    {
+        this( new GraphmlWriter( out ) );
+    }
+    
+    public static final YedWriter compact( final File file )
+        throws FileNotFoundException, GraphmlIoException
+    {
+        return new YedWriter( new GraphmlWriter( file ).compact() );
+    }
+    
+    public static final YedWriter compact( final OutputStream out )
+        throws GraphmlIoException
+    {
+        return new YedWriter( new GraphmlWriter( out ).compact() );
+    }
+    
+    YedWriter( final GraphmlWriter graphmlWriter )
+        throws GraphmlIoException
+    {
+        this.graphmlWriter = graphmlWriter.forYed();
         
         this.graphmlWriter.startGraphml();
         this.graphmlWriter.startDirectedGraph();
     }
     
+    /*
+     * Nodes unchanged since the run that wrote the cache's previous output
+     * are copied from that output rather than written again.
+     */
+    public final YedWriter fragmentCache( final GraphmlFragmentCache cache ) {
+        this.graphmlWriter.fragmentCache( cache );
+        return this;
+    }
+    
+    /*
+     * Nodes added to the layout are written where it puts them - add and
+     * connect this run's nodes there before adding them here.
+     */
+    public final YedWriter layout( final YedLayout layout ) {
+        this.graphmlWriter.yed().layout( layout );
+        return this;
+    }
+    
+    /*
+     * Edges between nodes in the layout are bent around the nodes in their
+     * way - the router is not closed with the writer.
+     */
+    public final YedWriter routeEdges( final YedEdgeRouter router ) {
+        this.graphmlWriter.yed().router( router );
+        return this;
+    }
+    
+    final GraphmlWriter graphmlWriter() {
+        return this.graphmlWriter;
+    }
+    
     public final YedWriter add( final YedNode< ? >... nodes )
         throws GraphmlIoException
     {
@@ -31,6 +90,37 @@ public final class YedWriter implements Closeable {
         return this;
     }
     
+    /*
+     * Writes the group - and any nodes already added to it - leaving its
+     * nested graph open, so that nodes added until the matching closeGroup
+     * are written inside the group without building the subtree first.
+     */
+    public final YedWriter openGroup( final YedGroup group )
+        throws GraphmlIoException
+    {
+        if ( group == null ) throw new IllegalArgumentException( "group" );
+        if ( this.graphmlWriter.getId( group ) != null ) {
+            throw new IllegalStateException( "group was already written" );
+        }
+        
+        group.writeStart( this.graphmlWriter );
+        this.openGroups.add( group );
+        
+        for ( YedNode< ? > node : group.nodes ) {
+            node.write( this.graphmlWriter );
+        }
+        return this;
+    }
+    
+    public final YedWriter closeGroup() throws GraphmlIoException {
+        if ( this.openGroups.isEmpty() ) {
+            throw new IllegalStateException( "no open group" );
+        }
+        
+        this.openGroups.remove( this.openGroups.size() - 1 ).writeEnd( this.graphmlWriter );
+        return this;
+    }
+    
     public final YedWriter connect(
         final YedNode< ? > fromNode,
         final YedNode< ? > toNode )
@@ -49,6 +139,28 @@ public final class YedWriter implements Closeable {
         return this;
     }
     
+    public final YedWriter connect(
+        final YedNode< ? > fromNode,
+        final String fromPort,
+        final YedNode< ? > toNode,
+        final String toPort )
+        throws GraphmlIoException
+    {
+        this.graphmlWriter.undirectedEdge( fromNode, fromPort, toNode, toPort );
+        return this;
+    }
+    
+    public final YedWriter connectWithArrow(
+        final YedNode< ? > fromNode,
+        final String fromPort,
+        final YedNode< ? > toNode,
+        final String toPort )
+        throws GraphmlIoException
+    {
+        this.graphmlWriter.directedEdge( fromNode, fromPort, toNode, toPort );
+        return this;
+    }
+    
     public final YedWriter connectWithArrows(
     	final YedNode< ? > startNode,
     	final YedNode< ? >... nodes )
@@ -67,6 +179,10 @@ public final class YedWriter implements Closeable {
     @Override
     public final void close() throws IOException {
         try {
+            while ( ! this.openGroups.isEmpty() ) {
+                this.closeGroup();
+            }
+            this.graphmlWriter.resolveEdges();
             this.graphmlWriter.endDirectedGraph();
             this.graphmlWriter.endGraphml();
         } finally {        